@@ -18,6 +18,42 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create index ticket_vehicle on ticket(VEHICLE_REG_NUMBER, ID);
+create index ticket_in_time on ticket(IN_TIME, ID);
+create index ticket_out_time on ticket(OUT_TIME, ID);
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create table vehicle_visits(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ ARCHIVED_VISITS int NOT NULL);
+
+create index ticket_archive_vehicle on ticket_archive(VEHICLE_REG_NUMBER, ID);
+create index ticket_archive_in_time on ticket_archive(IN_TIME, ID);
+
+create table parking_summary(
+ PERIOD varchar(5) NOT NULL,
+ PERIOD_START DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ ENTRIES int NOT NULL,
+ EXITS int NOT NULL,
+ REVENUE_CENTS bigint NOT NULL,
+ STAY_MINUTES bigint NOT NULL,
+ STAYS_30M int NOT NULL,
+ STAYS_1H int NOT NULL,
+ STAYS_2H int NOT NULL,
+ STAYS_4H int NOT NULL,
+ STAYS_8H int NOT NULL,
+ STAYS_24H int NOT NULL,
+ STAYS_LONGER int NOT NULL,
+ PRIMARY KEY (PERIOD, PERIOD_START, TYPE));
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
@@ -45,6 +81,42 @@ create table ticket(
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
+create index ticket_vehicle on ticket(VEHICLE_REG_NUMBER, ID);
+create index ticket_in_time on ticket(IN_TIME, ID);
+create index ticket_out_time on ticket(OUT_TIME, ID);
+
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create table vehicle_visits(
+ VEHICLE_REG_NUMBER varchar(10) PRIMARY KEY,
+ ARCHIVED_VISITS int NOT NULL);
+
+create index ticket_archive_vehicle on ticket_archive(VEHICLE_REG_NUMBER, ID);
+create index ticket_archive_in_time on ticket_archive(IN_TIME, ID);
+
+create table parking_summary(
+ PERIOD varchar(5) NOT NULL,
+ PERIOD_START DATETIME NOT NULL,
+ TYPE varchar(10) NOT NULL,
+ ENTRIES int NOT NULL,
+ EXITS int NOT NULL,
+ REVENUE_CENTS bigint NOT NULL,
+ STAY_MINUTES bigint NOT NULL,
+ STAYS_30M int NOT NULL,
+ STAYS_1H int NOT NULL,
+ STAYS_2H int NOT NULL,
+ STAYS_4H int NOT NULL,
+ STAYS_8H int NOT NULL,
+ STAYS_24H int NOT NULL,
+ STAYS_LONGER int NOT NULL,
+ PRIMARY KEY (PERIOD, PERIOD_START, TYPE));
+
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
 insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
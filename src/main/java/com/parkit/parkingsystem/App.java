@@ -1,14 +1,117 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.export.ExportFormat;
+import com.parkit.parkingsystem.export.TicketExporter;
+import com.parkit.parkingsystem.service.FareCalculatorService;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.TariffReloader;
+import com.parkit.parkingsystem.simulation.DemandModel;
+import com.parkit.parkingsystem.simulation.ParkingSimulation;
+import com.parkit.parkingsystem.simulation.SimulationReport;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 
 public class App {
     private static final Logger logger = LogManager.getLogger("App");
 
     public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("export")) {
+            export(ExportFormat.valueOf(args[1].toUpperCase()), args[2]);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("simulate")) {
+            simulate(args);
+            return;
+        }
         logger.info("Initializing Parking System");
         InteractiveShell.loadInterface();
+        DataBaseConfig.shutdown();
+    }
+
+    /**
+     * export every ticket without starting the gates: java -jar ... export csv|binary file
+     */
+    private static void export(ExportFormat format, String file) {
+        TicketExporter ticketExporter = new TicketExporter(Integer.parseInt(DataBaseConfig.getSetting("export.readers", "4")),
+                Integer.parseInt(DataBaseConfig.getSetting("export.chunkSize", "100000")));
+        try {
+            long tickets = ticketExporter.export(Paths.get(file), format);
+            System.out.println(tickets + " tickets exported to " + file);
+        } catch (IOException e) {
+            System.out.println("Unable to export the tickets. Error occurred");
+        } finally {
+            DataBaseConfig.shutdown();
+        }
+    }
+
+    /**
+     * simulate the parking without the database: java -jar ... simulate [key=value ...], with the keys (defaults in
+     * brackets) days [30], spots [10000], bikeShare [0.1] of the spots and of the new vehicles, arrivalsPerDay
+     * [2.5 per spot], weekendFactor [0.6], meanStayMinutes [180], staySigma [0.8], repeatRatio [0.4],
+     * intervalMinutes [60], tariff [the default one], seed [42] and out [simulation.csv], the file of the curves
+     */
+    private static void simulate(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            int equals = args[i].indexOf('=');
+            if (equals < 0) {
+                System.out.println("Expected key=value, got " + args[i]);
+                return;
+            }
+            options.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+        }
+        int spots = Integer.parseInt(options.getOrDefault("spots", "10000"));
+        double bikeShare = Double.parseDouble(options.getOrDefault("bikeShare", "0.1"));
+        Map<ParkingType, Integer> spotsByType = new EnumMap<>(ParkingType.class);
+        spotsByType.put(ParkingType.BIKE, (int) Math.round(spots * bikeShare));
+        spotsByType.put(ParkingType.CAR, spots - spotsByType.get(ParkingType.BIKE));
+        DemandModel demandModel = new DemandModel(Double.parseDouble(options.getOrDefault("arrivalsPerDay", String.valueOf(2.5 * spots))),
+                Double.parseDouble(options.getOrDefault("weekendFactor", "0.6")),
+                Double.parseDouble(options.getOrDefault("meanStayMinutes", "180")),
+                Double.parseDouble(options.getOrDefault("staySigma", "0.8")),
+                Double.parseDouble(options.getOrDefault("repeatRatio", "0.4")),
+                bikeShare);
+        FareCalculatorService fareCalculatorService = new FareCalculatorService();
+        if (options.containsKey("tariff") && !new TariffReloader(fareCalculatorService, Paths.get(options.get("tariff"))).reload()) {
+            System.out.println("Unable to read the tariff " + options.get("tariff"));
+            return;
+        }
+        //the refused arrivals are counted in the report
+        Configurator.setLevel("ParkingService", Level.OFF);
+        ZoneId zone = ZoneId.systemDefault();
+        int days = Integer.parseInt(options.getOrDefault("days", "30"));
+        ParkingSimulation simulation = ParkingSimulation.inMemory(spotsByType, demandModel, fareCalculatorService,
+                LocalDate.now(zone).withDayOfMonth(1).atStartOfDay(zone).toInstant(), zone,
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        long start = System.nanoTime();
+        SimulationReport report = simulation.run(Duration.ofDays(days),
+                Duration.ofMinutes(Long.parseLong(options.getOrDefault("intervalMinutes", "60"))));
+        String out = options.getOrDefault("out", "simulation.csv");
+        try {
+            report.writeCsv(Paths.get(out));
+        } catch (IOException e) {
+            System.out.println("Unable to write the curves to " + out);
+            return;
+        }
+        System.out.printf("%d days of %d spots simulated in %.1f s: %d entries, %d refused, revenue %.2f%n", days, spots,
+                (System.nanoTime() - start) / 1e9, report.getEntries(), report.getRefused(), report.getRevenue());
+        for (ParkingType parkingType : ParkingType.values()) {
+            System.out.println("Peak occupancy of " + parkingType + ": " + report.getPeakOccupancy(parkingType)
+                    + " of " + report.getCapacity(parkingType));
+        }
+        System.out.println("Curves written to " + out);
     }
 }
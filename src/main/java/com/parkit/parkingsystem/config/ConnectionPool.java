@@ -0,0 +1,510 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of JDBC connections.
+ * Borrowed connections are proxies: calling close() on them gives the physical connection back to the pool.
+ * Idle connections above the minimum size are evicted after the idle timeout, and a connection that stayed
+ * idle longer than the validation interval is checked with isValid() before it is handed out again.
+ * Each physical connection also keeps its prepared statements in a small LRU cache keyed by SQL text, so a
+ * query prepared once on a connection is reused by the next borrowers instead of being parsed again.
+ * A connection that fails with an SQL state of class 08, itself or through one of its statements, is closed
+ * with its cached statements instead of being given back.
+ */
+public class ConnectionPool implements DataSource {
+
+    private static final Logger logger = LogManager.getLogger("ConnectionPool");
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final Semaphore leases;
+    private final ScheduledExecutorService evictor;
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long validationIntervalMillis,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.leases = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1_000, Math.min(idleTimeoutMillis, validationIntervalMillis) / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * borrow a connection, waiting at most the borrow timeout when every connection is in use
+     *
+     * @return a pooled connection, to be given back with close()
+     * @throws SQLException if the pool is exhausted or a new connection cannot be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!leases.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a DB connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a DB connection", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isHealthy(pooled)) {
+                    return pooled.lease();
+                }
+                destroy(pooled);
+            }
+            return open().lease();
+        } catch (SQLException | RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections all use the credentials of the pool");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return DriverManager.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        DriverManager.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("The pool logs with log4j");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(getClass().getName() + " does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getActiveConnections() {
+        return maxSize - leases.availablePermits();
+    }
+
+    /**
+     * @return number of prepareStatement calls served from the statement cache
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * @return number of prepareStatement calls that had to prepare a new statement
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
+    /**
+     * close every idle connection and refuse new borrowers; leased connections are closed when given back
+     */
+    public void shutdown() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        logger.info("Create DB connection");
+        Connection physical = DriverManager.getConnection(url, user, password);
+        openConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isHealthy(PooledConnection pooled) {
+        try {
+            if (System.currentTimeMillis() - pooled.lastUsed > validationIntervalMillis) {
+                return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+            }
+            return !pooled.physical.isClosed();
+        } catch (SQLException e) {
+            logger.warn("DB connection failed validation", e);
+            return false;
+        }
+    }
+
+    private void giveBack(PooledConnection pooled) {
+        try {
+            if (!pooled.broken && !closed && !pooled.physical.isClosed()) {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                pooled.lastUsed = System.currentTimeMillis();
+                idleConnections.offerFirst(pooled);
+            } else {
+                destroy(pooled);
+            }
+        } catch (SQLException e) {
+            logger.error("Error while returning connection to the pool", e);
+            destroy(pooled);
+        } finally {
+            leases.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        openConnections.decrementAndGet();
+        for (CachedStatement cached : pooled.statementCache.values()) {
+            cached.evict();
+        }
+        pooled.statementCache.clear();
+        try {
+            pooled.physical.close();
+            logger.info("Closing DB connection");
+        } catch (SQLException e) {
+            logger.error("Error while closing connection", e);
+        }
+    }
+
+    private void evictIdleConnections() {
+        try {
+            long now = System.currentTimeMillis();
+            // idle connections are pushed at the head, so the tail holds the ones unused for the longest time
+            Iterator<PooledConnection> oldestFirst = idleConnections.descendingIterator();
+            while (oldestFirst.hasNext() && openConnections.get() > minSize) {
+                PooledConnection pooled = oldestFirst.next();
+                if (now - pooled.lastUsed > idleTimeoutMillis && idleConnections.remove(pooled)) {
+                    destroy(pooled);
+                }
+            }
+            while (!closed && openConnections.get() < minSize) {
+                idleConnections.offerLast(open());
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to maintain the minimum number of DB connections", e);
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long lastUsed = System.currentTimeMillis();
+        //set by a failure of the connection itself, which is then closed instead of given back
+        private volatile boolean broken;
+        //only touched by the current borrower of the connection
+        private final Map<String, CachedStatement> statementCache =
+                new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if (size() > statementCacheSize) {
+                            eldest.getValue().evict();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private void checkBroken(SQLException e) {
+            String sqlState = e.getSQLState();
+            // SQL state class 08 means the connection itself is unusable
+            if (sqlState != null && sqlState.startsWith("08")) {
+                broken = true;
+            }
+        }
+
+        private PreparedStatement prepareStatement(Object[] args) throws SQLException {
+            String sql = (String) args[0];
+            String key = args.length == 1 ? sql : sql + '\u0000' + args[1];
+            CachedStatement cached = statementCache.get(key);
+            if (cached != null && cached.evicted) {
+                //could not be reset when it was given back
+                statementCache.remove(key);
+                cached = null;
+            }
+            if (cached != null && !cached.inUse) {
+                statementCacheHits.incrementAndGet();
+                return cached.checkout();
+            }
+            statementCacheMisses.incrementAndGet();
+            PreparedStatement statement = args.length == 1
+                    ? physical.prepareStatement(sql)
+                    : physical.prepareStatement(sql, (Integer) args[1]);
+            if (cached != null || statementCacheSize == 0) {
+                //the same query is already open on this connection, use a statement of its own
+                return statement;
+            }
+            try {
+                cached = new CachedStatement(this, statement);
+            } catch (SQLException e) {
+                statement.close();
+                throw e;
+            }
+            statementCache.put(key, cached);
+            return cached.checkout();
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    /**
+     * prepared statement kept open on its connection; closing a checkout only gives it back to the cache,
+     * with the parameters, batch and limits a borrower may have set put back to their defaults
+     */
+    private static final class CachedStatement {
+        private final PooledConnection owner;
+        private final PreparedStatement physical;
+        private final int defaultFetchSize;
+        private final int defaultMaxRows;
+        private final int defaultQueryTimeout;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PooledConnection owner, PreparedStatement physical) throws SQLException {
+            this.owner = owner;
+            this.physical = physical;
+            this.defaultFetchSize = physical.getFetchSize();
+            this.defaultMaxRows = physical.getMaxRows();
+            this.defaultQueryTimeout = physical.getQueryTimeout();
+        }
+
+        private PreparedStatement checkout() {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new InvocationHandler() {
+                        private boolean returned;
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                                case "close":
+                                    if (!returned) {
+                                        returned = true;
+                                        checkin();
+                                    }
+                                    return null;
+                                case "isClosed":
+                                    return returned || physical.isClosed();
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    break;
+                            }
+                            if (returned) {
+                                throw new SQLException("Prepared statement has already been closed");
+                            }
+                            try {
+                                return method.invoke(physical, args);
+                            } catch (InvocationTargetException e) {
+                                Throwable cause = e.getCause();
+                                if (cause instanceof SQLException) {
+                                    owner.checkBroken((SQLException) cause);
+                                }
+                                throw cause;
+                            }
+                        }
+                    });
+        }
+
+        private void checkin() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                physical.close();
+                return;
+            }
+            try {
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.setFetchSize(defaultFetchSize);
+                physical.setMaxRows(defaultMaxRows);
+                physical.setQueryTimeout(defaultQueryTimeout);
+            } catch (SQLException e) {
+                //not reused with the settings of this borrower
+                evict();
+                throw e;
+            }
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    physical.close();
+                } catch (SQLException e) {
+                    logger.error("Error while closing prepared statement", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * one borrowing of a pooled connection; statements left open by the borrower are closed when it ends
+     */
+    private final class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean released;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                Object result = isCacheable(method, args)
+                        ? pooled.prepareStatement(args)
+                        : method.invoke(pooled.physical, args);
+                if (result instanceof Statement) {
+                    statements.add((Statement) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    pooled.checkBroken((SQLException) cause);
+                }
+                throw cause;
+            } catch (SQLException e) {
+                //preparing a cached statement
+                pooled.checkBroken(e);
+                throw e;
+            }
+        }
+
+        private boolean isCacheable(Method method, Object[] args) {
+            //prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys)
+            return "prepareStatement".equals(method.getName()) && args != null
+                    && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+        }
+
+        private void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    logger.error("Error while closing prepared statement", e);
+                }
+            }
+            giveBack(pooled);
+        }
+    }
+}
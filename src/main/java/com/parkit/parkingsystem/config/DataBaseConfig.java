@@ -3,24 +3,88 @@ package com.parkit.parkingsystem.config;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.sql.DataSource;
 import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    //settings of database.properties, read once for the whole application
+    private static final Properties settings = DataSourceFactory.loadSettings();
+    //one pool per database url, shared by every DAO of the application
+    private static final ConcurrentMap<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * borrow a connection from the pool of this database
+     *
+     * @return a pooled connection, given back to the pool by closeConnection
+     */
     public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod?zeroDateTimeBehavior=CONVERT_TO_NULL&serverTimezone=UTC", "root", "rootroot");
+        return getConnectionPool().getConnection();
+    }
+
+    /**
+     * @return the DataSource of this database, backed by MySQL or by the embedded database depending on db.mode
+     */
+    public DataSource getDataSource() throws ClassNotFoundException, SQLException {
+        return getConnectionPool();
+    }
+
+    /**
+     * the pool is created on first use, the driver is loaded only at that time
+     *
+     * @return connection pool of this database
+     */
+    public ConnectionPool getConnectionPool() throws ClassNotFoundException, SQLException {
+        String url = DataSourceFactory.getUrl(settings, getDatabaseName());
+        ConnectionPool pool = pools.get(url);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(url);
+                if (pool == null) {
+                    pool = DataSourceFactory.create(settings, getDatabaseName());
+                    pools.put(url, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return name of the database of the application
+     */
+    protected String getDatabaseName() {
+        return "prod";
+    }
+
+    /**
+     * @param key
+     * @param defaultValue
+     * @return setting of database.properties, or its system property override
+     */
+    public static String getSetting(String key, String defaultValue) {
+        return settings.getProperty(key, defaultValue).trim();
+    }
+
+    /**
+     * close the pools and their idle connections, called when the application shuts down
+     */
+    public static void shutdown() {
+        for (ConnectionPool pool : pools.values()) {
+            pool.shutdown();
+        }
+        pools.clear();
     }
 
     public void closeConnection(Connection con) {
         if (con != null) {
             try {
                 con.close();
-                logger.info("Closing DB connection");
+                logger.debug("DB connection returned to the pool");
             } catch (SQLException e) {
                 logger.error("Error while closing connection", e);
             }
@@ -31,7 +95,7 @@ public class DataBaseConfig {
         if (ps != null) {
             try {
                 ps.close();
-                logger.info("Closing Prepared Statement");
+                logger.debug("Closing Prepared Statement");
             } catch (SQLException e) {
                 logger.error("Error while closing prepared statement", e);
             }
@@ -42,7 +106,7 @@ public class DataBaseConfig {
         if (rs != null) {
             try {
                 rs.close();
-                logger.info("Closing Result Set");
+                logger.debug("Closing Result Set");
             } catch (SQLException e) {
                 logger.error("Error while closing result set", e);
             }
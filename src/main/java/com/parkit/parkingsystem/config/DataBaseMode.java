@@ -0,0 +1,26 @@
+package com.parkit.parkingsystem.config;
+
+/**
+ * backend selected with the db.mode setting
+ */
+public enum DataBaseMode {
+    MYSQL("com.mysql.cj.jdbc.Driver"),
+    EMBEDDED("org.h2.Driver");
+
+    private final String driverClassName;
+
+    DataBaseMode(String driverClassName) {
+        this.driverClassName = driverClassName;
+    }
+
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    /**
+     * @return prefix of the settings of this backend, e.g. db.mysql.
+     */
+    public String getSettingsPrefix() {
+        return "db." + name().toLowerCase() + ".";
+    }
+}
@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Builds the pooled DataSource of a database from the settings of database.properties.
+ * The db.mode setting selects the backend; any setting can be overridden with a system property.
+ */
+public class DataSourceFactory {
+
+    private static final Logger logger = LogManager.getLogger("DataSourceFactory");
+    private static final String SETTINGS = "/database.properties";
+
+    private DataSourceFactory() {
+    }
+
+    /**
+     * @return settings of database.properties, overridden by the system properties
+     */
+    public static Properties loadSettings() {
+        Properties settings = new Properties();
+        try (InputStream in = DataSourceFactory.class.getResourceAsStream(SETTINGS)) {
+            if (in != null) {
+                settings.load(in);
+            } else {
+                logger.warn(SETTINGS + " not found on the classpath, using system properties only");
+            }
+        } catch (IOException e) {
+            logger.error("Error while reading " + SETTINGS, e);
+        }
+        settings.putAll(System.getProperties());
+        return settings;
+    }
+
+    public static DataBaseMode getMode(Properties settings) {
+        return DataBaseMode.valueOf(settings.getProperty("db.mode", "mysql").trim().toUpperCase(Locale.ROOT));
+    }
+
+    public static String getUrl(Properties settings, String database) {
+        DataBaseMode mode = getMode(settings);
+        return required(settings, mode.getSettingsPrefix() + "url").replace("{database}", database);
+    }
+
+    /**
+     * create the connection pool of a database; the schema is applied when the database is embedded
+     *
+     * @param settings see loadSettings
+     * @param database database name, prod or test
+     * @return a new connection pool
+     */
+    public static ConnectionPool create(Properties settings, String database) throws ClassNotFoundException, SQLException {
+        DataBaseMode mode = getMode(settings);
+        Class.forName(mode.getDriverClassName());
+        String prefix = mode.getSettingsPrefix();
+        ConnectionPool pool = new ConnectionPool(getUrl(settings, database),
+                settings.getProperty(prefix + "user"),
+                settings.getProperty(prefix + "password", ""),
+                intSetting(settings, "db.pool.minSize"),
+                intSetting(settings, "db.pool.maxSize"),
+                longSetting(settings, "db.pool.idleTimeoutMs"),
+                longSetting(settings, "db.pool.borrowTimeoutMs"),
+                longSetting(settings, "db.pool.validationIntervalMs"),
+                intSetting(settings, "db.pool.statementCacheSize"));
+        if (mode == DataBaseMode.EMBEDDED) {
+            try {
+                EmbeddedSchema.apply(pool, database);
+            } catch (SQLException e) {
+                pool.shutdown();
+                throw e;
+            }
+        }
+        logger.info("Using " + mode + " database " + database);
+        return pool;
+    }
+
+    private static String required(Properties settings, String key) {
+        String value = settings.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing database setting " + key);
+        }
+        return value.trim();
+    }
+
+    private static int intSetting(Properties settings, String key) {
+        return Integer.parseInt(required(settings, key));
+    }
+
+    private static long longSetting(Properties settings, String key) {
+        return Long.parseLong(required(settings, key));
+    }
+}
@@ -0,0 +1,88 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Applies the statements of Data.sql to an embedded database.
+ * Data.sql sets up every database of the MySQL server ("create database prod; use prod; ..."), so only the
+ * statements following "use {database}" are kept. Nothing is done when the tables already exist.
+ */
+public class EmbeddedSchema {
+
+    private static final Logger logger = LogManager.getLogger("EmbeddedSchema");
+    private static final String SCRIPT = "/Data.sql";
+
+    private EmbeddedSchema() {
+    }
+
+    public static void apply(DataSource dataSource, String database) throws SQLException {
+        try (Connection con = dataSource.getConnection(); Statement statement = con.createStatement()) {
+            if (tablesExist(statement)) {
+                return;
+            }
+            logger.info("Applying " + SCRIPT + " to embedded database " + database);
+            for (String sql : statementsOf(database)) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    static List<String> statementsOf(String database) throws SQLException {
+        List<String> statements = new ArrayList<>();
+        String current = null;
+        for (String sql : readScript().replaceAll("(?s)/\\*.*?\\*/", "").split(";")) {
+            sql = sql.trim();
+            String lower = sql.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("use ")) {
+                current = sql.substring(4).trim();
+            } else if (!sql.isEmpty() && !lower.startsWith("create database") && !lower.equals("commit")
+                    && database.equalsIgnoreCase(current)) {
+                statements.add(sql);
+            }
+        }
+        if (statements.isEmpty()) {
+            throw new SQLException("No statement for database " + database + " in " + SCRIPT);
+        }
+        return statements;
+    }
+
+    private static boolean tablesExist(Statement statement) {
+        try {
+            statement.executeQuery("select 1 from parking where 1 = 0").close();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static String readScript() throws SQLException {
+        InputStream in = EmbeddedSchema.class.getResourceAsStream(SCRIPT);
+        if (in == null) {
+            throw new SQLException(SCRIPT + " not found on the classpath");
+        }
+        StringBuilder script = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                script.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            throw new SQLException("Unable to read " + SCRIPT, e);
+        }
+        return script.toString();
+    }
+}
@@ -3,11 +3,50 @@ package com.parkit.parkingsystem.constants;
 public class DBConstants {
 
     public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE from parking";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String CLAIM_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
+    //spots locked by the claims of other gates are skipped instead of waited for (MySQL 8 or later)
+    public static final String LOCK_NEXT_PARKING_SPOT = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE = ? order by PARKING_NUMBER limit 1 for update skip locked";
 
     public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
     public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? ";
     public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME limit 1";
-    public static final String GET_NB_TICKET = "select count(*) from ticket where VEHICLE_REG_NUMBER = ?";
+    public static final String GET_LAST_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME desc, t.ID desc limit 1";
+    //tickets of the ticket table plus the archived ones
+    public static final String GET_NB_TICKET = "select (select count(*) from ticket where VEHICLE_REG_NUMBER = ?) + coalesce((select ARCHIVED_VISITS from vehicle_visits where VEHICLE_REG_NUMBER = ?), 0)";
+    //the same for several vehicles, the placeholders of both IN lists being added by the caller
+    public static final String GET_NB_TICKETS = "select VEHICLE_REG_NUMBER, sum(VISITS) from (select VEHICLE_REG_NUMBER, count(*) as VISITS from ticket where VEHICLE_REG_NUMBER in (%1$s) group by VEHICLE_REG_NUMBER "
+            + "union all select VEHICLE_REG_NUMBER, ARCHIVED_VISITS from vehicle_visits where VEHICLE_REG_NUMBER in (%1$s)) v group by VEHICLE_REG_NUMBER";
+    public static final String GET_OPEN_TICKET = "select t.ID, t.PARKING_NUMBER, t.IN_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? and t.OUT_TIME is null order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKET_WITH_COUNT = "select t.ID, t.PARKING_NUMBER, t.IN_TIME, p.TYPE, (select count(*) from ticket c where c.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER) + coalesce((select v.ARCHIVED_VISITS from vehicle_visits v where v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER), 0) from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? and t.OUT_TIME is null order by t.IN_TIME desc limit 1";
+    public static final String GET_OPEN_TICKETS = "select t.ID, t.PARKING_NUMBER, t.VEHICLE_REG_NUMBER, t.IN_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME is null";
+    public static final String CLOSE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=? and OUT_TIME is null";
+    public static final String GET_RECENT_VISIT_COUNTS = "select t.VEHICLE_REG_NUMBER, count(*) + coalesce(max(v.ARCHIVED_VISITS), 0) from ticket t left join vehicle_visits v on v.VEHICLE_REG_NUMBER = t.VEHICLE_REG_NUMBER group by t.VEHICLE_REG_NUMBER order by max(t.IN_TIME) desc limit ?";
+
+    //keyset pages of the ticket history over the ticket table and the archive, in ID order for a vehicle and in
+    //IN_TIME, ID order for a period
+    public static final String GET_VEHICLE_TICKETS_PAGE = "(select t.ID, t.PARKING_NUMBER, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.VEHICLE_REG_NUMBER = ? and t.ID > ? order by t.ID limit ?) "
+            + "union all (select a.ID, a.PARKING_NUMBER, a.VEHICLE_REG_NUMBER, a.PRICE, a.IN_TIME, a.OUT_TIME, p.TYPE from ticket_archive a join parking p on p.PARKING_NUMBER = a.PARKING_NUMBER where a.VEHICLE_REG_NUMBER = ? and a.ID > ? order by a.ID limit ?) order by 1 limit ?";
+    public static final String GET_PERIOD_TICKETS_PAGE = "(select t.ID, t.PARKING_NUMBER, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.IN_TIME >= ? and t.IN_TIME < ? and (t.IN_TIME > ? or (t.IN_TIME = ? and t.ID > ?)) order by t.IN_TIME, t.ID limit ?) "
+            + "union all (select a.ID, a.PARKING_NUMBER, a.VEHICLE_REG_NUMBER, a.PRICE, a.IN_TIME, a.OUT_TIME, p.TYPE from ticket_archive a join parking p on p.PARKING_NUMBER = a.PARKING_NUMBER where a.IN_TIME >= ? and a.IN_TIME < ? and (a.IN_TIME > ? or (a.IN_TIME = ? and a.ID > ?)) order by a.IN_TIME, a.ID limit ?) order by 5, 1 limit ?";
+
+    //ticket export, by ranges of ID, archived tickets included
+    public static final String GET_TICKET_ID_RANGE = "select min(ID), max(ID) from ticket";
+    public static final String GET_ARCHIVED_TICKET_ID_RANGE = "select min(ID), max(ID) from ticket_archive";
+    public static final String GET_TICKETS_TO_EXPORT = "select t.ID, t.PARKING_NUMBER, p.TYPE, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.ID >= ? and t.ID < ? "
+            + "union all select a.ID, a.PARKING_NUMBER, p.TYPE, a.VEHICLE_REG_NUMBER, a.PRICE, a.IN_TIME, a.OUT_TIME from ticket_archive a join parking p on p.PARKING_NUMBER = a.PARKING_NUMBER where a.ID >= ? and a.ID < ? order by 1";
+
+    //revenue and occupancy summaries, the counters of a period are incremented by each process
+    public static final String GET_SUMMARIES_SINCE = "select PERIOD, PERIOD_START, TYPE, ENTRIES, EXITS, REVENUE_CENTS, STAY_MINUTES, STAYS_30M, STAYS_1H, STAYS_2H, STAYS_4H, STAYS_8H, STAYS_24H, STAYS_LONGER from parking_summary where PERIOD = ? and PERIOD_START >= ?";
+    public static final String ADD_TO_SUMMARY = "update parking_summary set ENTRIES = ENTRIES + ?, EXITS = EXITS + ?, REVENUE_CENTS = REVENUE_CENTS + ?, STAY_MINUTES = STAY_MINUTES + ?, STAYS_30M = STAYS_30M + ?, STAYS_1H = STAYS_1H + ?, STAYS_2H = STAYS_2H + ?, STAYS_4H = STAYS_4H + ?, STAYS_8H = STAYS_8H + ?, STAYS_24H = STAYS_24H + ?, STAYS_LONGER = STAYS_LONGER + ? where PERIOD = ? and PERIOD_START = ? and TYPE = ?";
+    public static final String INSERT_SUMMARY = "insert into parking_summary(ENTRIES, EXITS, REVENUE_CENTS, STAY_MINUTES, STAYS_30M, STAYS_1H, STAYS_2H, STAYS_4H, STAYS_8H, STAYS_24H, STAYS_LONGER, PERIOD, PERIOD_START, TYPE) values(?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    public static final String GET_OCCUPANCY = "select p.TYPE, count(*) from ticket t join parking p on p.PARKING_NUMBER = t.PARKING_NUMBER where t.OUT_TIME is null group by p.TYPE";
+
+    public static final String GET_TICKETS_TO_ARCHIVE = "select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where OUT_TIME is not null and OUT_TIME < ? order by ID limit ?";
+    public static final String ARCHIVE_TICKET = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)";
+    public static final String DELETE_ARCHIVED_TICKET = "delete from ticket where ID = ? and OUT_TIME is not null";
+    public static final String ADD_ARCHIVED_VISITS = "update vehicle_visits set ARCHIVED_VISITS = ARCHIVED_VISITS + ? where VEHICLE_REG_NUMBER = ?";
+    public static final String INSERT_ARCHIVED_VISITS = "insert into vehicle_visits(ARCHIVED_VISITS, VEHICLE_REG_NUMBER) values(?,?)";
     public static final String GET_LAST_TICKET_ID_QUERY = "SELECT MAX(ID) AS LAST_TICKET_ID FROM ticket WHERE VEHICLE_REG_NUMBER = ?";
 }
@@ -0,0 +1,93 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Open tickets of the vehicles currently parked, by plate.
+ * Loaded at startup from the tickets without out-time, then kept up to date by TicketDAO, so an exit finds its
+ * ticket and an entry knows whether the vehicle is already parked without querying the database.
+ * TicketDAO reserves the plate while the ticket is saved and publishes a copy once it has its id, so a ticket
+ * read from the registry is never changed afterwards.
+ */
+public class ActiveTicketRegistry {
+
+    //held by a plate whose ticket is being saved
+    private static final Ticket PENDING = new Ticket();
+
+    private final ConcurrentMap<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    public ActiveTicketRegistry(Collection<Ticket> openTickets) {
+        for (Ticket ticket : openTickets) {
+            tickets.put(ticket.getVehicleRegNumber(), ticket);
+        }
+    }
+
+    /**
+     * @param vehicleRegNumber
+     * @return open ticket of the vehicle, null if it is not parked or its ticket is not saved yet
+     */
+    public Ticket get(String vehicleRegNumber) {
+        Ticket ticket = tickets.get(vehicleRegNumber);
+        return ticket == PENDING ? null : ticket;
+    }
+
+    public boolean contains(String vehicleRegNumber) {
+        return tickets.containsKey(vehicleRegNumber);
+    }
+
+    /**
+     * @param ticket
+     * @return false if the vehicle already has an open ticket
+     */
+    public boolean register(Ticket ticket) {
+        return tickets.putIfAbsent(ticket.getVehicleRegNumber(), ticket) == null;
+    }
+
+    /**
+     * hold the plate while the ticket of the vehicle is saved, contains is then true and get null
+     *
+     * @param vehicleRegNumber
+     * @return false if the vehicle already has an open ticket
+     */
+    public boolean reserve(String vehicleRegNumber) {
+        return tickets.putIfAbsent(vehicleRegNumber, PENDING) == null;
+    }
+
+    /**
+     * replace the reservation of the plate by its saved ticket, unless the vehicle left meanwhile
+     *
+     * @param ticket saved ticket with its id, not changed afterwards
+     */
+    public void publish(Ticket ticket) {
+        tickets.replace(ticket.getVehicleRegNumber(), PENDING, ticket);
+    }
+
+    /**
+     * the ticket of the reservation is not saved
+     *
+     * @param vehicleRegNumber
+     */
+    public void cancel(String vehicleRegNumber) {
+        tickets.remove(vehicleRegNumber, PENDING);
+    }
+
+    public void remove(String vehicleRegNumber) {
+        tickets.remove(vehicleRegNumber);
+    }
+
+    /**
+     * @param ticket
+     * @return false if the vehicle has another open ticket than this one
+     */
+    public boolean remove(Ticket ticket) {
+        return tickets.remove(ticket.getVehicleRegNumber(), ticket);
+    }
+
+    public int size() {
+        return tickets.size();
+    }
+}
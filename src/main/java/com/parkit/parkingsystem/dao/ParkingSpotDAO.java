@@ -10,17 +10,27 @@ import org.apache.logging.log4j.Logger;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ParkingSpotDAO {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    //availability of the spots kept in memory, null until loadParkingSpotIndex is called
+    public ParkingSpotIndex parkingSpotIndex;
 
     /**
-     * method of retrieving the next available parking space for a specific parking type
+     * method of retrieving the next available parking space for a specific parking type,
+     * answered from the spot index without any query once it is loaded
      * @param parkingType
      * @return int > 1 : spot is available /int > 1 : spot is not available
      */
     public int getNextAvailableSlot(ParkingType parkingType) {
+        if (parkingSpotIndex != null) {
+            return parkingSpotIndex.getNextAvailableSlot(parkingType);
+        }
         Connection con = null;
         int result = -1;
         try {
@@ -57,6 +67,9 @@ public class ParkingSpotDAO {
             ps.setInt(2, parkingSpot.getId());
             int updateRowCount = ps.executeUpdate();
             dataBaseConfig.closePreparedStatement(ps);
+            if (updateRowCount == 1 && parkingSpotIndex != null) {
+                parkingSpotIndex.update(parkingSpot);
+            }
             return (updateRowCount == 1);
         } catch (Exception ex) {
             logger.error("Error updating parking info", ex);
@@ -65,4 +78,142 @@ public class ParkingSpotDAO {
             dataBaseConfig.closeConnection(con);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * take the next available spot of a type: the spot is only marked as not available if it is still available
+     * in the DB, so two gates can never get the same spot. Without the spot index, the spot is locked by the
+     * query that finds it and the spots being claimed by other gates are skipped, so no gate waits or retries.
+     * @param parkingType
+     * @return the spot, now not available, or null if every spot of this type is taken
+     * @throws SQLException if the DB cannot be reached, which does not mean the parking is full
+     */
+    public ParkingSpot claimNextSpot(ParkingType parkingType) throws SQLException, ClassNotFoundException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            if (parkingSpotIndex != null) {
+                for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS; attempt++) {
+                    int parkingNumber = parkingSpotIndex.claim(parkingType);
+                    if (parkingNumber <= 0) {
+                        return null;
+                    }
+                    if (claimParkingSpot(con, parkingNumber)) {
+                        return new ParkingSpot(parkingNumber, parkingType, false);
+                    }
+                    //taken by another process, the index no longer offers it
+                    logger.info("Parking spot " + parkingNumber + " already taken, trying the next one");
+                }
+                logger.warn("Spot index out of step with the DB, claiming a " + parkingType + " parking spot from the DB");
+            }
+            int parkingNumber = lockNextParkingSpot(con, parkingType);
+            return parkingNumber > 0 ? new ParkingSpot(parkingNumber, parkingType, false) : null;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * find and take the next available spot in one transaction, the spot staying locked until it is taken
+     */
+    private int lockNextParkingSpot(Connection con, ParkingType parkingType) throws SQLException {
+        con.setAutoCommit(false);
+        try {
+            int parkingNumber = -1;
+            PreparedStatement ps = con.prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT);
+            ps.setString(1, parkingType.toString());
+            ResultSet rs = ps.executeQuery();
+            if (rs.next()) {
+                parkingNumber = rs.getInt(1);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            if (parkingNumber > 0) {
+                ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+                ps.setBoolean(1, false);
+                ps.setInt(2, parkingNumber);
+                ps.executeUpdate();
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            con.commit();
+            return parkingNumber;
+        } catch (SQLException ex) {
+            try {
+                con.rollback();
+            } catch (SQLException e) {
+                logger.error("Error while rolling back the claim of a parking spot", e);
+            }
+            throw ex;
+        } finally {
+            try {
+                con.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error while restoring auto-commit", e);
+            }
+        }
+    }
+
+    private boolean claimParkingSpot(Connection con, int parkingNumber) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.CLAIM_PARKING_SPOT);
+        try {
+            ps.setInt(1, parkingNumber);
+            return ps.executeUpdate() == 1;
+        } catch (SQLException ex) {
+            if (parkingSpotIndex != null) {
+                //the spot was taken out of the index but not claimed
+                parkingSpotIndex.update(new ParkingSpot(parkingNumber, null, true));
+            }
+            throw ex;
+        } finally {
+            dataBaseConfig.closePreparedStatement(ps);
+        }
+    }
+
+    /**
+     * keep the spot index in step with a spot whose availability was saved in another transaction,
+     * e.g. when TicketDAO.closeTicket frees it
+     * @param parkingSpot
+     */
+    public void onParkingUpdated(ParkingSpot parkingSpot) {
+        if (parkingSpotIndex != null) {
+            parkingSpotIndex.update(parkingSpot);
+        }
+    }
+
+    /**
+     * all the spots of the parking
+     * @return list of spots, empty if they cannot be read
+     */
+    public List<ParkingSpot> getParkingSpots() {
+        Connection con = null;
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_PARKING_SPOTS);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(3)), rs.getBoolean(2)));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        } catch (Exception ex) {
+            logger.error("Error fetching parking spots", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return parkingSpots;
+    }
+
+    /**
+     * load the availability of every spot in memory, the next available slot is then found without query
+     * @return the loaded index, null if no spot could be read
+     */
+    public ParkingSpotIndex loadParkingSpotIndex() {
+        List<ParkingSpot> parkingSpots = getParkingSpots();
+        if (parkingSpots.isEmpty()) {
+            logger.warn("No parking spot loaded, next available slots will be queried from the DB");
+            return null;
+        }
+        parkingSpotIndex = new ParkingSpotIndex(parkingSpots);
+        return parkingSpotIndex;
+    }
+}
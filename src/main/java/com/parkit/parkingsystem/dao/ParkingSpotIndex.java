@@ -0,0 +1,78 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory availability of the parking spots: one ordered set of free spot numbers per parking type.
+ * It is loaded from the parking table at startup and kept up to date by ParkingSpotDAO.updateParking,
+ * so it is authoritative as long as this application is the only one writing the parking table.
+ */
+public class ParkingSpotIndex {
+
+    private final Map<ParkingType, NavigableSet<Integer>> freeSpots = new EnumMap<>(ParkingType.class);
+    private final ConcurrentMap<Integer, ParkingType> spotTypes = new ConcurrentHashMap<>();
+
+    public ParkingSpotIndex(Collection<ParkingSpot> parkingSpots) {
+        for (ParkingType parkingType : ParkingType.values()) {
+            freeSpots.put(parkingType, new ConcurrentSkipListSet<>());
+        }
+        for (ParkingSpot parkingSpot : parkingSpots) {
+            spotTypes.put(parkingSpot.getId(), parkingSpot.getParkingType());
+            if (parkingSpot.isAvailable()) {
+                freeSpots.get(parkingSpot.getParkingType()).add(parkingSpot.getId());
+            }
+        }
+    }
+
+    /**
+     * lowest free spot number, in O(log n)
+     *
+     * @param parkingType
+     * @return spot number, -1 if every spot of this type is taken
+     */
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        Integer parkingNumber = freeSpots.get(parkingType).ceiling(Integer.MIN_VALUE);
+        return parkingNumber == null ? -1 : parkingNumber;
+    }
+
+    /**
+     * take the lowest free spot out of the index, two callers never get the same spot
+     *
+     * @param parkingType
+     * @return spot number, -1 if every spot of this type is taken
+     */
+    public int claim(ParkingType parkingType) {
+        Integer parkingNumber = freeSpots.get(parkingType).pollFirst();
+        return parkingNumber == null ? -1 : parkingNumber;
+    }
+
+    /**
+     * record the availability of a spot once it is saved in the database
+     *
+     * @param parkingSpot
+     */
+    public void update(ParkingSpot parkingSpot) {
+        ParkingType parkingType = spotTypes.get(parkingSpot.getId());
+        if (parkingType == null) {
+            return;
+        }
+        if (parkingSpot.isAvailable()) {
+            freeSpots.get(parkingType).add(parkingSpot.getId());
+        } else {
+            freeSpots.get(parkingType).remove(parkingSpot.getId());
+        }
+    }
+
+    public int countAvailable(ParkingType parkingType) {
+        return freeSpots.get(parkingType).size();
+    }
+}
@@ -0,0 +1,155 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SummaryPeriod;
+import com.parkit.parkingsystem.model.ParkingSummary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and increments the rows of parking_summary, one per period, start of period and type of spot.
+ */
+public class ParkingSummaryDAO {
+
+    private static final Logger logger = LogManager.getLogger("ParkingSummaryDAO");
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    /**
+     * @param period
+     * @param since
+     * @return summaries of the periods starting at or after since, empty on error
+     */
+    public List<ParkingSummary> getSummariesSince(SummaryPeriod period, Date since) {
+        List<ParkingSummary> summaries = new ArrayList<>();
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_SUMMARIES_SINCE);
+            ps.setString(1, period.name());
+            ps.setTimestamp(2, new Timestamp(since.getTime()));
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                ParkingSummary summary = new ParkingSummary();
+                summary.setPeriod(SummaryPeriod.valueOf(rs.getString(1)));
+                summary.setPeriodStart(rs.getTimestamp(2));
+                summary.setParkingType(ParkingType.valueOf(rs.getString(3)));
+                summary.setEntries(rs.getLong(4));
+                summary.setExits(rs.getLong(5));
+                summary.setRevenueCents(rs.getLong(6));
+                summary.setStayMinutes(rs.getLong(7));
+                long[] stays = summary.getStays();
+                for (int i = 0; i < stays.length; i++) {
+                    stays[i] = rs.getLong(8 + i);
+                }
+                summaries.add(summary);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        } catch (Exception ex) {
+            logger.error("Error fetching parking summaries", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return summaries;
+    }
+
+    /**
+     * add the counters of each summary to its row, created if missing, in one transaction
+     *
+     * @param increments
+     * @return false if nothing was added
+     */
+    public boolean addToSummaries(List<ParkingSummary> increments) {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            PreparedStatement update = con.prepareStatement(DBConstants.ADD_TO_SUMMARY);
+            PreparedStatement insert = null;
+            for (ParkingSummary increment : increments) {
+                bindSummary(update, increment);
+                if (update.executeUpdate() == 0) {
+                    if (insert == null) {
+                        insert = con.prepareStatement(DBConstants.INSERT_SUMMARY);
+                    }
+                    bindSummary(insert, increment);
+                    insert.executeUpdate();
+                }
+            }
+            dataBaseConfig.closePreparedStatement(update);
+            dataBaseConfig.closePreparedStatement(insert);
+            con.commit();
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error saving parking summaries", ex);
+            if (con != null) {
+                try {
+                    con.rollback();
+                } catch (SQLException e) {
+                    logger.error("Error while rolling back parking summaries", e);
+                }
+            }
+            return false;
+        } finally {
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.error("Error while restoring auto-commit", e);
+                }
+            }
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @return number of vehicles parked by type of spot, empty on error
+     */
+    public Map<ParkingType, Integer> getOccupancy() {
+        Map<ParkingType, Integer> occupancy = new EnumMap<>(ParkingType.class);
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_OCCUPANCY);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                occupancy.put(ParkingType.valueOf(rs.getString(1)), rs.getInt(2));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+        } catch (Exception ex) {
+            logger.error("Error fetching occupancy", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return occupancy;
+    }
+
+    //counters first, then the key, in the parameter order of both ADD_TO_SUMMARY and INSERT_SUMMARY
+    private void bindSummary(PreparedStatement ps, ParkingSummary summary) throws SQLException {
+        ps.setLong(1, summary.getEntries());
+        ps.setLong(2, summary.getExits());
+        ps.setLong(3, summary.getRevenueCents());
+        ps.setLong(4, summary.getStayMinutes());
+        long[] stays = summary.getStays();
+        for (int i = 0; i < stays.length; i++) {
+            ps.setLong(5 + i, stays[i]);
+        }
+        ps.setString(5 + stays.length, summary.getPeriod().name());
+        ps.setTimestamp(6 + stays.length, new Timestamp(summary.getPeriodStart().getTime()));
+        ps.setString(7 + stays.length, summary.getParkingType().name());
+    }
+}
@@ -0,0 +1,200 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the closed tickets older than a horizon from the ticket table to ticket_archive, so that the queries of the
+ * gates run on a small table. The number of archived tickets of each vehicle is added to vehicle_visits in the same
+ * transaction, and GET_NB_TICKET adds it to the tickets still in the ticket table, so the visit count used for the
+ * recurring-user discount does not change.
+ * Tickets are moved by small batches, each in its own short transaction, with a pause between two batches. Only
+ * closed tickets are touched, which the gates never update.
+ */
+public class TicketArchiver {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiver");
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    //time of the archiving horizon
+    public Clock clock = Clock.systemDefaultZone();
+    private final int batchSize;
+    private final long pauseMillis;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param batchSize   maximum number of tickets moved in one transaction
+     * @param pauseMillis pause between two batches, leaving the database to the gates
+     */
+    public TicketArchiver(int batchSize, long pauseMillis) {
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * archive every closed ticket that left before the horizon, batch after batch
+     *
+     * @param horizon
+     * @return number of tickets archived
+     */
+    public int archive(Date horizon) throws InterruptedException {
+        int total = 0;
+        int archived;
+        do {
+            archived = archiveBatch(horizon);
+            total += archived;
+            if (archived == batchSize) {
+                Thread.sleep(pauseMillis);
+            }
+        } while (archived == batchSize);
+        if (total > 0) {
+            logger.info(total + " tickets closed before " + horizon + " archived");
+        }
+        return total;
+    }
+
+    /**
+     * move one batch of tickets in one transaction
+     *
+     * @param horizon
+     * @return number of tickets archived, 0 when there is nothing left or on error
+     */
+    public int archiveBatch(Date horizon) {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_ARCHIVE);
+            ps.setTimestamp(1, new Timestamp(horizon.getTime()));
+            ps.setInt(2, batchSize);
+            ResultSet rs = ps.executeQuery();
+            PreparedStatement archive = con.prepareStatement(DBConstants.ARCHIVE_TICKET);
+            List<Integer> ids = new ArrayList<>();
+            //plates in a fixed order, two transactions never lock them in opposite orders
+            Map<String, Integer> visits = new TreeMap<>();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+                visits.merge(rs.getString(3), 1, Integer::sum);
+                archive.setInt(1, rs.getInt(1));
+                archive.setInt(2, rs.getInt(2));
+                archive.setString(3, rs.getString(3));
+                archive.setDouble(4, rs.getDouble(4));
+                archive.setTimestamp(5, rs.getTimestamp(5));
+                archive.setTimestamp(6, rs.getTimestamp(6));
+                archive.addBatch();
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            if (ids.isEmpty()) {
+                dataBaseConfig.closePreparedStatement(archive);
+                con.commit();
+                return 0;
+            }
+            archive.executeBatch();
+            dataBaseConfig.closePreparedStatement(archive);
+            PreparedStatement delete = con.prepareStatement(DBConstants.DELETE_ARCHIVED_TICKET);
+            int deleted = 0;
+            for (int id : ids) {
+                delete.setInt(1, id);
+                deleted += delete.executeUpdate();
+            }
+            dataBaseConfig.closePreparedStatement(delete);
+            if (deleted != ids.size()) {
+                logger.error("Tickets changed while being archived, batch cancelled");
+                con.rollback();
+                return 0;
+            }
+            addArchivedVisits(con, visits);
+            con.commit();
+            return ids.size();
+        } catch (Exception ex) {
+            logger.error("Error archiving tickets", ex);
+            if (con != null) {
+                try {
+                    con.rollback();
+                } catch (SQLException e) {
+                    logger.error("Error while rolling back archived tickets", e);
+                }
+            }
+            return 0;
+        } finally {
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.error("Error while restoring auto-commit", e);
+                }
+            }
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * archive in the background, every interval, the tickets closed more than horizonDays ago
+     *
+     * @param horizonDays
+     * @param intervalMinutes
+     */
+    public synchronized void start(int horizonDays, long intervalMinutes) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                archive(new Date(clock.millis() - TimeUnit.DAYS.toMillis(horizonDays)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * stop the background archiving, the batch in progress is rolled back if it is interrupted
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void addArchivedVisits(Connection con, Map<String, Integer> visits) throws SQLException {
+        PreparedStatement update = con.prepareStatement(DBConstants.ADD_ARCHIVED_VISITS);
+        PreparedStatement insert = null;
+        for (Map.Entry<String, Integer> visit : visits.entrySet()) {
+            update.setInt(1, visit.getValue());
+            update.setString(2, visit.getKey());
+            if (update.executeUpdate() == 0) {
+                if (insert == null) {
+                    insert = con.prepareStatement(DBConstants.INSERT_ARCHIVED_VISITS);
+                }
+                insert.setInt(1, visit.getValue());
+                insert.setString(2, visit.getKey());
+                insert.executeUpdate();
+            }
+        }
+        dataBaseConfig.closePreparedStatement(update);
+        dataBaseConfig.closePreparedStatement(insert);
+    }
+}
@@ -5,42 +5,140 @@ import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculator;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TicketDAO {
 
+    /**
+     * outcome of saveTicket
+     */
+    public enum SaveStatus {
+        SAVED,
+        //the vehicle has an open ticket already, e.g. saved by a concurrent entry
+        ALREADY_PARKED,
+        FAILED
+    }
+
     private static final Logger logger = LogManager.getLogger("TicketDAO");
+    private static final long WRITE_BEHIND_FLUSH_TIMEOUT_MS = 5000;
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    //number of tickets of the recent vehicles, null until loadVisitCountCache is called
+    public VisitCountCache visitCountCache;
+    //open tickets by plate, null until loadActiveTicketRegistry is called
+    public ActiveTicketRegistry activeTicketRegistry;
+    //queues the ticket writes during peaks, null to write each ticket synchronously
+    public TicketWriteBehind ticketWriteBehind;
+    //rows sent by the driver per round trip when reading the ticket history
+    public int historyFetchSize = 500;
+
     /**
      * A methode that to save the ticket to the database
      *
      * @param ticket
-     * @return true or false
+     * @return SAVED, or ALREADY_PARKED when the active ticket registry holds an open ticket of the vehicle
      */
-    public boolean saveTicket(Ticket ticket) {
+    public SaveStatus saveTicket(Ticket ticket) {
+        String vehicleRegNumber = ticket.getVehicleRegNumber();
+        if (activeTicketRegistry != null && !activeTicketRegistry.reserve(vehicleRegNumber)) {
+            logger.error("Vehicle " + vehicleRegNumber + " is already parked");
+            return SaveStatus.ALREADY_PARKED;
+        }
+        //the registry gets a copy once the ticket has its id, on the writer thread for the write-behind
+        Runnable publish = activeTicketRegistry == null ? null : () -> activeTicketRegistry.publish(copyOf(ticket));
+        if (ticketWriteBehind != null && ticketWriteBehind.save(ticket, publish)) {
+            if (visitCountCache != null) {
+                visitCountCache.increment(vehicleRegNumber);
+            }
+            return SaveStatus.SAVED;
+        }
         Connection con = null;
+        boolean saved = false;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
+            //the id of the ticket is needed to close it from the registry
+            PreparedStatement ps = activeTicketRegistry != null
+                    ? con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)
+                    : con.prepareStatement(DBConstants.SAVE_TICKET);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             //ps.setInt(1,ticket.getId());
             ps.setInt(1, ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
+            ps.setString(2, vehicleRegNumber);
             ps.setDouble(3, ticket.getPrice());
             ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
             ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
-            return ps.execute();
+            ps.execute();
+            if (activeTicketRegistry != null) {
+                ResultSet keys = ps.getGeneratedKeys();
+                boolean hasKey = keys.next();
+                if (hasKey) {
+                    ticket.setId(keys.getInt(1));
+                }
+                dataBaseConfig.closeResultSet(keys);
+                if (!hasKey) {
+                    throw new SQLException("No generated key for the ticket of vehicle " + vehicleRegNumber);
+                }
+                publish.run();
+            }
+            dataBaseConfig.closePreparedStatement(ps);
+            saved = true;
+            if (visitCountCache != null) {
+                visitCountCache.increment(vehicleRegNumber);
+            }
         } catch (Exception ex) {
-            logger.error("Error fetching next available slot", ex);
+            logger.error("Error saving ticket", ex);
         } finally {
+            if (!saved && activeTicketRegistry != null) {
+                activeTicketRegistry.cancel(vehicleRegNumber);
+            }
             dataBaseConfig.closeConnection(con);
-            return false;
+        }
+        return saved ? SaveStatus.SAVED : SaveStatus.FAILED;
+    }
+
+    /**
+     * undo what saveTicket or updateTicket did when the write-behind gives up the write of the ticket,
+     * to be added as a LostWriteListener of the write-behind
+     *
+     * @param ticket
+     * @param insert
+     */
+    public void onLostWrite(Ticket ticket, boolean insert) {
+        if (insert) {
+            if (activeTicketRegistry != null) {
+                activeTicketRegistry.cancel(ticket.getVehicleRegNumber());
+            }
+            if (visitCountCache != null) {
+                visitCountCache.decrement(ticket.getVehicleRegNumber());
+            }
+        } else if (activeTicketRegistry != null) {
+            //still open in the database
+            Ticket openTicket = copyOf(ticket);
+            openTicket.setPrice(0);
+            openTicket.setOutTime(null);
+            activeTicketRegistry.register(openTicket);
         }
     }
 
@@ -51,11 +149,26 @@ public class TicketDAO {
      * @return ticket
      */
     public Ticket getTicket(String vehicleRegNumber) {
+        return getTicket(vehicleRegNumber, DBConstants.GET_TICKET);
+    }
+
+    /**
+     * the latest ticket of a vehicle, open or closed
+     *
+     * @param vehicleRegNumber
+     * @return ticket, null if the vehicle has none
+     */
+    public Ticket getLastTicket(String vehicleRegNumber) {
+        return getTicket(vehicleRegNumber, DBConstants.GET_LAST_TICKET);
+    }
+
+    private Ticket getTicket(String vehicleRegNumber, String query) {
+        awaitWriteBehind();
         Connection con = null;
         Ticket ticket = null;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
+            PreparedStatement ps = con.prepareStatement(query);
             //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
             ps.setString(1, vehicleRegNumber);
             ResultSet rs = ps.executeQuery();
@@ -87,6 +200,12 @@ public class TicketDAO {
      * @return true or false
      */
     public boolean updateTicket(Ticket ticket) {
+        if (ticketWriteBehind != null && ticketWriteBehind.update(ticket)) {
+            if (activeTicketRegistry != null) {
+                activeTicketRegistry.remove(ticket.getVehicleRegNumber());
+            }
+            return true;
+        }
         Connection con = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -107,6 +226,9 @@ public class TicketDAO {
                     ps.setInt(3, lastTicketId);  //Last ticket ID
                     int affectedRows = ps.executeUpdate();
                     if (affectedRows > 0) {
+                        if (activeTicketRegistry != null) {
+                            activeTicketRegistry.remove(ticket.getVehicleRegNumber());
+                        }
                         return true;
                     }
                 }
@@ -120,29 +242,579 @@ public class TicketDAO {
     }
 
     /**
-     * count how many tickets are recorded for a vehicle
+     * count how many tickets are recorded for a vehicle, answered from the visit count cache when loaded
      *
      * @param vehicleRegNumber
      * @return countTicket
      */
     public int getNbTicket(String vehicleRegNumber) {
+        Object loadToken = null;
+        if (visitCountCache != null) {
+            Integer cachedCount = visitCountCache.get(vehicleRegNumber);
+            if (cachedCount != null) {
+                return cachedCount;
+            }
+            loadToken = visitCountCache.beginLoad(vehicleRegNumber);
+        }
+        awaitWriteBehind();
         int countTicket = 0;
         Connection con = null;
         try {
             con = dataBaseConfig.getConnection();
             PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
             ps.setString(1, vehicleRegNumber);
+            ps.setString(2, vehicleRegNumber);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 countTicket = rs.getInt(1);
             }
             dataBaseConfig.closeResultSet(rs);
             dataBaseConfig.closePreparedStatement(ps);
+            if (loadToken != null) {
+                visitCountCache.endLoad(vehicleRegNumber, loadToken, countTicket);
+                loadToken = null;
+            }
         } catch (Exception ex) {
             logger.error("Error counting tickets for vehicle: " + vehicleRegNumber, ex);
         } finally {
+            if (loadToken != null) {
+                visitCountCache.cancelLoad(vehicleRegNumber, loadToken);
+            }
             dataBaseConfig.closeConnection(con);
         }
         return countTicket;
     }
-}
\ No newline at end of file
+
+    /**
+     * count the tickets of several vehicles with one query, e.g. the vehicles of a batch of gate events; the
+     * vehicles of the visit count cache are answered from it
+     *
+     * @param vehicleRegNumbers
+     * @return number of tickets by plate, a vehicle without ticket or not counted because of an error being absent
+     */
+    public Map<String, Integer> getNbTickets(Collection<String> vehicleRegNumbers) {
+        Map<String, Integer> counts = new HashMap<>();
+        List<String> uncounted = new ArrayList<>();
+        Map<String, Object> loadTokens = new HashMap<>();
+        for (String vehicleRegNumber : new LinkedHashSet<>(vehicleRegNumbers)) {
+            Integer cachedCount = visitCountCache == null ? null : visitCountCache.get(vehicleRegNumber);
+            if (cachedCount != null) {
+                counts.put(vehicleRegNumber, cachedCount);
+            } else {
+                uncounted.add(vehicleRegNumber);
+                if (visitCountCache != null) {
+                    loadTokens.put(vehicleRegNumber, visitCountCache.beginLoad(vehicleRegNumber));
+                }
+            }
+        }
+        if (uncounted.isEmpty()) {
+            return counts;
+        }
+        awaitWriteBehind();
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            //placeholders rounded up to a power of two, the last plate repeated, so few distinct queries are prepared
+            int slots = uncounted.size() == 1 ? 1 : Integer.highestOneBit(uncounted.size() - 1) << 1;
+            PreparedStatement ps = con.prepareStatement(
+                    String.format(DBConstants.GET_NB_TICKETS, String.join(",", Collections.nCopies(slots, "?"))));
+            for (int i = 0; i < slots; i++) {
+                String vehicleRegNumber = uncounted.get(Math.min(i, uncounted.size() - 1));
+                ps.setString(i + 1, vehicleRegNumber);
+                ps.setString(slots + i + 1, vehicleRegNumber);
+            }
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getString(1), rs.getInt(2));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            for (Map.Entry<String, Object> loadToken : loadTokens.entrySet()) {
+                visitCountCache.endLoad(loadToken.getKey(), loadToken.getValue(), counts.getOrDefault(loadToken.getKey(), 0));
+            }
+            loadTokens.clear();
+        } catch (Exception ex) {
+            logger.error("Error counting tickets of " + uncounted.size() + " vehicles", ex);
+        } finally {
+            for (Map.Entry<String, Object> loadToken : loadTokens.entrySet()) {
+                visitCountCache.cancelLoad(loadToken.getKey(), loadToken.getValue());
+            }
+            dataBaseConfig.closeConnection(con);
+        }
+        return counts;
+    }
+
+    /**
+     * keep the number of tickets of the vehicles seen most recently in memory
+     *
+     * @param maxSize maximum number of vehicles in the cache
+     * @return the loaded cache
+     */
+    public VisitCountCache loadVisitCountCache(int maxSize) {
+        VisitCountCache cache = new VisitCountCache(maxSize);
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_RECENT_VISIT_COUNTS);
+            ps.setInt(1, maxSize);
+            ResultSet rs = ps.executeQuery();
+            List<String> vehicleRegNumbers = new ArrayList<>();
+            List<Integer> counts = new ArrayList<>();
+            while (rs.next()) {
+                vehicleRegNumbers.add(rs.getString(1));
+                counts.add(rs.getInt(2));
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            //least recent first, so that the most recent vehicles are the last evicted
+            for (int i = vehicleRegNumbers.size() - 1; i >= 0; i--) {
+                cache.put(vehicleRegNumbers.get(i), counts.get(i));
+            }
+        } catch (Exception ex) {
+            logger.error("Error loading visit counts, they will be loaded on the next visit of each vehicle", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        visitCountCache = cache;
+        return cache;
+    }
+
+    /**
+     * exit of a vehicle in one transaction: find its open ticket together with its number of tickets,
+     * calculate the fare (5% discount for a recurring user), close the ticket and free the parking spot
+     *
+     * @param vehicleRegNumber
+     * @param outTime
+     * @param fareCalculator sets the price of the ticket
+     * @param freeSpot       false when a SpotAllocator saves the availability of the spots itself
+     * @return the closed ticket, its spot now available, or null if the vehicle has no open ticket
+     */
+    public Ticket closeTicket(String vehicleRegNumber, Date outTime, FareCalculator fareCalculator, boolean freeSpot) {
+        if (activeTicketRegistry != null && !activeTicketRegistry.contains(vehicleRegNumber)) {
+            return null;
+        }
+        //the ticket must be in the database, with its id, before it is closed
+        awaitWriteBehind();
+        //null while the ticket is being saved by another thread, it is then read from the database
+        Ticket activeTicket = activeTicketRegistry != null ? activeTicketRegistry.get(vehicleRegNumber) : null;
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            Ticket ticket = null;
+            //the number of tickets is counted by the query unless the cache knows it
+            Integer countTickets = visitCountCache != null ? visitCountCache.get(vehicleRegNumber) : null;
+            PreparedStatement ps;
+            if (activeTicket != null) {
+                ticket = copyOf(activeTicket);
+                if (countTickets == null) {
+                    countTickets = countTickets(con, vehicleRegNumber);
+                }
+            } else {
+                ps = con.prepareStatement(countTickets != null
+                        ? DBConstants.GET_OPEN_TICKET
+                        : DBConstants.GET_OPEN_TICKET_WITH_COUNT);
+                ps.setString(1, vehicleRegNumber);
+                ResultSet rs = ps.executeQuery();
+                if (rs.next()) {
+                    ticket = new Ticket();
+                    ticket.setId(rs.getInt(1));
+                    ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(4)), false));
+                    ticket.setVehicleRegNumber(vehicleRegNumber);
+                    ticket.setInTime(rs.getTimestamp(3));
+                    if (countTickets == null) {
+                        countTickets = rs.getInt(5);
+                    }
+                }
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+                if (ticket == null) {
+                    con.rollback();
+                    return null;
+                }
+            }
+            ticket.setOutTime(outTime);
+            fareCalculator.calculateFare(ticket, countTickets > 1);
+            ps = con.prepareStatement(DBConstants.CLOSE_TICKET);
+            ps.setDouble(1, ticket.getPrice());
+            ps.setTimestamp(2, new Timestamp(outTime.getTime()));
+            ps.setInt(3, ticket.getId());
+            int closedRows = ps.executeUpdate();
+            dataBaseConfig.closePreparedStatement(ps);
+            if (closedRows != 1) {
+                //closed by another gate meanwhile
+                con.rollback();
+                return null;
+            }
+            if (freeSpot) {
+                ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+                ps.setBoolean(1, true);
+                ps.setInt(2, ticket.getParkingSpot().getId());
+                ps.executeUpdate();
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            con.commit();
+            if (activeTicket != null) {
+                activeTicketRegistry.remove(activeTicket);
+            } else if (activeTicketRegistry != null) {
+                //the saved ticket is then not published
+                activeTicketRegistry.cancel(vehicleRegNumber);
+            }
+            ticket.getParkingSpot().setAvailable(true);
+            return ticket;
+        } catch (Exception ex) {
+            logger.error("Error closing ticket of vehicle: " + vehicleRegNumber, ex);
+            rollback(con);
+            return null;
+        } finally {
+            restoreAutoCommit(con);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * insert new tickets as one JDBC batch in one transaction and set their ids, for GatePipeline;
+     * the active ticket registry and the write-behind are not used
+     *
+     * @param tickets
+     * @return false if none of them is saved
+     */
+    public boolean saveTickets(List<Ticket> tickets) {
+        if (tickets.isEmpty()) {
+            return true;
+        }
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+            for (Ticket ticket : tickets) {
+                ps.setInt(1, ticket.getParkingSpot().getId());
+                ps.setString(2, ticket.getVehicleRegNumber());
+                ps.setDouble(3, ticket.getPrice());
+                ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            ResultSet keys = ps.getGeneratedKeys();
+            int[] ids = new int[tickets.size()];
+            int keyCount = 0;
+            while (keyCount < ids.length && keys.next()) {
+                ids[keyCount++] = keys.getInt(1);
+            }
+            dataBaseConfig.closeResultSet(keys);
+            dataBaseConfig.closePreparedStatement(ps);
+            if (keyCount < ids.length) {
+                //tickets without their id could not be closed
+                throw new SQLException("Only " + keyCount + " generated keys for " + ids.length + " saved tickets");
+            }
+            con.commit();
+            for (int i = 0; i < ids.length; i++) {
+                tickets.get(i).setId(ids[i]);
+                if (visitCountCache != null) {
+                    visitCountCache.increment(tickets.get(i).getVehicleRegNumber());
+                }
+            }
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error saving " + tickets.size() + " tickets", ex);
+            rollback(con);
+            return false;
+        } finally {
+            restoreAutoCommit(con);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * save the price and out-time of tickets as one JDBC batch in one transaction, for GatePipeline; the spots
+     * are not updated, their availability being saved by the SpotAllocator
+     *
+     * @param tickets closed tickets, with their id, out-time and price
+     * @return false if none of them is closed
+     */
+    public boolean closeTickets(List<Ticket> tickets) {
+        if (tickets.isEmpty()) {
+            return true;
+        }
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            PreparedStatement ps = con.prepareStatement(DBConstants.CLOSE_TICKET);
+            for (Ticket ticket : tickets) {
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                ps.setInt(3, ticket.getId());
+                ps.addBatch();
+            }
+            int[] closedRows = ps.executeBatch();
+            dataBaseConfig.closePreparedStatement(ps);
+            con.commit();
+            for (int i = 0; i < closedRows.length; i++) {
+                if (closedRows[i] == 0) {
+                    logger.warn("Ticket " + tickets.get(i).getId() + " was already closed");
+                }
+            }
+            return true;
+        } catch (Exception ex) {
+            logger.error("Error closing " + tickets.size() + " tickets", ex);
+            rollback(con);
+            return false;
+        } finally {
+            restoreAutoCommit(con);
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @param vehicleRegNumber
+     * @return true if the vehicle has an open ticket in the registry, always false when the registry is not loaded
+     */
+    public boolean isVehicleParked(String vehicleRegNumber) {
+        return activeTicketRegistry != null && activeTicketRegistry.contains(vehicleRegNumber);
+    }
+
+    /**
+     * ask the database itself whether the vehicle has an open ticket, e.g. to tell a vehicle that is not parked
+     * from a database that cannot be reached
+     *
+     * @param vehicleRegNumber
+     * @return true if the ticket table holds an open ticket of the vehicle
+     * @throws SQLException when the database cannot answer
+     */
+    public boolean hasOpenTicket(String vehicleRegNumber) throws SQLException, ClassNotFoundException {
+        awaitWriteBehind();
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_OPEN_TICKET);
+            ps.setString(1, vehicleRegNumber);
+            ResultSet rs = ps.executeQuery();
+            boolean open = rs.next();
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return open;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * load the open tickets in memory, exits then find their ticket without query
+     *
+     * @return the loaded registry, null if the open tickets cannot be read
+     */
+    public ActiveTicketRegistry loadActiveTicketRegistry() {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_OPEN_TICKETS);
+            ResultSet rs = ps.executeQuery();
+            List<Ticket> openTickets = new ArrayList<>();
+            while (rs.next()) {
+                Ticket ticket = new Ticket();
+                ticket.setId(rs.getInt(1));
+                ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(5)), false));
+                ticket.setVehicleRegNumber(rs.getString(3));
+                ticket.setInTime(rs.getTimestamp(4));
+                openTickets.add(ticket);
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            activeTicketRegistry = new ActiveTicketRegistry(openTickets);
+        } catch (Exception ex) {
+            logger.error("Error loading open tickets, exits will query the DB", ex);
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return activeTicketRegistry;
+    }
+
+    /**
+     * every ticket of a vehicle, archived or not, in ID order. Tickets are read one page at a time, a connection
+     * being borrowed only while a page is read, so a consumer can walk the archive in constant memory. Each page
+     * is one query over the ticket table and the archive, in which a ticket being archived is in one of them only,
+     * so it is read once whenever it moves. The stream throws IllegalStateException if a page cannot be read.
+     *
+     * @param vehicleRegNumber
+     * @param pageSize number of tickets read per query
+     * @return lazy stream of tickets
+     */
+    public Stream<Ticket> streamVehicleTickets(String vehicleRegNumber, int pageSize) {
+        TicketPageBinder binder = (ps, last) -> {
+            //the ticket table, then the archive
+            for (int first = 1; first <= 4; first += 3) {
+                ps.setString(first, vehicleRegNumber);
+                ps.setInt(first + 1, last == null ? 0 : last.getId());
+                ps.setInt(first + 2, pageSize);
+            }
+            ps.setInt(7, pageSize);
+        };
+        return streamPages(DBConstants.GET_VEHICLE_TICKETS_PAGE, binder, pageSize);
+    }
+
+    /**
+     * every ticket entered in [from, to), e.g. the tickets of a day, archived or not, in in-time order; read one
+     * page at a time like streamVehicleTickets
+     *
+     * @param from     inclusive
+     * @param to       exclusive
+     * @param pageSize number of tickets read per query
+     * @return lazy stream of tickets
+     */
+    public Stream<Ticket> streamTicketsEnteredBetween(Date from, Date to, int pageSize) {
+        Timestamp start = new Timestamp(from.getTime());
+        TicketPageBinder binder = (ps, last) -> {
+            //the tickets of a page are read with getTimestamp, so the in-time of the last one keeps its nanos
+            Timestamp lastInTime = last == null ? start : (Timestamp) last.getInTime();
+            //the ticket table, then the archive
+            for (int first = 1; first <= 7; first += 6) {
+                ps.setTimestamp(first, start);
+                ps.setTimestamp(first + 1, new Timestamp(to.getTime()));
+                ps.setTimestamp(first + 2, lastInTime);
+                ps.setTimestamp(first + 3, lastInTime);
+                ps.setInt(first + 4, last == null ? 0 : last.getId());
+                ps.setInt(first + 5, pageSize);
+            }
+            ps.setInt(13, pageSize);
+        };
+        return streamPages(DBConstants.GET_PERIOD_TICKETS_PAGE, binder, pageSize);
+    }
+
+    private Stream<Ticket> streamPages(String sql, TicketPageBinder binder, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page size: " + pageSize);
+        }
+        return StreamSupport.stream(new TicketPages(sql, binder, pageSize), false);
+    }
+
+    /**
+     * sets the parameters of the query of the page following the last ticket read, null for the first page
+     */
+    private interface TicketPageBinder {
+        void bind(PreparedStatement ps, Ticket last) throws SQLException;
+    }
+
+    private final class TicketPages extends Spliterators.AbstractSpliterator<Ticket> {
+        private final String sql;
+        private final TicketPageBinder binder;
+        private final int pageSize;
+        private final ArrayDeque<Ticket> page = new ArrayDeque<>();
+        private Ticket last;
+        private boolean exhausted;
+
+        private TicketPages(String sql, TicketPageBinder binder, int pageSize) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.sql = sql;
+            this.binder = binder;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Ticket> action) {
+            if (page.isEmpty() && !exhausted) {
+                readNextPage();
+            }
+            Ticket ticket = page.poll();
+            if (ticket == null) {
+                return false;
+            }
+            action.accept(ticket);
+            return true;
+        }
+
+        private void readNextPage() {
+            Connection con = null;
+            try {
+                con = dataBaseConfig.getConnection();
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setFetchSize(Math.min(pageSize, historyFetchSize));
+                binder.bind(ps, last);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    Ticket ticket = new Ticket();
+                    ticket.setId(rs.getInt(1));
+                    ticket.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.valueOf(rs.getString(7)), false));
+                    ticket.setVehicleRegNumber(rs.getString(3));
+                    ticket.setPrice(rs.getDouble(4));
+                    ticket.setInTime(rs.getTimestamp(5));
+                    ticket.setOutTime(rs.getTimestamp(6));
+                    page.add(ticket);
+                    last = ticket;
+                }
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+                exhausted = page.size() < pageSize;
+            } catch (Exception ex) {
+                logger.error("Error reading a page of the ticket history", ex);
+                throw new IllegalStateException("Error reading the ticket history", ex);
+            } finally {
+                dataBaseConfig.closeConnection(con);
+            }
+        }
+    }
+
+    /**
+     * wait for the queued ticket writes, so that a read sees them; returns at once when nothing is queued
+     */
+    private void awaitWriteBehind() {
+        if (ticketWriteBehind == null) {
+            return;
+        }
+        try {
+            if (!ticketWriteBehind.flush(WRITE_BEHIND_FLUSH_TIMEOUT_MS)) {
+                logger.warn("Queued tickets still not written after " + WRITE_BEHIND_FLUSH_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int countTickets(Connection con, String vehicleRegNumber) throws SQLException {
+        int countTicket = 0;
+        PreparedStatement ps = con.prepareStatement(DBConstants.GET_NB_TICKET);
+        ps.setString(1, vehicleRegNumber);
+        ps.setString(2, vehicleRegNumber);
+        ResultSet rs = ps.executeQuery();
+        if (rs.next()) {
+            countTicket = rs.getInt(1);
+        }
+        dataBaseConfig.closeResultSet(rs);
+        dataBaseConfig.closePreparedStatement(ps);
+        return countTicket;
+    }
+
+    private static Ticket copyOf(Ticket ticket) {
+        Ticket copy = new Ticket();
+        copy.setId(ticket.getId());
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        copy.setParkingSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), parkingSpot.isAvailable()));
+        copy.setVehicleRegNumber(ticket.getVehicleRegNumber());
+        copy.setPrice(ticket.getPrice());
+        copy.setInTime(ticket.getInTime());
+        copy.setOutTime(ticket.getOutTime());
+        return copy;
+    }
+
+    private void rollback(Connection con) {
+        if (con != null) {
+            try {
+                con.rollback();
+            } catch (SQLException e) {
+                logger.error("Error while rolling back", e);
+            }
+        }
+    }
+
+    private void restoreAutoCommit(Connection con) {
+        if (con != null) {
+            try {
+                con.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.error("Error while restoring auto-commit", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind of the ticket inserts and updates for peak hours.
+ * The gate is answered as soon as the ticket is queued; a background writer sends the queued tickets as JDBC
+ * batches and commits each group once. A group is written when it reaches the batch size, or at the latest
+ * maxDelayMillis after its first ticket was queued.
+ * <p>
+ * Durability: a queued ticket is only durable once its group is committed, so a crash of the process loses the
+ * tickets of the last maxDelayMillis. A failed group is tried again, then its tickets are written one by one so that
+ * only the rows the database really refuses are lost; the LostWriteListeners then undo what was done when they were
+ * queued.
+ * flush waits for the tickets queued so far, and close (also run by the shutdown hook) writes everything still
+ * queued before stopping the writer.
+ */
+public class TicketWriteBehind {
+
+    private static final Logger logger = LogManager.getLogger("TicketWriteBehind");
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 100;
+    private static final long CLOSE_TIMEOUT_MS = 30_000;
+
+    //queued by flush to stop the writer waiting for a full group, never written
+    private static final PendingWrite FLUSH = new PendingWrite(null, false, null);
+
+    private final DataBaseConfig dataBaseConfig;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    //number of writes queued and number of writes done (committed or lost), in queue order
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicInteger flushWaiters = new AtomicInteger();
+    //callers between their check of closed and the end of their put, the writer does not stop before them
+    private final AtomicInteger enqueuing = new AtomicInteger();
+    private final Object progress = new Object();
+    private final List<LostWriteListener> lostWriteListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+    private Thread shutdownHook;
+
+    public TicketWriteBehind(DataBaseConfig dataBaseConfig, int batchSize, long maxDelayMillis) {
+        if (batchSize < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Invalid write-behind settings: batchSize=" + batchSize
+                    + ", maxDelayMillis=" + maxDelayMillis);
+        }
+        this.dataBaseConfig = dataBaseConfig;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writer = new Thread(this::run, "ticket-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * queue the insert of a new ticket, its id is set once it is written
+     *
+     * @param ticket
+     * @return false if the write-behind is closed, the caller then saves the ticket itself
+     */
+    public boolean save(Ticket ticket) {
+        return save(ticket, null);
+    }
+
+    /**
+     * queue the insert of a new ticket
+     *
+     * @param ticket
+     * @param onSaved run on the writer thread once the ticket is committed with its id, may be null
+     * @return false if the write-behind is closed, the caller then saves the ticket itself
+     */
+    public boolean save(Ticket ticket, Runnable onSaved) {
+        return enqueue(new PendingWrite(ticket, true, onSaved));
+    }
+
+    /**
+     * queue the update of the price and out-time of a ticket
+     *
+     * @param ticket
+     * @return false if the write-behind is closed, the caller then updates the ticket itself
+     */
+    public boolean update(Ticket ticket) {
+        return enqueue(new PendingWrite(ticket, false, null));
+    }
+
+    /**
+     * wait until the tickets queued so far are written
+     *
+     * @param timeoutMillis
+     * @return false if they are not all written after the timeout
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long target = queued.get();
+        if (completed.get() >= target) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        flushWaiters.incrementAndGet();
+        //wakes the writer up if it is waiting for more tickets
+        queue.offer(FLUSH);
+        try {
+            synchronized (progress) {
+                while (completed.get() < target) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    progress.wait(remaining);
+                }
+            }
+            return true;
+        } finally {
+            flushWaiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * tell the listener of every ticket whose write is given up, on the writer thread
+     *
+     * @param lostWriteListener
+     */
+    public void addLostWriteListener(LostWriteListener lostWriteListener) {
+        lostWriteListeners.add(lostWriteListener);
+    }
+
+    /**
+     * save the tickets when the JVM stops, e.g. on Ctrl-C during a peak
+     */
+    public synchronized void registerShutdownHook() {
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(this::close, "ticket-write-behind-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * refuse new tickets, write the queued ones and stop the writer
+     */
+    public void close() {
+        //not under the lock of the queue, a caller may hold it waiting for room in a full queue
+        closed = true;
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            logger.error(queue.size() + " tickets still not written after " + CLOSE_TIMEOUT_MS + " ms");
+        }
+        synchronized (this) {
+            if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    //the JVM is already shutting down
+                }
+            }
+        }
+    }
+
+    public long getPendingWrites() {
+        return queued.get() - completed.get();
+    }
+
+    public long getLostWrites() {
+        return lost.get();
+    }
+
+    private boolean enqueue(PendingWrite write) {
+        //counted before closed is read: nothing is queued once close has started, and the writer stops only when
+        //no caller that saw it open is still queueing and the queue is empty
+        enqueuing.incrementAndGet();
+        try {
+            if (closed) {
+                return false;
+            }
+            //the queue order is the order of the counter, flush relies on it
+            synchronized (queue) {
+                queue.put(write);
+                queued.incrementAndGet();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            enqueuing.decrementAndGet();
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> group = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null || first == FLUSH) {
+                    if (closed && enqueuing.get() == 0 && queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                group.add(first);
+                collect(group);
+                write(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.error("Write-behind stopped with " + queue.size() + " tickets queued", e);
+        }
+    }
+
+    /**
+     * complete the group up to the batch size, waiting at most maxDelay after its first ticket;
+     * nobody waits when the application is closing or a caller is flushing
+     */
+    private void collect(List<PendingWrite> group) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        boolean waiting = true;
+        while (group.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingWrite next = waiting && remaining > 0 && !closed && flushWaiters.get() == 0
+                    ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                    : queue.poll();
+            if (next == null) {
+                return;
+            }
+            if (next == FLUSH) {
+                waiting = false;
+            } else {
+                group.add(next);
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> group) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                writeGroup(group);
+                break;
+            } catch (Exception ex) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    if (group.size() == 1) {
+                        lose(group.get(0), ex);
+                    } else {
+                        logger.error("Writing " + group.size() + " tickets failed " + attempt + " times, writing them one by one", ex);
+                        writeOneByOne(group);
+                    }
+                    break;
+                }
+                logger.warn("Writing " + group.size() + " tickets failed, attempt " + attempt, ex);
+                Thread.sleep(RETRY_DELAY_MS * attempt);
+            }
+        }
+        completed.addAndGet(group.size());
+        synchronized (progress) {
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * a failed group is rolled back as a whole, its tickets are written again each in its own transaction
+     */
+    private void writeOneByOne(List<PendingWrite> group) {
+        //the update of a ticket whose insert is lost would close an older ticket of the vehicle
+        Set<Ticket> lostInserts = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PendingWrite write : group) {
+            if (!write.insert && lostInserts.contains(write.ticket)) {
+                lose(write, null);
+                continue;
+            }
+            try {
+                writeGroup(Collections.singletonList(write));
+            } catch (Exception ex) {
+                if (write.insert) {
+                    lostInserts.add(write.ticket);
+                }
+                lose(write, ex);
+            }
+        }
+    }
+
+    private void lose(PendingWrite write, Exception cause) {
+        logger.error("Ticket of vehicle " + write.ticket.getVehicleRegNumber() + " lost, "
+                + (write.insert ? "insert" : "update") + " failed", cause);
+        lost.incrementAndGet();
+        for (LostWriteListener lostWriteListener : lostWriteListeners) {
+            try {
+                lostWriteListener.onLostWrite(write.ticket, write.insert);
+            } catch (RuntimeException e) {
+                logger.error("Error in lost write listener for vehicle " + write.ticket.getVehicleRegNumber(), e);
+            }
+        }
+    }
+
+    /**
+     * one transaction for the whole group, consecutive writes of the same kind are sent as one batch
+     */
+    private void writeGroup(List<PendingWrite> group) throws Exception {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            int start = 0;
+            while (start < group.size()) {
+                int end = start + 1;
+                while (end < group.size() && group.get(end).insert == group.get(start).insert) {
+                    end++;
+                }
+                List<PendingWrite> run = group.subList(start, end);
+                if (run.get(0).insert) {
+                    insertBatch(con, run);
+                } else {
+                    updateBatch(con, run);
+                }
+                start = end;
+            }
+            con.commit();
+        } catch (Exception ex) {
+            if (con != null) {
+                try {
+                    con.rollback();
+                } catch (SQLException e) {
+                    logger.error("Error while rolling back tickets", e);
+                }
+            }
+            throw ex;
+        } finally {
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.error("Error while restoring auto-commit", e);
+                }
+            }
+            dataBaseConfig.closeConnection(con);
+        }
+        //committed, a failing callback must not write the group again
+        for (PendingWrite write : group) {
+            if (write.onSaved != null) {
+                try {
+                    write.onSaved.run();
+                } catch (RuntimeException e) {
+                    logger.error("Error after saving the ticket of vehicle " + write.ticket.getVehicleRegNumber(), e);
+                }
+            }
+        }
+    }
+
+    private void insertBatch(Connection con, List<PendingWrite> inserts) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS);
+        for (PendingWrite write : inserts) {
+            Ticket ticket = write.ticket;
+            ps.setInt(1, ticket.getParkingSpot().getId());
+            ps.setString(2, ticket.getVehicleRegNumber());
+            ps.setDouble(3, ticket.getPrice());
+            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+            ps.setTimestamp(5, (ticket.getOutTime() == null) ? null : (new Timestamp(ticket.getOutTime().getTime())));
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        ResultSet keys = ps.getGeneratedKeys();
+        int[] ids = new int[inserts.size()];
+        int keyCount = 0;
+        while (keyCount < ids.length && keys.next()) {
+            ids[keyCount++] = keys.getInt(1);
+        }
+        dataBaseConfig.closeResultSet(keys);
+        dataBaseConfig.closePreparedStatement(ps);
+        if (keyCount < ids.length) {
+            //tickets without their id could not be closed
+            throw new SQLException("Only " + keyCount + " generated keys for " + ids.length + " saved tickets");
+        }
+        for (int i = 0; i < ids.length; i++) {
+            inserts.get(i).ticket.setId(ids[i]);
+        }
+    }
+
+    private void updateBatch(Connection con, List<PendingWrite> updates) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
+        for (PendingWrite write : updates) {
+            Ticket ticket = write.ticket;
+            int ticketId = ticket.getId() > 0 ? ticket.getId() : getLastTicketId(con, ticket.getVehicleRegNumber());
+            ps.setDouble(1, ticket.getPrice());
+            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+            ps.setInt(3, ticketId);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        dataBaseConfig.closePreparedStatement(ps);
+    }
+
+    private int getLastTicketId(Connection con, String vehicleRegNumber) throws SQLException {
+        int ticketId = 0;
+        PreparedStatement ps = con.prepareStatement(DBConstants.GET_LAST_TICKET_ID_QUERY);
+        ps.setString(1, vehicleRegNumber);
+        ResultSet rs = ps.executeQuery();
+        if (rs.next()) {
+            ticketId = rs.getInt(1);
+        }
+        dataBaseConfig.closeResultSet(rs);
+        dataBaseConfig.closePreparedStatement(ps);
+        return ticketId;
+    }
+
+    /**
+     * Told of the tickets whose write is given up, to undo what was done when they were queued.
+     */
+    public interface LostWriteListener {
+
+        /**
+         * @param ticket ticket that is not in the database
+         * @param insert true if the ticket was never inserted, false if its price and out-time were not saved
+         */
+        void onLostWrite(Ticket ticket, boolean insert);
+    }
+
+    private static final class PendingWrite {
+        private final Ticket ticket;
+        private final boolean insert;
+        private final Runnable onSaved;
+
+        private PendingWrite(Ticket ticket, boolean insert, Runnable onSaved) {
+            this.ticket = ticket;
+            this.insert = insert;
+            this.onSaved = onSaved;
+        }
+    }
+}
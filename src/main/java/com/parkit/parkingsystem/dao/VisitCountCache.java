@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem.dao;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Number of tickets of the most recently seen vehicles, so that the recurring-user discount is decided
+ * without counting the ticket history of the vehicle. The least recently used plates are evicted
+ * above the maximum size and are counted again from the database on their next visit.
+ */
+public class VisitCountCache {
+
+    private final Map<String, Integer> counts;
+    //plates being counted from the database, with the token of the last loader
+    private final Map<String, Object> loading = new HashMap<>();
+
+    public VisitCountCache(int maxSize) {
+        this.counts = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param vehicleRegNumber
+     * @return number of tickets of the vehicle, null if it is not cached
+     */
+    public synchronized Integer get(String vehicleRegNumber) {
+        return counts.get(vehicleRegNumber);
+    }
+
+    public synchronized void put(String vehicleRegNumber, int count) {
+        counts.put(vehicleRegNumber, count);
+    }
+
+    /**
+     * a ticket of the vehicle was saved
+     *
+     * @param vehicleRegNumber
+     */
+    public synchronized void increment(String vehicleRegNumber) {
+        Integer count = counts.get(vehicleRegNumber);
+        if (count != null) {
+            counts.put(vehicleRegNumber, count + 1);
+        } else {
+            //a count being read from the database may miss this ticket, it must not be cached
+            loading.remove(vehicleRegNumber);
+        }
+    }
+
+    /**
+     * a ticket counted by increment was not saved after all
+     *
+     * @param vehicleRegNumber
+     */
+    public synchronized void decrement(String vehicleRegNumber) {
+        Integer count = counts.get(vehicleRegNumber);
+        if (count != null && count > 0) {
+            counts.put(vehicleRegNumber, count - 1);
+        }
+    }
+
+    /**
+     * call before counting the tickets of a vehicle in the database
+     *
+     * @param vehicleRegNumber
+     * @return token to give to endLoad
+     */
+    public synchronized Object beginLoad(String vehicleRegNumber) {
+        Object token = new Object();
+        loading.put(vehicleRegNumber, token);
+        return token;
+    }
+
+    /**
+     * cache the count read from the database, unless a ticket of the vehicle was saved meanwhile
+     *
+     * @param vehicleRegNumber
+     * @param token returned by beginLoad
+     * @param count
+     */
+    public synchronized void endLoad(String vehicleRegNumber, Object token, int count) {
+        if (loading.remove(vehicleRegNumber, token)) {
+            counts.put(vehicleRegNumber, count);
+        }
+    }
+
+    /**
+     * the count could not be read from the database
+     *
+     * @param vehicleRegNumber
+     * @param token returned by beginLoad
+     */
+    public synchronized void cancelLoad(String vehicleRegNumber, Object token) {
+        loading.remove(vehicleRegNumber, token);
+    }
+
+    public synchronized int size() {
+        return counts.size();
+    }
+}
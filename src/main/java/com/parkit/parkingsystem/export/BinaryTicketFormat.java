@@ -0,0 +1,112 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.function.Consumer;
+
+/**
+ * Binary export of the tickets, big-endian:
+ * <pre>
+ * header: magic "PKTX" (int), version (short), number of tickets (long)
+ * blocks: number of tickets n (int) then each column of the n tickets:
+ *         ID (int), PARKING_NUMBER (int), TYPE ordinal (byte), IN_TIME epoch millis (long),
+ *         OUT_TIME epoch millis (long, -1 while parked), PRICE in cents (int), VEHICLE_REG_NUMBER (10 bytes,
+ *         US-ASCII padded with zeros)
+ * </pre>
+ * Every column has a fixed width, so a column of a block is read without decoding the others.
+ */
+public final class BinaryTicketFormat {
+
+    public static final int MAGIC = 0x504B5458;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 4 + 2 + 8;
+    public static final int BLOCK_TICKETS = 4096;
+    public static final int PLATE_SIZE = 10;
+    static final int TICKET_SIZE = 4 + 4 + 1 + 8 + 8 + 4 + PLATE_SIZE;
+
+    private BinaryTicketFormat() {
+    }
+
+    static ByteBuffer header(long tickets) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putLong(tickets);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * read back an export, block by block
+     *
+     * @param file
+     * @param consumer gets the tickets in file order
+     * @return number of tickets read
+     */
+    public static long read(Path file, Consumer<Ticket> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            if (header.getInt() != MAGIC || header.getShort() != VERSION) {
+                throw new IOException(file + " is not a ticket export");
+            }
+            long expected = header.getLong();
+            ByteBuffer block = ByteBuffer.allocate(4 + BLOCK_TICKETS * TICKET_SIZE);
+            ParkingType[] types = ParkingType.values();
+            byte[] plate = new byte[PLATE_SIZE];
+            long read = 0;
+            while (read < expected) {
+                block.clear().limit(4);
+                readFully(channel, block);
+                int n = block.getInt();
+                if (n <= 0 || n > BLOCK_TICKETS) {
+                    throw new IOException("Invalid block of " + n + " tickets in " + file);
+                }
+                block.clear().limit(n * TICKET_SIZE);
+                readFully(channel, block);
+                int idAt = 0;
+                int spotAt = idAt + 4 * n;
+                int typeAt = spotAt + 4 * n;
+                int inAt = typeAt + n;
+                int outAt = inAt + 8 * n;
+                int priceAt = outAt + 8 * n;
+                int plateAt = priceAt + 4 * n;
+                for (int i = 0; i < n; i++) {
+                    Ticket ticket = new Ticket();
+                    ticket.setId(block.getInt(idAt + 4 * i));
+                    ticket.setParkingSpot(new ParkingSpot(block.getInt(spotAt + 4 * i), types[block.get(typeAt + i)], false));
+                    ticket.setInTime(new Date(block.getLong(inAt + 8 * i)));
+                    long outTime = block.getLong(outAt + 8 * i);
+                    ticket.setOutTime(outTime < 0 ? null : new Date(outTime));
+                    ticket.setPrice(block.getInt(priceAt + 4 * i) / 100.0);
+                    block.position(plateAt + PLATE_SIZE * i);
+                    block.get(plate);
+                    int length = 0;
+                    while (length < PLATE_SIZE && plate[length] != 0) {
+                        length++;
+                    }
+                    ticket.setVehicleRegNumber(new String(plate, 0, length, StandardCharsets.US_ASCII));
+                    consumer.accept(ticket);
+                }
+                read += n;
+            }
+            return read;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Ticket export truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,82 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Collects tickets column by column and writes a block of BinaryTicketFormat every BLOCK_TICKETS tickets.
+ */
+class BinaryTicketWriter implements TicketRowWriter {
+
+    private static final int N = BinaryTicketFormat.BLOCK_TICKETS;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer block = ByteBuffer.allocateDirect(4 + N * BinaryTicketFormat.TICKET_SIZE);
+    private final int[] ids = new int[N];
+    private final int[] parkingNumbers = new int[N];
+    private final byte[] types = new byte[N];
+    private final long[] inTimes = new long[N];
+    private final long[] outTimes = new long[N];
+    private final int[] prices = new int[N];
+    private final byte[] plates = new byte[N * BinaryTicketFormat.PLATE_SIZE];
+    private int count;
+
+    BinaryTicketWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int id, int parkingNumber, ParkingType parkingType, String vehicleRegNumber, double price,
+                      long inTime, long outTime) throws IOException {
+        ids[count] = id;
+        parkingNumbers[count] = parkingNumber;
+        types[count] = (byte) parkingType.ordinal();
+        inTimes[count] = inTime;
+        outTimes[count] = outTime;
+        prices[count] = Math.toIntExact(Math.round(price * 100));
+        byte[] plate = vehicleRegNumber.getBytes(StandardCharsets.US_ASCII);
+        int offset = count * BinaryTicketFormat.PLATE_SIZE;
+        int length = Math.min(plate.length, BinaryTicketFormat.PLATE_SIZE);
+        System.arraycopy(plate, 0, plates, offset, length);
+        for (int i = offset + length; i < offset + BinaryTicketFormat.PLATE_SIZE; i++) {
+            plates[i] = 0;
+        }
+        if (++count == N) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (count > 0) {
+            writeBlock();
+        }
+        channel.close();
+    }
+
+    private void writeBlock() throws IOException {
+        block.clear();
+        block.putInt(count);
+        block.asIntBuffer().put(ids, 0, count);
+        block.position(block.position() + 4 * count);
+        block.asIntBuffer().put(parkingNumbers, 0, count);
+        block.position(block.position() + 4 * count);
+        block.put(types, 0, count);
+        block.asLongBuffer().put(inTimes, 0, count);
+        block.position(block.position() + 8 * count);
+        block.asLongBuffer().put(outTimes, 0, count);
+        block.position(block.position() + 8 * count);
+        block.asIntBuffer().put(prices, 0, count);
+        block.position(block.position() + 4 * count);
+        block.put(plates, 0, count * BinaryTicketFormat.PLATE_SIZE);
+        block.flip();
+        while (block.hasRemaining()) {
+            channel.write(block);
+        }
+        count = 0;
+    }
+}
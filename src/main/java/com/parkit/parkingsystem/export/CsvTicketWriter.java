@@ -0,0 +1,176 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Writes tickets as CSV lines into a buffer flushed to the channel when full. Numbers and times are written digit
+ * by digit and plates char by char, without building a String or an array per ticket.
+ */
+class CsvTicketWriter implements TicketRowWriter {
+
+    static final String HEADER = "ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME\n";
+    //longest line without the plate, a char of the plate taking at most 3 bytes once encoded or quoted
+    private static final int MAX_LINE_SIZE = 128;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final byte[][] TYPE_NAMES = typeNames();
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    //date part of the last time written, most tickets of a part are on the same few days
+    private long cachedDay = Long.MIN_VALUE;
+    private final byte[] cachedDate = new byte[11];
+
+    CsvTicketWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public void write(int id, int parkingNumber, ParkingType parkingType, String vehicleRegNumber, double price,
+                      long inTime, long outTime) throws IOException {
+        if (buffer.remaining() < MAX_LINE_SIZE + 3 * vehicleRegNumber.length()) {
+            flush();
+        }
+        putLong(id);
+        buffer.put((byte) ',');
+        putLong(parkingNumber);
+        buffer.put((byte) ',');
+        buffer.put(TYPE_NAMES[parkingType.ordinal()]);
+        buffer.put((byte) ',');
+        putPlate(vehicleRegNumber);
+        buffer.put((byte) ',');
+        putCents(Math.round(price * 100));
+        buffer.put((byte) ',');
+        putTime(inTime);
+        buffer.put((byte) ',');
+        if (outTime >= 0) {
+            putTime(outTime);
+        }
+        buffer.put((byte) '\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static byte[][] typeNames() {
+        ParkingType[] types = ParkingType.values();
+        byte[][] names = new byte[types.length][];
+        for (ParkingType type : types) {
+            names[type.ordinal()] = type.name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /**
+     * UTF-8, quoted when it holds a separator; an unpaired surrogate is written '?' as String.getBytes does
+     */
+    private void putPlate(String plate) {
+        boolean quoted = false;
+        for (int i = 0; i < plate.length() && !quoted; i++) {
+            char c = plate.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (quoted) {
+            buffer.put((byte) '"');
+        }
+        for (int i = 0; i < plate.length(); i++) {
+            char c = plate.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') {
+                    buffer.put((byte) '"');
+                }
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < plate.length() && Character.isLowSurrogate(plate.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, plate.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        if (quoted) {
+            buffer.put((byte) '"');
+        }
+    }
+
+    private void putCents(long cents) {
+        if (cents < 0) {
+            buffer.put((byte) '-');
+            cents = -cents;
+        }
+        putLong(cents / 100);
+        buffer.put((byte) '.');
+        putDigits(cents % 100, 2);
+    }
+
+    /**
+     * yyyy-MM-ddTHH:mm:ss.SSSZ
+     */
+    private void putTime(long epochMillis) {
+        long day = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        if (day != cachedDay) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            byte[] formatted = String.format("%04d-%02d-%02dT", date.getYear(), date.getMonthValue(), date.getDayOfMonth())
+                    .getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(formatted, 0, cachedDate, 0, cachedDate.length);
+            cachedDay = day;
+        }
+        buffer.put(cachedDate);
+        long millisOfDay = epochMillis - day * MILLIS_PER_DAY;
+        putDigits(millisOfDay / 3_600_000, 2);
+        buffer.put((byte) ':');
+        putDigits(millisOfDay / 60_000 % 60, 2);
+        buffer.put((byte) ':');
+        putDigits(millisOfDay / 1000 % 60, 2);
+        buffer.put((byte) '.');
+        putDigits(millisOfDay % 1000, 3);
+        buffer.put((byte) 'Z');
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long bound = 10; digits < 19 && value >= bound; bound *= 10) {
+            digits++;
+        }
+        putDigits(value, digits);
+    }
+
+    private void putDigits(long value, int digits) {
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= end - digits; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+}
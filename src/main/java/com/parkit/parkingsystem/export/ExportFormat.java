@@ -0,0 +1,15 @@
+package com.parkit.parkingsystem.export;
+
+/**
+ * Formats of the ticket export.
+ */
+public enum ExportFormat {
+    /**
+     * one line per ticket: ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME, times in ISO-8601 UTC
+     */
+    CSV,
+    /**
+     * blocks of fixed-width columns, see BinaryTicketFormat
+     */
+    BINARY
+}
@@ -0,0 +1,199 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports every ticket, archived ones included, in ID order, for the reconciliation of the finance team.
+ * <p>
+ * The ID range of the tickets is cut in one contiguous part per reader. Each reader walks its part by chunks of
+ * chunkSize IDs, one query per chunk so that a driver loading whole result sets stays in bounded memory, and writes
+ * its tickets to a part file through a buffered channel. The part files are then appended in order to the export
+ * behind its header. Tickets moved by TicketArchiver during the export may be missed or exported twice, so the
+ * export is best run when archiving is paused.
+ */
+public class TicketExporter {
+
+    private static final Logger logger = LogManager.getLogger("TicketExporter");
+    private static final int CSV_BUFFER_SIZE = 1024 * 1024;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+    private final int readers;
+    private final int chunkSize;
+
+    /**
+     * @param readers   number of parts read at the same time, each one using a connection of the pool
+     * @param chunkSize number of IDs read per query
+     */
+    public TicketExporter(int readers, int chunkSize) {
+        if (readers < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid export readers " + readers + " or chunk size " + chunkSize);
+        }
+        this.readers = readers;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param file   replaced if it exists
+     * @param format
+     * @return number of tickets exported
+     */
+    public long export(Path file, ExportFormat format) throws IOException {
+        long start = System.nanoTime();
+        Path directory = file.toAbsolutePath().getParent();
+        List<Path> parts = new ArrayList<>();
+        ExecutorService executor = null;
+        try {
+            long[] idRange = getIdRange();
+            List<Future<Long>> partTickets = new ArrayList<>();
+            if (idRange != null) {
+                long span = idRange[1] - idRange[0] + 1;
+                long partSize = (span + readers - 1) / readers;
+                executor = Executors.newFixedThreadPool(readers, r -> {
+                    Thread thread = new Thread(r, "ticket-export");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                for (long from = idRange[0]; from <= idRange[1]; from += partSize) {
+                    Path part = Files.createTempFile(directory, file.getFileName() + ".", ".part");
+                    parts.add(part);
+                    long partFrom = from;
+                    long partTo = Math.min(from + partSize, idRange[1] + 1);
+                    partTickets.add(executor.submit(() -> exportPart(part, format, partFrom, partTo)));
+                }
+            }
+            long tickets = 0;
+            for (Future<Long> part : partTickets) {
+                tickets += part.get();
+            }
+            concatenate(file, format, tickets, parts);
+            logger.info(tickets + " tickets exported to " + file + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return tickets;
+        } catch (ExecutionException e) {
+            logger.error("Error exporting tickets to " + file, e.getCause());
+            throw new IOException("Error exporting tickets to " + file, e.getCause());
+        } catch (SQLException | ClassNotFoundException e) {
+            logger.error("Error exporting tickets to " + file, e);
+            throw new IOException("Error exporting tickets to " + file, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export of tickets to " + file + " interrupted", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    /**
+     * @return lowest and highest ID of the tickets, null when there is none
+     */
+    private long[] getIdRange() throws SQLException, ClassNotFoundException {
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            long[] range = null;
+            for (String sql : new String[]{DBConstants.GET_TICKET_ID_RANGE, DBConstants.GET_ARCHIVED_TICKET_ID_RANGE}) {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ResultSet rs = ps.executeQuery();
+                if (rs.next() && rs.getObject(1) != null) {
+                    long min = rs.getLong(1);
+                    long max = rs.getLong(2);
+                    range = range == null ? new long[]{min, max}
+                            : new long[]{Math.min(range[0], min), Math.max(range[1], max)};
+                }
+                dataBaseConfig.closeResultSet(rs);
+                dataBaseConfig.closePreparedStatement(ps);
+            }
+            return range;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+     * @return number of tickets of the IDs in [from, to)
+     */
+    private long exportPart(Path part, ExportFormat format, long from, long to) throws Exception {
+        long tickets = 0;
+        FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try (TicketRowWriter writer = format == ExportFormat.CSV
+                ? new CsvTicketWriter(channel, CSV_BUFFER_SIZE) : new BinaryTicketWriter(channel)) {
+            for (long chunk = from; chunk < to; chunk += chunkSize) {
+                tickets += exportChunk(writer, chunk, Math.min(chunk + chunkSize, to));
+            }
+        }
+        return tickets;
+    }
+
+    private long exportChunk(TicketRowWriter writer, long from, long to) throws Exception {
+        long tickets = 0;
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKETS_TO_EXPORT);
+            ps.setFetchSize(chunkSize);
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+            ps.setLong(3, from);
+            ps.setLong(4, to);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                Timestamp outTime = rs.getTimestamp(7);
+                writer.write(rs.getInt(1), rs.getInt(2), ParkingType.valueOf(rs.getString(3)), rs.getString(4),
+                        rs.getDouble(5), rs.getTimestamp(6).getTime(), outTime == null ? -1 : outTime.getTime());
+                tickets++;
+            }
+            dataBaseConfig.closeResultSet(rs);
+            dataBaseConfig.closePreparedStatement(ps);
+            return tickets;
+        } finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void concatenate(Path file, ExportFormat format, long tickets, List<Path> parts) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = format == ExportFormat.CSV
+                    ? ByteBuffer.wrap(CsvTicketWriter.HEADER.getBytes(StandardCharsets.US_ASCII))
+                    : BinaryTicketFormat.header(tickets);
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = in.size();
+                    for (long position = 0; position < size; ) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the tickets of one part of an export, in the order they are given.
+ */
+interface TicketRowWriter extends Closeable {
+
+    /**
+     * @param outTime epoch millis, -1 for a vehicle still parked
+     */
+    void write(int id, int parkingNumber, ParkingType parkingType, String vehicleRegNumber, double price,
+               long inTime, long outTime) throws IOException;
+
+    /**
+     * write the buffered tickets and close the channel
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,349 @@
+package com.parkit.parkingsystem.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal of the gate events, so that an entry or an exit is not lost while the database is down.
+ * <p>
+ * A gate appends its event before applying it to the database, and acknowledges it once applied. Records are
+ * appended to segment files named after their first sequence number; each record is framed by its length and the
+ * CRC32 of its content, and a segment is rotated when it reaches the segment size. append returns once the record
+ * is on disk: the threads appending at the same time share one fsync, which keeps the throughput high.
+ * <p>
+ * The checkpoint file holds the last sequence number written and the records up to it still not acknowledged; it is
+ * saved every few acknowledgments, and the segments below the oldest record not acknowledged are deleted. On open,
+ * these records and the ones after the checkpoint are read back for JournalReplayer, and a last record torn by a
+ * crash is cut off. A record acknowledged after the last checkpoint is replayed again, so replaying a record must
+ * have no effect when it is already applied.
+ */
+public class GateJournal implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger("GateJournal");
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1024;
+    private static final int CHECKPOINT_INTERVAL = 1000;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final ByteBuffer frame = ByteBuffer.allocateDirect(HEADER_SIZE + MAX_RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    //segment files by first sequence number
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final ConcurrentSkipListSet<Long> unacknowledged = new ConcurrentSkipListSet<>();
+    private final List<JournalRecord> recovered = new ArrayList<>();
+    private final AtomicInteger acknowledgedSinceCheckpoint = new AtomicInteger();
+    //guarded by writeLock
+    private FileChannel channel;
+    private long lastSequence;
+    private boolean closed;
+    private volatile long writtenSequence;
+    //guarded by syncLock
+    private long syncedSequence;
+    //guarded by this, records up to checkpoint are acknowledged except the pending ones
+    private long checkpoint;
+    private Set<Long> pendingAtCheckpoint = new HashSet<>();
+
+    private GateJournal(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * open the journal of a directory, reading back the records not acknowledged yet
+     *
+     * @param directory   created if missing
+     * @param segmentSize size in bytes above which a new segment file is started
+     * @return the journal, ready for appends
+     */
+    public static GateJournal open(Path directory, long segmentSize) throws IOException {
+        GateJournal journal = new GateJournal(directory, segmentSize);
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * write a record and wait until it is on disk
+     *
+     * @param record
+     * @return sequence number of the record, to acknowledge once it is applied
+     */
+    public long append(JournalRecord record) throws IOException {
+        int size = record.encodedSize();
+        if (size > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal record of " + size + " bytes is too large");
+        }
+        long sequence;
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IOException("Journal " + directory + " is closed");
+            }
+            try {
+                if (channel.position() > 0 && channel.position() + HEADER_SIZE + size > segmentSize) {
+                    rotate();
+                }
+                sequence = lastSequence + 1;
+                frame.clear();
+                frame.position(HEADER_SIZE);
+                record.encode(sequence, frame);
+                frame.flip();
+                frame.position(HEADER_SIZE);
+                crc.reset();
+                crc.update(frame);
+                frame.putInt(0, size);
+                frame.putInt(4, (int) crc.getValue());
+                frame.position(0);
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            } catch (IOException e) {
+                //a partly written record would hide the next ones, no more appends
+                closed = true;
+                throw e;
+            }
+            lastSequence = sequence;
+            unacknowledged.add(sequence);
+            writtenSequence = sequence;
+        }
+        sync(sequence);
+        return sequence;
+    }
+
+    /**
+     * the record is applied to the database, it will not be replayed
+     *
+     * @param sequence returned by append
+     */
+    public void acknowledge(long sequence) {
+        if (unacknowledged.remove(sequence) && acknowledgedSinceCheckpoint.incrementAndGet() >= CHECKPOINT_INTERVAL) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                logger.error("Error saving the journal checkpoint", e);
+            }
+        }
+    }
+
+    /**
+     * @return records found on open that are still not acknowledged, in journal order
+     */
+    public List<JournalRecord> getUnacknowledgedRecords() {
+        List<JournalRecord> records = new ArrayList<>();
+        for (JournalRecord record : recovered) {
+            if (unacknowledged.contains(record.getSequence())) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    public int getUnacknowledgedCount() {
+        return unacknowledged.size();
+    }
+
+    /**
+     * save the records not acknowledged so far and delete the segments holding only acknowledged records
+     */
+    public synchronized void checkpoint() throws IOException {
+        acknowledgedSinceCheckpoint.set(0);
+        List<Path> acknowledgedSegments = new ArrayList<>();
+        long upTo;
+        TreeSet<Long> pending;
+        synchronized (writeLock) {
+            upTo = lastSequence;
+            //copied one by one, acknowledgments go on meanwhile
+            pending = new TreeSet<>();
+            for (Long sequence : unacknowledged) {
+                pending.add(sequence);
+            }
+            //the segments before the one holding the oldest record not acknowledged are not needed anymore
+            Long kept = segments.floorKey(pending.isEmpty() ? upTo + 1 : pending.first());
+            if (kept != null) {
+                Map<Long, Path> below = segments.headMap(kept);
+                acknowledgedSegments.addAll(below.values());
+                below.clear();
+            }
+        }
+        if (upTo != checkpoint || !pending.equals(pendingAtCheckpoint)) {
+            StringBuilder content = new StringBuilder().append(upTo).append('\n');
+            for (long sequence : pending) {
+                content.append(sequence).append('\n');
+            }
+            Path tmp = directory.resolve(CHECKPOINT + ".tmp");
+            Files.write(tmp, content.toString().getBytes(StandardCharsets.US_ASCII));
+            Files.move(tmp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpoint = upTo;
+            pendingAtCheckpoint = pending;
+        }
+        for (Path segment : acknowledgedSegments) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * save the checkpoint and close the current segment
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+            closed = true;
+            channel.force(false);
+            channel.close();
+        }
+        checkpoint();
+    }
+
+    /**
+     * one fsync covers every record written before it: a thread finding its record already synced by another
+     * one returns at once
+     */
+    private void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            FileChannel current;
+            long target;
+            synchronized (writeLock) {
+                current = channel;
+                target = writtenSequence;
+            }
+            try {
+                current.force(false);
+            } catch (ClosedChannelException e) {
+                //rotated or closed meanwhile, both force the segment before closing it
+            }
+            syncedSequence = target;
+        }
+    }
+
+    private void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        openSegment(lastSequence + 1);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        segments.put(firstSequence, segment);
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        Path checkpointFile = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpointFile)) {
+            List<String> lines = Files.readAllLines(checkpointFile, StandardCharsets.US_ASCII);
+            checkpoint = Long.parseLong(lines.get(0).trim());
+            for (String line : lines.subList(1, lines.size())) {
+                if (!line.trim().isEmpty()) {
+                    pendingAtCheckpoint.add(Long.parseLong(line.trim()));
+                }
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : files) {
+                String name = segment.getFileName().toString();
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), segment);
+            }
+        }
+        lastSequence = checkpoint;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            boolean lastSegment = segment.getKey().equals(segments.lastKey());
+            lastSequence = Math.max(lastSequence, readSegment(segment.getValue(), lastSegment));
+        }
+        for (JournalRecord record : recovered) {
+            unacknowledged.add(record.getSequence());
+        }
+        syncedSequence = lastSequence;
+        writtenSequence = lastSequence;
+        openSegment(lastSequence + 1);
+        if (!recovered.isEmpty()) {
+            logger.warn(recovered.size() + " journal records not acknowledged, to be replayed");
+        }
+    }
+
+    /**
+     * read the records of a segment not acknowledged at the checkpoint; a damaged tail of the last segment is a record torn
+     * by a crash and is cut off
+     *
+     * @return highest sequence number of the segment
+     */
+    private long readSegment(Path segment, boolean lastSegment) throws IOException {
+        long highestSequence = 0;
+        long validLength = 0;
+        long length = Files.size(segment);
+        try (InputStream in = Files.newInputStream(segment);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024))) {
+            byte[] payload = new byte[MAX_RECORD_SIZE];
+            while (validLength < length) {
+                int size = data.readInt();
+                int checksum = data.readInt();
+                if (size <= 0 || size > MAX_RECORD_SIZE) {
+                    break;
+                }
+                data.readFully(payload, 0, size);
+                crc.reset();
+                crc.update(payload, 0, size);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                JournalRecord record = JournalRecord.decode(ByteBuffer.wrap(payload, 0, size));
+                highestSequence = record.getSequence();
+                if (record.getSequence() > checkpoint || pendingAtCheckpoint.contains(record.getSequence())) {
+                    recovered.add(record);
+                }
+                validLength += HEADER_SIZE + size;
+            }
+        } catch (EOFException e) {
+            //record cut in the middle
+        }
+        if (validLength < length) {
+            if (lastSegment) {
+                logger.warn("Cutting the torn tail of journal segment " + segment + " at " + validLength + " bytes");
+                try (FileChannel truncated = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    truncated.truncate(validLength);
+                }
+            } else {
+                logger.error("Damaged record in journal segment " + segment + " at " + validLength
+                        + " bytes, the rest of the segment is skipped");
+            }
+        }
+        return highestSequence;
+    }
+}
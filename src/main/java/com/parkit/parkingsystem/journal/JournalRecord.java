@@ -0,0 +1,98 @@
+package com.parkit.parkingsystem.journal;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * One gate event of the journal: a vehicle entering on a spot, or a vehicle leaving.
+ */
+public class JournalRecord {
+
+    public enum Type {
+        ENTRY,
+        EXIT
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String vehicleRegNumber;
+    //spot of an entry, 0 and null for an exit
+    private final int parkingNumber;
+    private final ParkingType parkingType;
+    //in-time of an entry, out-time of an exit
+    private final long time;
+
+    private JournalRecord(long sequence, Type type, String vehicleRegNumber, int parkingNumber, ParkingType parkingType, long time) {
+        this.sequence = sequence;
+        this.type = type;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.parkingNumber = parkingNumber;
+        this.parkingType = parkingType;
+        this.time = time;
+    }
+
+    public static JournalRecord entry(String vehicleRegNumber, ParkingSpot parkingSpot, Date inTime) {
+        return new JournalRecord(0, Type.ENTRY, vehicleRegNumber, parkingSpot.getId(), parkingSpot.getParkingType(), inTime.getTime());
+    }
+
+    public static JournalRecord exit(String vehicleRegNumber, Date outTime) {
+        return new JournalRecord(0, Type.EXIT, vehicleRegNumber, 0, null, outTime.getTime());
+    }
+
+    /**
+     * @return position of the record in the journal, 0 until it is appended
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    /**
+     * @return spot of an entry, null for an exit
+     */
+    public ParkingSpot getParkingSpot() {
+        return parkingType == null ? null : new ParkingSpot(parkingNumber, parkingType, false);
+    }
+
+    public Date getTime() {
+        return new Date(time);
+    }
+
+    int encodedSize() {
+        return 8 + 1 + 8 + 4 + 1 + 2 + vehicleRegNumber.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    void encode(long sequence, ByteBuffer buffer) {
+        byte[] plate = vehicleRegNumber.getBytes(StandardCharsets.UTF_8);
+        buffer.putLong(sequence);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(time);
+        buffer.putInt(parkingNumber);
+        buffer.put((byte) (parkingType == null ? -1 : parkingType.ordinal()));
+        buffer.putShort((short) plate.length);
+        buffer.put(plate);
+    }
+
+    static JournalRecord decode(ByteBuffer buffer) {
+        long sequence = buffer.getLong();
+        Type type = Type.values()[buffer.get()];
+        long time = buffer.getLong();
+        int parkingNumber = buffer.getInt();
+        byte parkingType = buffer.get();
+        byte[] plate = new byte[buffer.getShort()];
+        buffer.get(plate);
+        return new JournalRecord(sequence, type, new String(plate, StandardCharsets.UTF_8), parkingNumber,
+                parkingType < 0 ? null : ParkingType.values()[parkingType], time);
+    }
+}
@@ -0,0 +1,54 @@
+package com.parkit.parkingsystem.journal;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Re-applies on startup the journal records that were never acknowledged, e.g. because the database was down.
+ * A record that still cannot be applied stays in the journal for the next startup.
+ */
+public class JournalReplayer {
+
+    private static final Logger logger = LogManager.getLogger("JournalReplayer");
+
+    private JournalReplayer() {
+    }
+
+    /**
+     * @param journal
+     * @param handler applies a record to the database, returns false if it cannot be applied now;
+     *                it must return true without applying it again when the record is already applied
+     * @return number of records applied
+     */
+    public static int replay(GateJournal journal, Predicate<JournalRecord> handler) {
+        int applied = 0;
+        int kept = 0;
+        for (JournalRecord record : journal.getUnacknowledgedRecords()) {
+            boolean done;
+            try {
+                done = handler.test(record);
+            } catch (RuntimeException e) {
+                logger.error("Error replaying journal record " + record.getSequence(), e);
+                done = false;
+            }
+            if (done) {
+                journal.acknowledge(record.getSequence());
+                applied++;
+            } else {
+                kept++;
+            }
+        }
+        if (kept > 0) {
+            logger.error(kept + " journal records could not be replayed, they are kept for the next startup");
+        }
+        try {
+            journal.checkpoint();
+        } catch (IOException e) {
+            logger.error("Error saving the journal checkpoint", e);
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.model;
+
+/**
+ * Outcome of a vehicle entering through ParkingService.entry: the spot and the ticket given to the vehicle, or why
+ * it was refused.
+ */
+public class EntryResult {
+
+    public enum Status {
+        //ticket saved in DB
+        ENTERED,
+        //the DB did not get the ticket, it is saved by the replay of the journal on the next startup
+        JOURNALED,
+        ALREADY_PARKED,
+        NO_SPOT_AVAILABLE,
+        //the ticket could not be saved, the spot is given back
+        FAILED,
+        //refused by a full GatePipeline, to be tried again
+        BUSY
+    }
+
+    private final Status status;
+    private final Ticket ticket;
+    private final boolean recurringUser;
+
+    private EntryResult(Status status, Ticket ticket, boolean recurringUser) {
+        this.status = status;
+        this.ticket = ticket;
+        this.recurringUser = recurringUser;
+    }
+
+    public static EntryResult entered(Status status, Ticket ticket, boolean recurringUser) {
+        return new EntryResult(status, ticket, recurringUser);
+    }
+
+    public static EntryResult refused(Status status) {
+        return new EntryResult(status, null, false);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the vehicle may enter, its ticket being saved or journaled
+     */
+    public boolean isEntered() {
+        return status == Status.ENTERED || status == Status.JOURNALED;
+    }
+
+    /**
+     * @return ticket of the vehicle, null when it is refused
+     */
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    /**
+     * @return spot given to the vehicle, null when it is refused
+     */
+    public ParkingSpot getParkingSpot() {
+        return ticket == null ? null : ticket.getParkingSpot();
+    }
+
+    /**
+     * @return true if the vehicle came before, its fare gets the discount of the recurring users
+     */
+    public boolean isRecurringUser() {
+        return recurringUser;
+    }
+}
@@ -0,0 +1,52 @@
+package com.parkit.parkingsystem.model;
+
+/**
+ * Outcome of a vehicle leaving through ParkingService.exit: its closed ticket and fare, or why it was not closed.
+ */
+public class ExitResult {
+
+    public enum Status {
+        //ticket closed in DB, the spot is free
+        EXITED,
+        //the DB did not get the exit, the ticket is closed by the replay of the journal on the next startup
+        JOURNALED,
+        //no open ticket for the vehicle, or the DB failed
+        NOT_CLOSED,
+        //refused by a full GatePipeline, to be tried again
+        BUSY
+    }
+
+    private final Status status;
+    private final Ticket ticket;
+
+    private ExitResult(Status status, Ticket ticket) {
+        this.status = status;
+        this.ticket = ticket;
+    }
+
+    public static ExitResult exited(Ticket ticket) {
+        return new ExitResult(Status.EXITED, ticket);
+    }
+
+    public static ExitResult refused(Status status) {
+        return new ExitResult(status, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return closed ticket of the vehicle, with its out-time and fare, null unless EXITED
+     */
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    /**
+     * @return fare to pay, 0 unless EXITED
+     */
+    public double getFare() {
+        return ticket == null ? 0 : ticket.getPrice();
+    }
+}
@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SummaryPeriod;
+
+import java.util.Date;
+
+/**
+ * Entries, exits, revenue and stays of one type of spot over one hour or one day. Entries are counted in the period
+ * of their in-time, exits with their fare and stay in the period of their out-time.
+ */
+public class ParkingSummary {
+
+    /**
+     * upper bounds in minutes of the stay histogram, the last bucket holding the longer stays
+     */
+    public static final int[] STAY_LIMITS_MINUTES = {30, 60, 120, 240, 480, 1440};
+
+    private SummaryPeriod period;
+    private Date periodStart;
+    private ParkingType parkingType;
+    private long entries;
+    private long exits;
+    private long revenueCents;
+    private long stayMinutes;
+    private long[] stays = new long[STAY_LIMITS_MINUTES.length + 1];
+
+    public SummaryPeriod getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(SummaryPeriod period) {
+        this.period = period;
+    }
+
+    public Date getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(Date periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public void setParkingType(ParkingType parkingType) {
+        this.parkingType = parkingType;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public long getExits() {
+        return exits;
+    }
+
+    public void setExits(long exits) {
+        this.exits = exits;
+    }
+
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    public void setRevenueCents(long revenueCents) {
+        this.revenueCents = revenueCents;
+    }
+
+    public double getRevenue() {
+        return revenueCents / 100.0;
+    }
+
+    public long getStayMinutes() {
+        return stayMinutes;
+    }
+
+    public void setStayMinutes(long stayMinutes) {
+        this.stayMinutes = stayMinutes;
+    }
+
+    /**
+     * @return average stay of the vehicles that left in the period, 0 when none left
+     */
+    public double getAverageStayMinutes() {
+        return exits == 0 ? 0 : (double) stayMinutes / exits;
+    }
+
+    /**
+     * @return number of stays of each bucket of STAY_LIMITS_MINUTES, then of the longer stays
+     */
+    public long[] getStays() {
+        return stays;
+    }
+
+    public void setStays(long[] stays) {
+        this.stays = stays;
+    }
+}
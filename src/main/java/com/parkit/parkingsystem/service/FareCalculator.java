@@ -0,0 +1,15 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Sets the price of a ticket being closed; given to TicketDAO.closeTicket by ParkingService, which owns the tariff.
+ */
+public interface FareCalculator {
+
+    /**
+     * @param ticket   ticket with its in-time, out-time and spot
+     * @param discount true for a recurring user
+     */
+    void calculateFare(Ticket ticket, boolean discount);
+}
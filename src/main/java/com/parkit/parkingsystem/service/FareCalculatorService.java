@@ -1,51 +1,133 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.model.Ticket;
 
-public class FareCalculatorService {
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class FareCalculatorService implements FareCalculator {
+
+    //tickets below which a fork-join task computes its fares instead of splitting
+    private static final int PARALLEL_THRESHOLD = 16 * 1024;
+
+    //swapped in whole, a fare in progress keeps the tariff it started with
+    private volatile Tariff tariff = Tariff.standard();
+
+    /**
+     * replace the tariff, without pausing the exits
+     * @param tariff
+     */
+    public void setTariff(Tariff tariff) {
+        this.tariff = tariff;
+    }
+
+    public Tariff getTariff() {
+        return tariff;
+    }
 
     /**
      * the method that to calculi the price of a ticket
      * @param ticket
      * @param discount
      */
+    @Override
     public void calculateFare(Ticket ticket, boolean discount) {
-        double inHour = ticket.getInTime().getTime();
-        double outHour = ticket.getOutTime().getTime();
-        double duration = outHour - inHour; //time in ms
-        final double DURATION_LIMIT = 30 * 60 * 1_000;//free station duration 30 minutes
+        long inTime = ticket.getInTime().getTime();
+        long outTime = ticket.getOutTime().getTime();
+        long cents = calculateFareCents(inTime, outTime, ticket.getParkingSpot().getParkingType().ordinal(), discount);
+        ticket.setPrice(cents / 100.0);
+    }
 
-        if ((ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime()))) {
-            throw new IllegalArgumentException("Out time provided is incorrect:" + ticket.getOutTime().toString());
-        }
-        //a price of 0 if the duration in the car park is less than 30 minutes
-        if (duration < DURATION_LIMIT) {
-            ticket.setPrice(0);
-            return;
-        }
-        switch (ticket.getParkingSpot().getParkingType()) {
-            case CAR: {
-                    //standard price car
-                    ticket.setPrice((duration/ (1000 * 60 * 60)) * Fare.CAR_RATE_PER_HOUR);
-                break;
-            }
-            case BIKE: {
-                    //standard price bike
-                    ticket.setPrice((duration/ (1000 * 60 * 60)) * Fare.BIKE_RATE_PER_HOUR );
-                break;
-            }
-            default:
-                throw new IllegalArgumentException("Unkown Parking Type");
+    public void calculateFare(Ticket ticket) {
+        calculateFare(ticket, false);
+    }
+
+    /**
+     * price of a stay in cents with the current tariff, computed on longs and rounded half up to the cent once,
+     * without allocating; with the standard tariff: free under 30 minutes, then the rate per hour prorated to the
+     * millisecond, minus 5% for recurring users
+     * @param inTime epoch millis
+     * @param outTime epoch millis
+     * @param parkingTypeOrdinal ordinal of the ParkingType of the spot
+     * @param discount
+     * @return price in cents
+     */
+    public long calculateFareCents(long inTime, long outTime, int parkingTypeOrdinal, boolean discount) {
+        return tariff.calculateFareCents(inTime, outTime, parkingTypeOrdinal, discount);
+    }
+
+    /**
+     * price in cents of many stays, e.g. the tickets of a day to re-rate, given as parallel arrays
+     * @param inTimes epoch millis
+     * @param outTimes epoch millis
+     * @param parkingTypeOrdinals
+     * @param discounts
+     * @param cents filled with the price of each stay, as calculateFareCents, all with the same tariff
+     */
+    public void calculateFaresCents(long[] inTimes, long[] outTimes, int[] parkingTypeOrdinals, boolean[] discounts, long[] cents) {
+        checkLengths(inTimes, outTimes, parkingTypeOrdinals, discounts, cents);
+        calculateFaresCents(tariff, inTimes, outTimes, parkingTypeOrdinals, discounts, cents, 0, cents.length);
+    }
+
+    /**
+     * same as calculateFaresCents, large inputs being split among the threads of the common fork-join pool
+     */
+    public void calculateFaresCentsInParallel(long[] inTimes, long[] outTimes, int[] parkingTypeOrdinals, boolean[] discounts, long[] cents) {
+        checkLengths(inTimes, outTimes, parkingTypeOrdinals, discounts, cents);
+        ForkJoinPool.commonPool().invoke(new FaresTask(tariff, inTimes, outTimes, parkingTypeOrdinals, discounts, cents, 0, cents.length));
+    }
+
+    private static void calculateFaresCents(Tariff tariff, long[] inTimes, long[] outTimes, int[] parkingTypeOrdinals,
+                                            boolean[] discounts, long[] cents, int from, int to) {
+        for (int i = from; i < to; i++) {
+            cents[i] = tariff.calculateFareCents(inTimes[i], outTimes[i], parkingTypeOrdinals[i], discounts[i]);
         }
-        //price minus 5% for recurring users
-        if (discount) {
-            ticket.setPrice(ticket.getPrice() * 0.95);
+    }
+
+    private static void checkLengths(long[] inTimes, long[] outTimes, int[] parkingTypeOrdinals, boolean[] discounts, long[] cents) {
+        int length = cents.length;
+        if (inTimes.length != length || outTimes.length != length || parkingTypeOrdinals.length != length
+                || discounts.length != length) {
+            throw new IllegalArgumentException("Fare arrays of different lengths");
         }
     }
 
-    public void calculateFare(Ticket ticket) {
-        FareCalculatorService fareCalculatorService = new FareCalculatorService();
-        fareCalculatorService.calculateFare(ticket, false);
+    /**
+     * fares of [from, to), halved until below PARALLEL_THRESHOLD
+     */
+    private static final class FaresTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Tariff tariff;
+        private final long[] inTimes;
+        private final long[] outTimes;
+        private final int[] parkingTypeOrdinals;
+        private final boolean[] discounts;
+        private final long[] cents;
+        private final int from;
+        private final int to;
+
+        private FaresTask(Tariff tariff, long[] inTimes, long[] outTimes, int[] parkingTypeOrdinals, boolean[] discounts,
+                          long[] cents, int from, int to) {
+            this.tariff = tariff;
+            this.inTimes = inTimes;
+            this.outTimes = outTimes;
+            this.parkingTypeOrdinals = parkingTypeOrdinals;
+            this.discounts = discounts;
+            this.cents = cents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                calculateFaresCents(tariff, inTimes, outTimes, parkingTypeOrdinals, discounts, cents, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new FaresTask(tariff, inTimes, outTimes, parkingTypeOrdinals, discounts, cents, from, middle),
+                    new FaresTask(tariff, inTimes, outTimes, parkingTypeOrdinals, discounts, cents, middle, to));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,150 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Processes the entries and exits of many lanes at the same time through ParkingService.entry and exit.
+ * Each request runs on its own virtual thread when the JVM has them (Java 21 and later), else on a pool of platform
+ * threads of the size of the concurrency limit. At most maxConcurrentRequests requests call the DB at the same time,
+ * usually db.pool.maxSize, the others wait for a permit. The requests of one plate run one after the other in the
+ * order they were submitted, so an entry and an exit of the same vehicle never race.
+ */
+public class GateEngine implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger("GateEngine");
+
+    private final ParkingService parkingService;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    //last request of each plate with requests in flight
+    private final ConcurrentMap<String, CompletableFuture<?>> lastRequests = new ConcurrentHashMap<>();
+
+    /**
+     * @param parkingService
+     * @param maxConcurrentRequests maximum number of requests calling the DB at the same time
+     */
+    public GateEngine(ParkingService parkingService, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("Invalid maximum of concurrent requests: " + maxConcurrentRequests);
+        }
+        this.parkingService = parkingService;
+        this.permits = new Semaphore(maxConcurrentRequests, true);
+        ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executor = virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor(maxConcurrentRequests);
+    }
+
+    /**
+     * @return the result of ParkingService.entry, once the previous requests of the plate are done
+     */
+    public CompletableFuture<EntryResult> entry(String vehicleRegNumber, ParkingType parkingType, Date inTime) {
+        return submit(vehicleRegNumber, () -> parkingService.entry(vehicleRegNumber, parkingType, inTime));
+    }
+
+    /**
+     * @return the result of ParkingService.exit, once the previous requests of the plate are done
+     */
+    public CompletableFuture<ExitResult> exit(String vehicleRegNumber, Date outTime) {
+        return submit(vehicleRegNumber, () -> parkingService.exit(vehicleRegNumber, outTime));
+    }
+
+    /**
+     * @return true if the requests run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * stop taking requests and wait for the ones in flight; if interrupted while waiting, interrupt them and keep
+     * the interrupt status of the calling thread
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.error("Gate requests still in flight after one minute, interrupting them");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(String vehicleRegNumber, Supplier<T> request) {
+        if (vehicleRegNumber == null) {
+            throw new IllegalArgumentException("Invalid vehicle registration number");
+        }
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Gate engine is closed");
+        }
+        AtomicReference<CompletableFuture<T>> submitted = new AtomicReference<>();
+        lastRequests.compute(vehicleRegNumber, (plate, previous) -> {
+            submitted.set(previous == null
+                    ? CompletableFuture.supplyAsync(() -> withPermit(request), executor)
+                    //after the previous request of the plate, whether it failed or not
+                    : previous.handle((result, failure) -> null).thenApplyAsync(done -> withPermit(request), executor));
+            return submitted.get();
+        });
+        CompletableFuture<T> future = submitted.get();
+        future.whenComplete((result, failure) -> lastRequests.remove(vehicleRegNumber, future));
+        return future;
+    }
+
+    private <T> T withPermit(Supplier<T> request) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the database", e);
+        }
+        try {
+            return request.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, null before Java 21
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.info("No virtual threads in this JVM, gate requests run on platform threads");
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "gate-engine-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
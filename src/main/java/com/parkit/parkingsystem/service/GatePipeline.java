@@ -0,0 +1,582 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ActiveTicketRegistry;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Staged processing of the gate events for bursts of traffic, instead of running the DAO calls of each entry and
+ * exit on the thread of its gate.
+ * <p>
+ * Gates put their events in a ring buffer of pre-allocated slots, in the order of their sequence numbers. Three
+ * threads then go over the ring one behind the other: the allocator stage, the only one deciding, gives the spots
+ * with the SpotAllocator and keeps the ActiveTicketRegistry up to date, so it needs no lock and no query; the
+ * persistence stage writes the events available by batches of at most batchSize, the entries with one JDBC batch
+ * and the exits with another; the notification stage completes the futures of the gates, tells the listeners and
+ * frees the slots. When the ring is full, a gate waits for a free slot (BLOCK) or is answered BUSY at once (REJECT).
+ * <p>
+ * The pipeline owns the tickets and the spots while it runs: the gates of the process must all go through it.
+ * A batch that cannot be written after a few attempts is undone, its entries FAILED and its exits NOT_CLOSED;
+ * so is an event of a batch that fails with an exception, unless it was written already. An exit whose out-time
+ * is before the in-time of the ticket is refused NOT_CLOSED.
+ */
+public class GatePipeline implements AutoCloseable {
+
+    public enum Backpressure {
+        BLOCK,
+        REJECT
+    }
+
+    private static final Logger logger = LogManager.getLogger("GatePipeline");
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 100;
+    //an idle stage yields a few times, then sleeps this long between two looks at the ring
+    private static final int IDLE_YIELDS = 100;
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final Event[] ring;
+    private final int mask;
+    private final int batchSize;
+    private final Backpressure backpressure;
+    private final TicketDAO ticketDAO;
+    private final ActiveTicketRegistry activeTicketRegistry;
+    private final SpotAllocator spotAllocator;
+    private final FareCalculatorService fareCalculatorService;
+    private final List<ParkingEventListener> parkingEventListeners = new CopyOnWriteArrayList<>();
+    private final List<Thread> stages = new ArrayList<>();
+    //next sequence number given to a gate
+    private final AtomicLong claimed = new AtomicLong();
+    //last sequence number done by each stage, each one written by its stage only
+    private final AtomicLong allocated = new AtomicLong(-1);
+    private final AtomicLong persisted = new AtomicLong(-1);
+    private final AtomicLong released = new AtomicLong(-1);
+    //gates between their check of closed and the publication of their event
+    private final AtomicInteger publishing = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    /**
+     * @param ticketDAO             its active ticket registry is loaded if it is not
+     * @param spotAllocator
+     * @param fareCalculatorService prices the exits
+     * @param capacity              number of slots of the ring, rounded up to a power of two
+     * @param batchSize             maximum number of events written in one transaction
+     * @param backpressure          what a gate does when the ring is full
+     */
+    public GatePipeline(TicketDAO ticketDAO, SpotAllocator spotAllocator, FareCalculatorService fareCalculatorService,
+                        int capacity, int batchSize, Backpressure backpressure) {
+        if (capacity < 1 || capacity > 1 << 30 || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid gate pipeline settings: capacity=" + capacity + ", batchSize=" + batchSize);
+        }
+        if (ticketDAO.activeTicketRegistry == null && ticketDAO.loadActiveTicketRegistry() == null) {
+            throw new IllegalStateException("Open tickets cannot be loaded, the gate pipeline cannot start");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new Event[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.backpressure = backpressure;
+        this.ticketDAO = ticketDAO;
+        this.activeTicketRegistry = ticketDAO.activeTicketRegistry;
+        this.spotAllocator = spotAllocator;
+        this.fareCalculatorService = fareCalculatorService;
+        startStage("gate-pipeline-allocator", this::runAllocator);
+        startStage("gate-pipeline-persistence", this::runPersistence);
+        startStage("gate-pipeline-notification", this::runNotification);
+    }
+
+    /**
+     * tell the listener of every entry and exit written to the DB, on the notification thread
+     * @param parkingEventListener
+     */
+    public void addParkingEventListener(ParkingEventListener parkingEventListener) {
+        parkingEventListeners.add(parkingEventListener);
+    }
+
+    /**
+     * @return completed once the ticket of the vehicle is written, or BUSY at once when the ring is full and
+     * the backpressure is REJECT
+     */
+    public CompletableFuture<EntryResult> entry(String vehicleRegNumber, ParkingType parkingType, Date inTime) {
+        checkVehicleRegNumber(vehicleRegNumber);
+        if (parkingType == null) {
+            throw new IllegalArgumentException("Missing vehicle type");
+        }
+        CompletableFuture<EntryResult> reply = new CompletableFuture<>();
+        long sequence = claim();
+        if (sequence < 0) {
+            reply.complete(EntryResult.refused(EntryResult.Status.BUSY));
+            return reply;
+        }
+        Event event = ring[(int) sequence & mask];
+        event.entry = true;
+        event.vehicleRegNumber = vehicleRegNumber;
+        event.parkingType = parkingType;
+        event.time = inTime.getTime();
+        event.entryReply = reply;
+        publish(event, sequence);
+        return reply;
+    }
+
+    /**
+     * @return completed once the ticket of the vehicle is closed, or BUSY at once when the ring is full and
+     * the backpressure is REJECT
+     */
+    public CompletableFuture<ExitResult> exit(String vehicleRegNumber, Date outTime) {
+        checkVehicleRegNumber(vehicleRegNumber);
+        CompletableFuture<ExitResult> reply = new CompletableFuture<>();
+        long sequence = claim();
+        if (sequence < 0) {
+            reply.complete(ExitResult.refused(ExitResult.Status.BUSY));
+            return reply;
+        }
+        Event event = ring[(int) sequence & mask];
+        event.entry = false;
+        event.vehicleRegNumber = vehicleRegNumber;
+        event.time = outTime.getTime();
+        event.exitReply = reply;
+        publish(event, sequence);
+        return reply;
+    }
+
+    /**
+     * @return number of events in the ring, not answered yet
+     */
+    public int getPendingEvents() {
+        return (int) (claimed.get() - 1 - released.get());
+    }
+
+    /**
+     * refuse new events, answer the ones in the ring and stop the stages; if interrupted, stop without waiting
+     * for the events left and keep the interrupt status of the calling thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        while (publishing.get() > 0) {
+            Thread.yield();
+        }
+        long last = claimed.get() - 1;
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        boolean interrupted = false;
+        try {
+            while (released.get() < last && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (released.get() < last) {
+            logger.error((last - released.get()) + " gate events still not answered when closing the gate pipeline");
+        }
+        stopped = true;
+        //the stages see stopped within an idle park, wait for them even if interrupted
+        for (Thread stage : stages) {
+            while (stage.isAlive()) {
+                try {
+                    stage.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return sequence number of a free slot, -1 when the ring is full and the backpressure is REJECT
+     */
+    private long claim() {
+        publishing.incrementAndGet();
+        if (closed) {
+            publishing.decrementAndGet();
+            throw new RejectedExecutionException("Gate pipeline is closed");
+        }
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - ring.length > released.get()) {
+                if (backpressure == Backpressure.REJECT) {
+                    publishing.decrementAndGet();
+                    return -1;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void publish(Event event, long sequence) {
+        event.sequence = sequence;
+        publishing.decrementAndGet();
+    }
+
+    private void runAllocator() {
+        int idle = 0;
+        while (!stopped) {
+            long next = allocated.get() + 1;
+            Event event = ring[(int) next & mask];
+            if (event.sequence != next) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+            try {
+                if (event.entry) {
+                    allocateEntry(event);
+                } else {
+                    allocateExit(event);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error allocating the gate event of vehicle " + event.vehicleRegNumber, e);
+                event.failed = true;
+            }
+            allocated.lazySet(next);
+        }
+    }
+
+    private void allocateEntry(Event event) {
+        if (activeTicketRegistry.contains(event.vehicleRegNumber)) {
+            event.entryStatus = EntryResult.Status.ALREADY_PARKED;
+            return;
+        }
+        ParkingSpot parkingSpot = spotAllocator.allocate(event.parkingType);
+        if (parkingSpot == null) {
+            event.entryStatus = EntryResult.Status.NO_SPOT_AVAILABLE;
+            return;
+        }
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(event.vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(new Date(event.time));
+        ticket.setOutTime(null);
+        activeTicketRegistry.register(ticket);
+        event.ticket = ticket;
+        event.entryStatus = EntryResult.Status.ENTERED;
+    }
+
+    private void allocateExit(Event event) {
+        Ticket openTicket = activeTicketRegistry.get(event.vehicleRegNumber);
+        if (openTicket == null) {
+            event.exitStatus = ExitResult.Status.NOT_CLOSED;
+            return;
+        }
+        if (event.time < openTicket.getInTime().getTime()) {
+            logger.error("Out time of vehicle " + event.vehicleRegNumber + " is before its in time, ticket not closed");
+            event.exitStatus = ExitResult.Status.NOT_CLOSED;
+            return;
+        }
+        activeTicketRegistry.remove(openTicket);
+        //the open ticket gets its id once its entry is written, the exit is closed on a copy
+        event.ticket = openTicket;
+        event.exitStatus = ExitResult.Status.EXITED;
+    }
+
+    private void runPersistence() {
+        int idle = 0;
+        List<Event> entries = new ArrayList<>(batchSize);
+        List<Event> exits = new ArrayList<>(batchSize);
+        while (!stopped) {
+            long first = persisted.get() + 1;
+            long available = allocated.get();
+            if (first > available) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+            long last = Math.min(available, first + batchSize - 1);
+            for (long sequence = first; sequence <= last; sequence++) {
+                Event event = ring[(int) sequence & mask];
+                if (event.failed) {
+                    continue;
+                }
+                if (event.entry && event.entryStatus == EntryResult.Status.ENTERED) {
+                    entries.add(event);
+                } else if (!event.entry && event.exitStatus == ExitResult.Status.EXITED) {
+                    exits.add(event);
+                }
+            }
+            try {
+                persist(entries, exits);
+            } catch (RuntimeException e) {
+                logger.error("Error writing " + (entries.size() + exits.size()) + " gate events", e);
+                undo(entries, exits);
+            }
+            entries.clear();
+            exits.clear();
+            persisted.lazySet(last);
+        }
+    }
+
+    private void persist(List<Event> entries, List<Event> exits) {
+        //tickets of the vehicles of the batch before its entries are written, with one query
+        List<String> vehicleRegNumbers = new ArrayList<>(entries.size() + exits.size());
+        for (Event event : entries) {
+            vehicleRegNumbers.add(event.vehicleRegNumber);
+        }
+        for (Event event : exits) {
+            vehicleRegNumbers.add(event.vehicleRegNumber);
+        }
+        Map<String, Integer> pastVisits = vehicleRegNumbers.isEmpty() ? new HashMap<>()
+                : ticketDAO.getNbTickets(vehicleRegNumbers);
+        List<Ticket> savedTickets = new ArrayList<>(entries.size());
+        //earlier entries of this batch, not counted by the query
+        Map<String, Integer> enteredInBatch = new HashMap<>();
+        for (Event event : entries) {
+            int visits = pastVisits.getOrDefault(event.vehicleRegNumber, 0) + enteredInBatch.getOrDefault(event.vehicleRegNumber, 0);
+            event.recurringUser = visits >= 1;
+            enteredInBatch.merge(event.vehicleRegNumber, 1, Integer::sum);
+            savedTickets.add(event.ticket);
+        }
+        if (write(savedTickets, true)) {
+            for (Event event : entries) {
+                event.written = true;
+            }
+        } else {
+            for (Event event : entries) {
+                undoEntry(event);
+            }
+            enteredInBatch.clear();
+        }
+        List<Ticket> closedTickets = new ArrayList<>(exits.size());
+        List<Event> closedExits = new ArrayList<>(exits.size());
+        for (Event event : exits) {
+            Ticket openTicket = event.ticket;
+            if (openTicket.getId() == 0) {
+                //its entry was not written
+                event.exitStatus = ExitResult.Status.NOT_CLOSED;
+                continue;
+            }
+            Ticket ticket = new Ticket();
+            ticket.setId(openTicket.getId());
+            ticket.setParkingSpot(openTicket.getParkingSpot());
+            ticket.setVehicleRegNumber(openTicket.getVehicleRegNumber());
+            ticket.setInTime(openTicket.getInTime());
+            ticket.setOutTime(new Date(event.time));
+            //the entries of this batch are written, they count as visits
+            int visits = pastVisits.getOrDefault(event.vehicleRegNumber, 0) + enteredInBatch.getOrDefault(event.vehicleRegNumber, 0);
+            try {
+                fareCalculatorService.calculateFare(ticket, visits > 1);
+            } catch (RuntimeException e) {
+                logger.error("Error pricing the exit of vehicle " + event.vehicleRegNumber, e);
+                reopen(event);
+                continue;
+            }
+            event.ticket = ticket;
+            closedTickets.add(ticket);
+            closedExits.add(event);
+        }
+        if (!write(closedTickets, false)) {
+            for (Event event : closedExits) {
+                reopen(event);
+            }
+            return;
+        }
+        for (Event event : closedExits) {
+            event.written = true;
+        }
+        for (Event event : closedExits) {
+            spotAllocator.release(event.ticket.getParkingSpot());
+        }
+    }
+
+    /**
+     * fail the events of the batch not written yet, the entries giving their spot back and the exits their ticket
+     */
+    private void undo(List<Event> entries, List<Event> exits) {
+        for (Event event : entries) {
+            if (!event.written && event.entryStatus == EntryResult.Status.ENTERED) {
+                undoEntry(event);
+            }
+        }
+        for (Event event : exits) {
+            if (!event.written && event.exitStatus == ExitResult.Status.EXITED) {
+                if (event.ticket.getId() == 0) {
+                    //its entry was not written either
+                    event.exitStatus = ExitResult.Status.NOT_CLOSED;
+                } else {
+                    reopen(event);
+                }
+            }
+        }
+    }
+
+    private void undoEntry(Event event) {
+        activeTicketRegistry.remove(event.ticket);
+        spotAllocator.release(event.ticket.getParkingSpot());
+        event.entryStatus = EntryResult.Status.FAILED;
+    }
+
+    /**
+     * register the ticket of an exit not written as open again
+     */
+    private void reopen(Event event) {
+        Ticket openTicket = new Ticket();
+        openTicket.setId(event.ticket.getId());
+        openTicket.setParkingSpot(event.ticket.getParkingSpot());
+        openTicket.setVehicleRegNumber(event.vehicleRegNumber);
+        openTicket.setInTime(event.ticket.getInTime());
+        activeTicketRegistry.register(openTicket);
+        event.exitStatus = ExitResult.Status.NOT_CLOSED;
+    }
+
+    private boolean write(List<Ticket> tickets, boolean insert) {
+        if (tickets.isEmpty()) {
+            return true;
+        }
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (insert ? ticketDAO.saveTickets(tickets) : ticketDAO.closeTickets(tickets)) {
+                return true;
+            }
+            if (attempt < MAX_ATTEMPTS) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MS * attempt));
+            }
+        }
+        logger.error(tickets.size() + " tickets not " + (insert ? "saved" : "closed") + " after " + MAX_ATTEMPTS + " attempts");
+        return false;
+    }
+
+    private void runNotification() {
+        int idle = 0;
+        while (!stopped) {
+            long first = released.get() + 1;
+            long available = persisted.get();
+            if (first > available) {
+                idle = idle(idle);
+                continue;
+            }
+            idle = 0;
+            for (long sequence = first; sequence <= available; sequence++) {
+                Event event = ring[(int) sequence & mask];
+                try {
+                    reply(event);
+                } catch (RuntimeException e) {
+                    logger.error("Error answering the gate event of vehicle " + event.vehicleRegNumber, e);
+                }
+                event.clear();
+                released.lazySet(sequence);
+            }
+        }
+    }
+
+    private void reply(Event event) {
+        if (event.entry) {
+            EntryResult.Status status = event.failed ? EntryResult.Status.FAILED : event.entryStatus;
+            if (status == EntryResult.Status.ENTERED) {
+                fireEntry(event.ticket);
+                event.entryReply.complete(EntryResult.entered(status, event.ticket, event.recurringUser));
+            } else {
+                event.entryReply.complete(EntryResult.refused(status));
+            }
+        } else {
+            ExitResult.Status status = event.failed ? ExitResult.Status.NOT_CLOSED : event.exitStatus;
+            if (status == ExitResult.Status.EXITED) {
+                fireExit(event.ticket);
+                event.exitReply.complete(ExitResult.exited(event.ticket));
+            } else {
+                event.exitReply.complete(ExitResult.refused(status));
+            }
+        }
+    }
+
+    private void fireEntry(Ticket ticket) {
+        for (ParkingEventListener parkingEventListener : parkingEventListeners) {
+            try {
+                parkingEventListener.onEntry(ticket);
+            } catch (RuntimeException e) {
+                logger.error("Error in parking event listener on entry of vehicle " + ticket.getVehicleRegNumber(), e);
+            }
+        }
+    }
+
+    private void fireExit(Ticket ticket) {
+        for (ParkingEventListener parkingEventListener : parkingEventListeners) {
+            try {
+                parkingEventListener.onExit(ticket);
+            } catch (RuntimeException e) {
+                logger.error("Error in parking event listener on exit of vehicle " + ticket.getVehicleRegNumber(), e);
+            }
+        }
+    }
+
+    private static int idle(int idle) {
+        if (idle < IDLE_YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    private static void checkVehicleRegNumber(String vehicleRegNumber) {
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid vehicle registration number");
+        }
+    }
+
+    private void startStage(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        stages.add(thread);
+    }
+
+    /**
+     * one slot of the ring, reused for every event of its position; the fields are written by the gate before the
+     * sequence is published, then by each stage in turn
+     */
+    private static final class Event {
+        private volatile long sequence = -1;
+        private boolean entry;
+        private String vehicleRegNumber;
+        private ParkingType parkingType;
+        private long time;
+        private CompletableFuture<EntryResult> entryReply;
+        private CompletableFuture<ExitResult> exitReply;
+        private Ticket ticket;
+        private EntryResult.Status entryStatus;
+        private ExitResult.Status exitStatus;
+        private boolean recurringUser;
+        private boolean failed;
+        //its ticket is saved or closed in the DB
+        private boolean written;
+
+        private void clear() {
+            vehicleRegNumber = null;
+            parkingType = null;
+            entryReply = null;
+            exitReply = null;
+            ticket = null;
+            entryStatus = null;
+            exitStatus = null;
+            recurringUser = false;
+            failed = false;
+            written = false;
+        }
+    }
+}
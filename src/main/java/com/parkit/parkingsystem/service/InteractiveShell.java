@@ -1,14 +1,23 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketArchiver;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.journal.GateJournal;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
+    private static final int VISIT_COUNT_CACHE_SIZE = 100_000;
 
     public static void loadInterface() {
         logger.info("App initialized!!!");
@@ -17,8 +26,53 @@ public class InteractiveShell {
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
         ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.loadParkingSpotIndex();
         TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.loadVisitCountCache(VISIT_COUNT_CACHE_SIZE);
+        ticketDAO.loadActiveTicketRegistry();
+        if (Boolean.parseBoolean(DataBaseConfig.getSetting("db.writeBehind.enabled", "false"))) {
+            ticketDAO.ticketWriteBehind = new TicketWriteBehind(ticketDAO.dataBaseConfig,
+                    Integer.parseInt(DataBaseConfig.getSetting("db.writeBehind.batchSize", "200")),
+                    Long.parseLong(DataBaseConfig.getSetting("db.writeBehind.maxDelayMs", "20")));
+            ticketDAO.ticketWriteBehind.registerShutdownHook();
+        }
+        FareCalculatorService fareCalculatorService = new FareCalculatorService();
+        TariffReloader tariffReloader = null;
+        String tariffFile = DataBaseConfig.getSetting("tariff.file", "");
+        if (!tariffFile.isEmpty()) {
+            tariffReloader = new TariffReloader(fareCalculatorService, Paths.get(tariffFile));
+            tariffReloader.reload();
+            tariffReloader.start(Long.parseLong(DataBaseConfig.getSetting("tariff.reloadSeconds", "30")));
+        }
+        TicketArchiver ticketArchiver = null;
+        if (Boolean.parseBoolean(DataBaseConfig.getSetting("archive.enabled", "false"))) {
+            ticketArchiver = new TicketArchiver(Integer.parseInt(DataBaseConfig.getSetting("archive.batchSize", "500")),
+                    Long.parseLong(DataBaseConfig.getSetting("archive.pauseMs", "200")));
+            ticketArchiver.start(Integer.parseInt(DataBaseConfig.getSetting("archive.horizonDays", "90")),
+                    Long.parseLong(DataBaseConfig.getSetting("archive.intervalMinutes", "60")));
+        }
         ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.setFareCalculatorService(fareCalculatorService);
+        if (ticketDAO.ticketWriteBehind != null) {
+            ticketDAO.ticketWriteBehind.addLostWriteListener(ticketDAO::onLostWrite);
+            ticketDAO.ticketWriteBehind.addLostWriteListener(parkingService::onLostWrite);
+        }
+        ParkingStatistics parkingStatistics = null;
+        if (Boolean.parseBoolean(DataBaseConfig.getSetting("stats.enabled", "false"))) {
+            parkingStatistics = new ParkingStatistics(Integer.parseInt(DataBaseConfig.getSetting("stats.hourlyRetentionHours", "48")),
+                    Integer.parseInt(DataBaseConfig.getSetting("stats.dailyRetentionDays", "90")), ZoneId.systemDefault());
+            parkingStatistics.load();
+            parkingStatistics.start(Long.parseLong(DataBaseConfig.getSetting("stats.flushIntervalSeconds", "60")));
+            parkingService.addParkingEventListener(parkingStatistics);
+        }
+        GateJournal gateJournal = openGateJournal();
+        if (gateJournal != null) {
+            parkingService.setGateJournal(gateJournal);
+            int replayed = parkingService.replayJournal();
+            if (replayed > 0) {
+                logger.info(replayed + " entries and exits replayed from the journal");
+            }
+        }
 
         while (continueApp) {
             loadMenu();
@@ -41,6 +95,41 @@ public class InteractiveShell {
                     System.out.println("Unsupported option. Please enter a number corresponding to the provided menu");
             }
         }
+        if (ticketArchiver != null) {
+            ticketArchiver.stop();
+        }
+        if (tariffReloader != null) {
+            tariffReloader.stop();
+        }
+        if (parkingStatistics != null) {
+            parkingStatistics.stop();
+        }
+        if (ticketDAO.ticketWriteBehind != null) {
+            ticketDAO.ticketWriteBehind.close();
+        }
+        if (gateJournal != null) {
+            try {
+                gateJournal.close();
+            } catch (IOException e) {
+                logger.error("Error closing the gate journal", e);
+            }
+        }
+    }
+
+    /**
+     * @return the journal of the gate events, null if it is disabled or cannot be opened
+     */
+    private static GateJournal openGateJournal() {
+        if (!Boolean.parseBoolean(DataBaseConfig.getSetting("journal.enabled", "false"))) {
+            return null;
+        }
+        try {
+            return GateJournal.open(Paths.get(DataBaseConfig.getSetting("journal.dir", "journal")),
+                    Long.parseLong(DataBaseConfig.getSetting("journal.segmentSize", "67108864")));
+        } catch (IOException e) {
+            logger.error("Unable to open the gate journal, entries and exits are not journaled", e);
+            return null;
+        }
     }
 
     private static void loadMenu() {
@@ -0,0 +1,20 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+/**
+ * Told by ParkingService of every entry and exit applied to the DB, on the thread of the gate: it must return
+ * quickly and never call the DB.
+ */
+public interface ParkingEventListener {
+
+    /**
+     * @param ticket saved ticket of the vehicle entering
+     */
+    void onEntry(Ticket ticket);
+
+    /**
+     * @param ticket closed ticket of the vehicle leaving, with its out-time and fare
+     */
+    void onExit(Ticket ticket);
+}
@@ -3,21 +3,38 @@ package com.parkit.parkingsystem.service;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.JournalReplayer;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.time.Clock;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ParkingService {
-    private double lastCalculatedFare;  //Instance variable to store the last calculated rate
+    private volatile double lastCalculatedFare;  //Instance variable to store the last calculated rate, set from the console only
     private static final Logger logger = LogManager.getLogger("ParkingService");
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private FareCalculatorService fareCalculatorService = new FareCalculatorService();
     private InputReaderUtil inputReaderUtil;
     private ParkingSpotDAO parkingSpotDAO;
     private TicketDAO ticketDAO;
+    private SpotAllocator spotAllocator;
+    private GateJournal gateJournal;
+    private Clock clock = Clock.systemDefaultZone();
+    private final List<ParkingEventListener> parkingEventListeners = new CopyOnWriteArrayList<>();
+    //vehicles whose entry is in the journal only, until their exit is journaled too
+    private final Set<String> journaledEntries = ConcurrentHashMap.newKeySet();
 
     public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO) {
         this.inputReaderUtil = inputReaderUtil;
@@ -26,39 +43,164 @@ public class ParkingService {
     }
 
     /**
-     * method of incoming out of Vehicle
+     * let an in-process allocator hand out the spots instead of claiming them in the DB,
+     * for gates running in the same process
+     * @param spotAllocator
+     */
+    public void setSpotAllocator(SpotAllocator spotAllocator) {
+        this.spotAllocator = spotAllocator;
+    }
+
+    /**
+     * journal every entry and exit before applying it, so that it is replayed if the DB does not get it
+     * @param gateJournal
+     */
+    public void setGateJournal(GateJournal gateJournal) {
+        this.gateJournal = gateJournal;
+    }
+
+    /**
+     * price the exits with this service, e.g. the one whose tariff is reloaded from a file
+     * @param fareCalculatorService
+     */
+    public void setFareCalculatorService(FareCalculatorService fareCalculatorService) {
+        this.fareCalculatorService = fareCalculatorService;
+    }
+
+    /**
+     * read the in-times and out-times from this clock instead of the system one, e.g. a simulated clock
+     * @param clock
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * tell the listener of every entry and exit applied to the DB, replayed ones included
+     * @param parkingEventListener
+     */
+    public void addParkingEventListener(ParkingEventListener parkingEventListener) {
+        parkingEventListeners.add(parkingEventListener);
+    }
+
+    /**
+     * apply the entries and exits of the journal that never reached the DB, called on startup
+     * @return number of entries and exits applied
+     */
+    public int replayJournal() {
+        return gateJournal == null ? 0 : JournalReplayer.replay(gateJournal, this::applyJournalRecord);
+    }
+
+    /**
+     * method of incoming out of Vehicle, read from the console
      */
     public void processIncomingVehicle() {
         try {
-            ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
-            if (parkingSpot != null && parkingSpot.getId() > 0) {
-                String vehicleRegNumber = getVehichleRegNumber();
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-                int countTick = ticketDAO.getNbTicket(vehicleRegNumber);
-                if (countTick >= 1) {
-                    System.out.println("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, " +
-                            "vous allez obtenir une remise de 5%");
-                }
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
-                //ticket.setId(ticketID);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
+            ParkingType parkingType = getVehichleType();
+            String vehicleRegNumber = getVehichleRegNumber();
+            EntryResult result = entry(vehicleRegNumber, parkingType);
+            switch (result.getStatus()) {
+                case ALREADY_PARKED:
+                    System.out.println("Vehicle " + vehicleRegNumber + " is already parked");
+                    return;
+                case NO_SPOT_AVAILABLE:
+                    System.out.println("No parking spot available for this vehicle type");
+                    return;
+                case FAILED:
+                    System.out.println("Unable to save ticket information. Error occurred");
+                    return;
+                default:
+                    break;
+            }
+            if (result.isRecurringUser()) {
+                System.out.println("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, " +
+                        "vous allez obtenir une remise de 5%");
+            }
+            if (result.getStatus() == EntryResult.Status.ENTERED) {
                 System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:" + parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + inTime);
+            } else {
+                System.out.println("Ticket recorded, it will be saved in DB on the next startup");
             }
+            System.out.println("Please park your vehicle in spot number:" + result.getParkingSpot().getId());
+            System.out.println("Recorded in-time for vehicle number:" + vehicleRegNumber + " is:" + result.getTicket().getInTime());
+        } catch (IllegalArgumentException ie) {
+            logger.error("Error parsing user input for type of vehicle", ie);
         } catch (Exception e) {
             logger.error("Unable to process incoming vehicle", e);
         }
     }
 
+    /**
+     * a vehicle enters: the spot is claimed in one atomic step so that two gates never give the same spot,
+     * then its ticket is saved. Nothing is read from or printed to the console.
+     * @param vehicleRegNumber
+     * @param parkingType
+     * @param inTime
+     * @return the spot and ticket of the vehicle, or why it is refused
+     */
+    public EntryResult entry(String vehicleRegNumber, ParkingType parkingType, Date inTime) {
+        checkVehicleRegNumber(vehicleRegNumber);
+        if (parkingType == null) {
+            throw new IllegalArgumentException("Missing vehicle type");
+        }
+        try {
+            if (ticketDAO.isVehicleParked(vehicleRegNumber)) {
+                return EntryResult.refused(EntryResult.Status.ALREADY_PARKED);
+            }
+            //allot this parking space and mark it's availability as false
+            ParkingSpot parkingSpot = spotAllocator != null
+                    ? spotAllocator.allocate(parkingType)
+                    : parkingSpotDAO.claimNextSpot(parkingType);
+            if (parkingSpot == null) {
+                //a full lot is not an error, the gate tells the driver
+                logger.debug("No parking spot available for vehicle " + vehicleRegNumber + " of type " + parkingType);
+                return EntryResult.refused(EntryResult.Status.NO_SPOT_AVAILABLE);
+            }
+            boolean recurringUser = ticketDAO.getNbTicket(vehicleRegNumber) >= 1;
+            Ticket ticket = new Ticket();
+            //ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)
+            ticket.setParkingSpot(parkingSpot);
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(inTime);
+            ticket.setOutTime(null);
+            long journalSequence = appendToJournal(JournalRecord.entry(vehicleRegNumber, parkingSpot, inTime));
+            TicketDAO.SaveStatus saveStatus = ticketDAO.saveTicket(ticket);
+            if (saveStatus == TicketDAO.SaveStatus.SAVED) {
+                acknowledgeInJournal(journalSequence);
+                fireEntry(ticket);
+                return EntryResult.entered(EntryResult.Status.ENTERED, ticket, recurringUser);
+            }
+            if (saveStatus == TicketDAO.SaveStatus.ALREADY_PARKED) {
+                //a concurrent entry of the same vehicle got its ticket first, a replay must not save another one
+                acknowledgeInJournal(journalSequence);
+                releaseSpot(parkingSpot);
+                return EntryResult.refused(EntryResult.Status.ALREADY_PARKED);
+            }
+            if (journalSequence > 0) {
+                //the vehicle enters, the ticket is saved by the replay of the journal
+                journaledEntries.add(vehicleRegNumber);
+                return EntryResult.entered(EntryResult.Status.JOURNALED, ticket, recurringUser);
+            }
+            //the spot is given back, the vehicle gets no ticket
+            releaseSpot(parkingSpot);
+            return EntryResult.refused(EntryResult.Status.FAILED);
+        } catch (Exception e) {
+            logger.error("Unable to process incoming vehicle " + vehicleRegNumber, e);
+            return EntryResult.refused(EntryResult.Status.FAILED);
+        }
+    }
+
+    /**
+     * a vehicle enters now, as told by the clock of the service
+     * @param vehicleRegNumber
+     * @param parkingType
+     * @return the spot and ticket of the vehicle, or why it is refused
+     */
+    public EntryResult entry(String vehicleRegNumber, ParkingType parkingType) {
+        return entry(vehicleRegNumber, parkingType, new Date(clock.millis()));
+    }
+
     private String getVehichleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
         return inputReaderUtil.readVehicleRegistrationNumber();
@@ -111,38 +253,219 @@ public class ParkingService {
     }
 
     /**
-     * method of exiting out of Vehicle
+     * method of exiting out of Vehicle, read from the console
      */
     public void processExitingVehicle() {
-        try{
-        String vehicleRegNumber = getVehichleRegNumber();
-        int countTickets = ticketDAO.getNbTicket(vehicleRegNumber);
-        Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
-            //checks if the user is a recurring
-            boolean discount = countTickets > 1 ;
-            fareCalculatorService.calculateFare(ticket, discount);
-            if (ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
-                // Store price in instance variable
-                lastCalculatedFare = ticket.getPrice();
-                System.out.println("Please pay the parking fare:" + ticket.getPrice());
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
-            } else {
-                System.out.println("Unable to update ticket information. Error occurred");
+        try {
+            String vehicleRegNumber = getVehichleRegNumber();
+            Date outTime = new Date(clock.millis());
+            ExitResult result = exit(vehicleRegNumber, outTime);
+            switch (result.getStatus()) {
+                case EXITED:
+                    // Store price in instance variable
+                    lastCalculatedFare = result.getFare();
+                    System.out.println("Please pay the parking fare:" + result.getFare());
+                    System.out.println("Recorded out-time for vehicle number:" + vehicleRegNumber + " is:" + outTime);
+                    break;
+                case JOURNALED:
+                    System.out.println("Exit recorded, the ticket will be closed in DB on the next startup");
+                    break;
+                default:
+                    System.out.println("Unable to update ticket information. Error occurred");
             }
         } catch (Exception e) {
             logger.error("Unable to process exiting vehicle", e);
         }
     }
 
+    /**
+     * give back the spot of a ticket whose insert the write-behind of the TicketDAO gave up, to be added as one of
+     * its LostWriteListeners; exits do not go through the write-behind
+     * @param ticket
+     * @param insert
+     */
+    public void onLostWrite(Ticket ticket, boolean insert) {
+        if (insert) {
+            logger.error("Ticket of vehicle " + ticket.getVehicleRegNumber() + " lost, spot "
+                    + ticket.getParkingSpot().getId() + " given back");
+            releaseSpot(ticket.getParkingSpot());
+        }
+    }
+
+    private void releaseSpot(ParkingSpot parkingSpot) {
+        if (spotAllocator != null) {
+            spotAllocator.release(parkingSpot);
+        } else {
+            parkingSpot.setAvailable(true);
+            parkingSpotDAO.updateParking(parkingSpot);
+        }
+    }
+
+    /**
+     * a vehicle leaves: its ticket is closed and its spot freed in one transaction. Nothing is read from or
+     * printed to the console.
+     * @param vehicleRegNumber
+     * @param outTime
+     * @return the closed ticket and its fare, or why it is not closed
+     */
+    public ExitResult exit(String vehicleRegNumber, Date outTime) {
+        checkVehicleRegNumber(vehicleRegNumber);
+        try {
+            long journalSequence = appendToJournal(JournalRecord.exit(vehicleRegNumber, outTime));
+            Ticket ticket = closeTicket(vehicleRegNumber, outTime);
+            if (ticket != null) {
+                acknowledgeInJournal(journalSequence);
+                fireExit(ticket);
+                return ExitResult.exited(ticket);
+            }
+            if (journalSequence > 0 && !isConfirmedNotParked(vehicleRegNumber)) {
+                //the ticket is closed by the replay of the journal, with this out-time
+                journaledEntries.remove(vehicleRegNumber);
+                return ExitResult.refused(ExitResult.Status.JOURNALED);
+            }
+            acknowledgeInJournal(journalSequence);
+            return ExitResult.refused(ExitResult.Status.NOT_CLOSED);
+        } catch (Exception e) {
+            logger.error("Unable to process exiting vehicle " + vehicleRegNumber, e);
+            return ExitResult.refused(ExitResult.Status.NOT_CLOSED);
+        }
+    }
+
+    /**
+     * a vehicle leaves now, as told by the clock of the service
+     * @param vehicleRegNumber
+     * @return the closed ticket and its fare, or why it is not closed
+     */
+    public ExitResult exit(String vehicleRegNumber) {
+        return exit(vehicleRegNumber, new Date(clock.millis()));
+    }
+
+    /**
+     * @return true only when the DB answers that the vehicle has no open ticket and no entry of the vehicle waits
+     * in the journal, the exit record can then be dropped
+     */
+    private boolean isConfirmedNotParked(String vehicleRegNumber) {
+        if (journaledEntries.contains(vehicleRegNumber)) {
+            return false;
+        }
+        try {
+            return !ticketDAO.hasOpenTicket(vehicleRegNumber);
+        } catch (Exception e) {
+            logger.error("Unable to check the open ticket of vehicle " + vehicleRegNumber + ", the exit is kept in the journal", e);
+            return false;
+        }
+    }
+
+    private static void checkVehicleRegNumber(String vehicleRegNumber) {
+        if (vehicleRegNumber == null || vehicleRegNumber.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid vehicle registration number");
+        }
+    }
+
+    private long appendToJournal(JournalRecord record) {
+        if (gateJournal == null) {
+            return 0;
+        }
+        try {
+            return gateJournal.append(record);
+        } catch (IOException e) {
+            logger.error("Unable to journal " + record.getType() + " of vehicle " + record.getVehicleRegNumber(), e);
+            return 0;
+        }
+    }
+
+    private void acknowledgeInJournal(long journalSequence) {
+        if (journalSequence > 0) {
+            gateJournal.acknowledge(journalSequence);
+        }
+    }
+
+    /**
+     * apply one entry or exit of the journal; it is skipped when the DB shows it was already applied
+     * @param record
+     * @return false if it cannot be applied now
+     */
+    private boolean applyJournalRecord(JournalRecord record) {
+        String vehicleRegNumber = record.getVehicleRegNumber();
+        Ticket lastTicket = ticketDAO.getLastTicket(vehicleRegNumber);
+        if (record.getType() == JournalRecord.Type.ENTRY) {
+            //still parked, or saved already (DATETIME columns may drop the milliseconds)
+            if (lastTicket != null && (lastTicket.getOutTime() == null
+                    || lastTicket.getInTime().getTime() >= record.getTime().getTime() - 1000)) {
+                return true;
+            }
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(record.getParkingSpot());
+            ticket.setVehicleRegNumber(vehicleRegNumber);
+            ticket.setPrice(0);
+            ticket.setInTime(record.getTime());
+            ticket.setOutTime(null);
+            TicketDAO.SaveStatus saveStatus = ticketDAO.saveTicket(ticket);
+            if (saveStatus == TicketDAO.SaveStatus.ALREADY_PARKED) {
+                //the vehicle has an open ticket already
+                return true;
+            }
+            if (saveStatus != TicketDAO.SaveStatus.SAVED) {
+                return false;
+            }
+            parkingSpotDAO.updateParking(record.getParkingSpot());
+            fireEntry(ticket);
+            return true;
+        }
+        if (lastTicket == null) {
+            return false;
+        }
+        if (lastTicket.getOutTime() != null || lastTicket.getInTime().after(record.getTime())) {
+            //closed already, or a later visit
+            return true;
+        }
+        Ticket ticket = closeTicket(vehicleRegNumber, record.getTime());
+        if (ticket == null) {
+            return false;
+        }
+        fireExit(ticket);
+        return true;
+    }
+
+    /**
+     * close the ticket with the fare of this service; the allocator, when there is one, saves the freed spot
+     */
+    private Ticket closeTicket(String vehicleRegNumber, Date outTime) {
+        Ticket ticket = ticketDAO.closeTicket(vehicleRegNumber, outTime, fareCalculatorService, spotAllocator == null);
+        if (ticket != null) {
+            if (spotAllocator != null) {
+                spotAllocator.release(ticket.getParkingSpot());
+            } else {
+                parkingSpotDAO.onParkingUpdated(ticket.getParkingSpot());
+            }
+        }
+        return ticket;
+    }
+
+    private void fireEntry(Ticket ticket) {
+        for (ParkingEventListener parkingEventListener : parkingEventListeners) {
+            try {
+                parkingEventListener.onEntry(ticket);
+            } catch (RuntimeException e) {
+                logger.error("Error in parking event listener on entry of vehicle " + ticket.getVehicleRegNumber(), e);
+            }
+        }
+    }
+
+    private void fireExit(Ticket ticket) {
+        for (ParkingEventListener parkingEventListener : parkingEventListeners) {
+            try {
+                parkingEventListener.onExit(ticket);
+            } catch (RuntimeException e) {
+                logger.error("Error in parking event listener on exit of vehicle " + ticket.getVehicleRegNumber(), e);
+            }
+        }
+    }
+
     /**
      *
      * method for calculating the price of a ticket after leaving the parking lot
-     * @return price of a ticket
+     * @return price of the last ticket closed from the console, the fare of exit is given by its ExitResult
      */
     public double someOtherMethod() {
         return lastCalculatedFare;
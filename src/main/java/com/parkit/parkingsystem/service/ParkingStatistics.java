@@ -0,0 +1,366 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SummaryPeriod;
+import com.parkit.parkingsystem.dao.ParkingSummaryDAO;
+import com.parkit.parkingsystem.model.ParkingSummary;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hourly and daily revenue, entries, exits and stays by type of spot, kept up to date in memory from the entries and
+ * exits of ParkingService, so that a dashboard reads them without querying the ticket table.
+ * <p>
+ * Each bucket holds its totals and the increments not saved yet. flush adds the increments to parking_summary, so
+ * several processes can share the table; load reads back the buckets of the retention window on startup. Buckets
+ * older than the retention window are dropped from memory once saved, they stay in parking_summary.
+ */
+public class ParkingStatistics implements ParkingEventListener {
+
+    private static final Logger logger = LogManager.getLogger("ParkingStatistics");
+    //counters of a bucket, in the order of ParkingSummaryDAO
+    private static final int ENTRIES = 0;
+    private static final int EXITS = 1;
+    private static final int REVENUE_CENTS = 2;
+    private static final int STAY_MINUTES = 3;
+    private static final int STAYS = 4;
+    private static final int COUNTERS = STAYS + ParkingSummary.STAY_LIMITS_MINUTES.length + 1;
+
+    public ParkingSummaryDAO parkingSummaryDAO = new ParkingSummaryDAO();
+    private final int hourlyRetentionHours;
+    private final int dailyRetentionDays;
+    private final ZoneId zone;
+    private final Clock clock;
+    //buckets by start of period in epoch millis
+    private final Map<SummaryPeriod, Map<ParkingType, ConcurrentSkipListMap<Long, Bucket>>> buckets = new EnumMap<>(SummaryPeriod.class);
+    private final Map<ParkingType, AtomicLong> occupancy = new EnumMap<>(ParkingType.class);
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param hourlyRetentionHours hours of hourly buckets kept in memory
+     * @param dailyRetentionDays   days of daily buckets kept in memory
+     * @param zone                 time zone of the hours and days
+     */
+    public ParkingStatistics(int hourlyRetentionHours, int dailyRetentionDays, ZoneId zone) {
+        this(hourlyRetentionHours, dailyRetentionDays, Clock.system(zone));
+    }
+
+    /**
+     * @param hourlyRetentionHours hours of hourly buckets kept in memory
+     * @param dailyRetentionDays   days of daily buckets kept in memory
+     * @param clock                time of the retention window, its zone is the one of the hours and days
+     */
+    public ParkingStatistics(int hourlyRetentionHours, int dailyRetentionDays, Clock clock) {
+        this.hourlyRetentionHours = hourlyRetentionHours;
+        this.dailyRetentionDays = dailyRetentionDays;
+        this.zone = clock.getZone();
+        this.clock = clock;
+        for (SummaryPeriod period : SummaryPeriod.values()) {
+            Map<ParkingType, ConcurrentSkipListMap<Long, Bucket>> byType = new EnumMap<>(ParkingType.class);
+            for (ParkingType parkingType : ParkingType.values()) {
+                byType.put(parkingType, new ConcurrentSkipListMap<>());
+            }
+            buckets.put(period, byType);
+        }
+        for (ParkingType parkingType : ParkingType.values()) {
+            occupancy.put(parkingType, new AtomicLong());
+        }
+    }
+
+    /**
+     * read back the saved buckets of the retention window and the number of vehicles parked, before the gates open
+     */
+    public void load() {
+        long now = clock.millis();
+        for (SummaryPeriod period : SummaryPeriod.values()) {
+            for (ParkingSummary summary : parkingSummaryDAO.getSummariesSince(period, new Date(retentionStart(period, now)))) {
+                Bucket bucket = new Bucket();
+                bucket.addTotals(toCounters(summary));
+                buckets.get(period).get(summary.getParkingType()).put(summary.getPeriodStart().getTime(), bucket);
+            }
+        }
+        for (Map.Entry<ParkingType, Integer> parked : parkingSummaryDAO.getOccupancy().entrySet()) {
+            occupancy.get(parked.getKey()).set(parked.getValue());
+        }
+    }
+
+    @Override
+    public void onEntry(Ticket ticket) {
+        ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+        long[] increments = new long[COUNTERS];
+        increments[ENTRIES] = 1;
+        for (SummaryPeriod period : SummaryPeriod.values()) {
+            add(period, parkingType, ticket.getInTime().getTime(), increments);
+        }
+        occupancy.get(parkingType).incrementAndGet();
+    }
+
+    @Override
+    public void onExit(Ticket ticket) {
+        ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+        long outTime = ticket.getOutTime().getTime();
+        long stayMinutes = Math.max(0, (outTime - ticket.getInTime().getTime()) / 60_000);
+        int stay = 0;
+        while (stay < ParkingSummary.STAY_LIMITS_MINUTES.length && stayMinutes >= ParkingSummary.STAY_LIMITS_MINUTES[stay]) {
+            stay++;
+        }
+        long[] increments = new long[COUNTERS];
+        increments[EXITS] = 1;
+        increments[REVENUE_CENTS] = Math.round(ticket.getPrice() * 100);
+        increments[STAY_MINUTES] = stayMinutes;
+        increments[STAYS + stay] = 1;
+        for (SummaryPeriod period : SummaryPeriod.values()) {
+            add(period, parkingType, outTime, increments);
+        }
+        occupancy.get(parkingType).updateAndGet(parked -> Math.max(0, parked - 1));
+    }
+
+    /**
+     * @param period
+     * @param parkingType
+     * @param time        any time of the period
+     * @return totals of the period, all 0 when nothing happened in it or it is out of the retention window
+     */
+    public ParkingSummary getSummary(SummaryPeriod period, ParkingType parkingType, Date time) {
+        long start = periodStart(period, time.getTime());
+        Bucket bucket = buckets.get(period).get(parkingType).get(start);
+        return toSummary(period, parkingType, start, bucket == null ? new long[COUNTERS] : bucket.getTotals());
+    }
+
+    /**
+     * @param period
+     * @param parkingType
+     * @param from        inclusive
+     * @param to          exclusive
+     * @return totals of the periods starting in [from, to) where something happened, in time order
+     */
+    public List<ParkingSummary> getSummaries(SummaryPeriod period, ParkingType parkingType, Date from, Date to) {
+        List<ParkingSummary> summaries = new ArrayList<>();
+        ConcurrentNavigableMap<Long, Bucket> range = buckets.get(period).get(parkingType)
+                .subMap(periodStart(period, from.getTime()), true, to.getTime(), false);
+        for (Map.Entry<Long, Bucket> bucket : range.entrySet()) {
+            summaries.add(toSummary(period, parkingType, bucket.getKey(), bucket.getValue().getTotals()));
+        }
+        return summaries;
+    }
+
+    /**
+     * @param parkingType
+     * @return number of vehicles parked on this type of spot
+     */
+    public long getOccupancy(ParkingType parkingType) {
+        return occupancy.get(parkingType).get();
+    }
+
+    /**
+     * add the increments of every bucket to parking_summary; they are kept for the next flush if the DB fails
+     *
+     * @return false if the increments could not be saved
+     */
+    public synchronized boolean flush() {
+        List<ParkingSummary> increments = new ArrayList<>();
+        List<Bucket> flushed = new ArrayList<>();
+        for (SummaryPeriod period : SummaryPeriod.values()) {
+            for (ParkingType parkingType : ParkingType.values()) {
+                for (Map.Entry<Long, Bucket> bucket : buckets.get(period).get(parkingType).entrySet()) {
+                    long[] pending = bucket.getValue().takePending();
+                    if (pending != null) {
+                        increments.add(toSummary(period, parkingType, bucket.getKey(), pending));
+                        flushed.add(bucket.getValue());
+                    }
+                }
+            }
+        }
+        boolean saved = increments.isEmpty() || parkingSummaryDAO.addToSummaries(increments);
+        if (!saved) {
+            for (int i = 0; i < flushed.size(); i++) {
+                flushed.get(i).restorePending(toCounters(increments.get(i)));
+            }
+            logger.error("Unable to save " + increments.size() + " parking summaries, kept for the next flush");
+        }
+        evictOldBuckets();
+        return saved;
+    }
+
+    /**
+     * flush in the background every interval
+     *
+     * @param flushIntervalSeconds
+     */
+    public synchronized void start(long flushIntervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parking-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stop the background flush and save the last increments
+     */
+    public void stop() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            stopped = scheduler;
+            scheduler = null;
+        }
+        if (stopped != null) {
+            stopped.shutdown();
+            try {
+                stopped.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private void add(SummaryPeriod period, ParkingType parkingType, long time, long[] increments) {
+        ConcurrentSkipListMap<Long, Bucket> byStart = buckets.get(period).get(parkingType);
+        long start = periodStart(period, time);
+        //a bucket dropped meanwhile takes no more increments, a new one is created
+        while (!byStart.computeIfAbsent(start, key -> new Bucket()).add(increments)) {
+            Thread.yield();
+        }
+    }
+
+    private void evictOldBuckets() {
+        long now = clock.millis();
+        for (SummaryPeriod period : SummaryPeriod.values()) {
+            long oldest = retentionStart(period, now);
+            for (ConcurrentSkipListMap<Long, Bucket> byStart : buckets.get(period).values()) {
+                for (Map.Entry<Long, Bucket> bucket : byStart.headMap(oldest).entrySet()) {
+                    if (bucket.getValue().evict()) {
+                        byStart.remove(bucket.getKey(), bucket.getValue());
+                    }
+                }
+            }
+        }
+    }
+
+    private long retentionStart(SummaryPeriod period, long now) {
+        return period == SummaryPeriod.HOUR
+                ? periodStart(period, now - TimeUnit.HOURS.toMillis(hourlyRetentionHours))
+                : periodStart(period, now - TimeUnit.DAYS.toMillis(dailyRetentionDays));
+    }
+
+    private long periodStart(SummaryPeriod period, long time) {
+        if (period == SummaryPeriod.HOUR) {
+            return Instant.ofEpochMilli(time).atZone(zone).truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+        }
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static ParkingSummary toSummary(SummaryPeriod period, ParkingType parkingType, long start, long[] counters) {
+        ParkingSummary summary = new ParkingSummary();
+        summary.setPeriod(period);
+        summary.setPeriodStart(new Date(start));
+        summary.setParkingType(parkingType);
+        summary.setEntries(counters[ENTRIES]);
+        summary.setExits(counters[EXITS]);
+        summary.setRevenueCents(counters[REVENUE_CENTS]);
+        summary.setStayMinutes(counters[STAY_MINUTES]);
+        long[] stays = new long[COUNTERS - STAYS];
+        System.arraycopy(counters, STAYS, stays, 0, stays.length);
+        summary.setStays(stays);
+        return summary;
+    }
+
+    private static long[] toCounters(ParkingSummary summary) {
+        long[] counters = new long[COUNTERS];
+        counters[ENTRIES] = summary.getEntries();
+        counters[EXITS] = summary.getExits();
+        counters[REVENUE_CENTS] = summary.getRevenueCents();
+        counters[STAY_MINUTES] = summary.getStayMinutes();
+        System.arraycopy(summary.getStays(), 0, counters, STAYS, summary.getStays().length);
+        return counters;
+    }
+
+    /**
+     * counters of one period and type, their totals and the part not saved yet
+     */
+    private static final class Bucket {
+        private final long[] totals = new long[COUNTERS];
+        private final long[] pending = new long[COUNTERS];
+        private boolean dirty;
+        private boolean evicted;
+
+        /**
+         * @return false if the bucket was dropped
+         */
+        synchronized boolean add(long[] increments) {
+            if (evicted) {
+                return false;
+            }
+            for (int i = 0; i < COUNTERS; i++) {
+                totals[i] += increments[i];
+                pending[i] += increments[i];
+            }
+            dirty = true;
+            return true;
+        }
+
+        /**
+         * @param saved counters read back from parking_summary
+         */
+        synchronized void addTotals(long[] saved) {
+            for (int i = 0; i < COUNTERS; i++) {
+                totals[i] += saved[i];
+            }
+        }
+
+        synchronized long[] getTotals() {
+            return totals.clone();
+        }
+
+        /**
+         * @return increments since the last call, null if there is none
+         */
+        synchronized long[] takePending() {
+            if (!dirty) {
+                return null;
+            }
+            long[] taken = pending.clone();
+            Arrays.fill(pending, 0);
+            dirty = false;
+            return taken;
+        }
+
+        synchronized void restorePending(long[] increments) {
+            for (int i = 0; i < COUNTERS; i++) {
+                pending[i] += increments[i];
+            }
+            dirty = true;
+        }
+
+        /**
+         * @return true if the bucket is saved and takes no more increments
+         */
+        synchronized boolean evict() {
+            evicted = !dirty;
+            return evicted;
+        }
+    }
+}
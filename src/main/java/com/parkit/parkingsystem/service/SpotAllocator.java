@@ -0,0 +1,229 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free allocation of parking spots for gates sharing one process.
+ * The spots of each type are split in stripes of consecutive spot numbers, each stripe being a bitmap of free
+ * spots updated with compare-and-set. A gate thread starts its search in its own stripe, so gates rarely
+ * touch the same bitmap word. The allocator is the owner of the availability of the spots: every change only
+ * marks the spot as dirty, and a background writer saves the current availability of the dirty spots through
+ * ParkingSpotDAO.updateParking a few milliseconds later, so a spot taken and given back meanwhile costs one write.
+ */
+public class SpotAllocator {
+
+    private static final Logger logger = LogManager.getLogger("SpotAllocator");
+    private static final int STRIPE_SIZE = 256;
+    private static final long PERSISTENCE_DELAY_MS = 20;
+
+    private final Map<ParkingType, Stripe[]> stripesByType = new EnumMap<>(ParkingType.class);
+    private final Map<Integer, Slot> slots = new HashMap<>();
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final ScheduledExecutorService persistence;
+
+    public SpotAllocator(Collection<ParkingSpot> parkingSpots, ParkingSpotDAO parkingSpotDAO) {
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.persistence = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spot-allocator-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (ParkingType parkingType : ParkingType.values()) {
+            List<ParkingSpot> spotsOfType = new ArrayList<>();
+            for (ParkingSpot parkingSpot : parkingSpots) {
+                if (parkingSpot.getParkingType() == parkingType) {
+                    spotsOfType.add(parkingSpot);
+                }
+            }
+            spotsOfType.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            Stripe[] stripes = new Stripe[(spotsOfType.size() + STRIPE_SIZE - 1) / STRIPE_SIZE];
+            for (int s = 0; s < stripes.length; s++) {
+                List<ParkingSpot> range = spotsOfType.subList(s * STRIPE_SIZE, Math.min(spotsOfType.size(), (s + 1) * STRIPE_SIZE));
+                stripes[s] = new Stripe(parkingType, range);
+                for (int bit = 0; bit < range.size(); bit++) {
+                    slots.put(range.get(bit).getId(), new Slot(stripes[s], bit));
+                }
+            }
+            stripesByType.put(parkingType, stripes);
+        }
+        persistence.scheduleWithFixedDelay(this::persistDirtySpots, PERSISTENCE_DELAY_MS, PERSISTENCE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param parkingSpotDAO
+     * @return an allocator holding the current availability of the parking table
+     */
+    public static SpotAllocator load(ParkingSpotDAO parkingSpotDAO) {
+        return new SpotAllocator(parkingSpotDAO.getParkingSpots(), parkingSpotDAO);
+    }
+
+    /**
+     * take a free spot, never blocks
+     *
+     * @param parkingType
+     * @return the spot, now not available, or null if every spot of this type is taken
+     */
+    public ParkingSpot allocate(ParkingType parkingType) {
+        Stripe[] stripes = stripesByType.get(parkingType);
+        if (stripes.length == 0) {
+            return null;
+        }
+        int start = (int) (Thread.currentThread().getId() % stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            int parkingNumber = stripes[(start + i) % stripes.length].take();
+            if (parkingNumber > 0) {
+                return new ParkingSpot(parkingNumber, parkingType, false);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * give a spot back when the vehicle leaves
+     *
+     * @param parkingSpot
+     * @return false if the spot is unknown or was not taken
+     */
+    public boolean release(ParkingSpot parkingSpot) {
+        Slot slot = slots.get(parkingSpot.getId());
+        if (slot == null || !slot.stripe.give(slot.bit)) {
+            return false;
+        }
+        parkingSpot.setAvailable(true);
+        return true;
+    }
+
+    public int countAvailable(ParkingType parkingType) {
+        int count = 0;
+        for (Stripe stripe : stripesByType.get(parkingType)) {
+            count += stripe.countFree();
+        }
+        return count;
+    }
+
+    /**
+     * save the pending updates of the parking table and stop the background writer
+     */
+    public void close() throws InterruptedException {
+        persistence.shutdown();
+        if (!persistence.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.error("Parking spot updates still pending after 30 seconds");
+        }
+        persistDirtySpots();
+    }
+
+    private synchronized void persistDirtySpots() {
+        for (Stripe[] stripes : stripesByType.values()) {
+            for (Stripe stripe : stripes) {
+                stripe.persistDirty(parkingSpotDAO);
+            }
+        }
+    }
+
+    private static final class Slot {
+        private final Stripe stripe;
+        private final int bit;
+
+        private Slot(Stripe stripe, int bit) {
+            this.stripe = stripe;
+            this.bit = bit;
+        }
+    }
+
+    /**
+     * consecutive spots of one type; bit i of the free bitmap is set while spot numbers[i] is free,
+     * and bit i of the dirty bitmap while its availability is not saved yet
+     */
+    private static final class Stripe {
+        private final ParkingType parkingType;
+        private final int[] numbers;
+        private final AtomicLongArray free;
+        private final AtomicLongArray dirty;
+
+        private Stripe(ParkingType parkingType, List<ParkingSpot> parkingSpots) {
+            this.parkingType = parkingType;
+            numbers = new int[parkingSpots.size()];
+            free = new AtomicLongArray((parkingSpots.size() + 63) / 64);
+            dirty = new AtomicLongArray(free.length());
+            for (int bit = 0; bit < numbers.length; bit++) {
+                numbers[bit] = parkingSpots.get(bit).getId();
+                if (parkingSpots.get(bit).isAvailable()) {
+                    free.set(bit / 64, free.get(bit / 64) | (1L << (bit % 64)));
+                }
+            }
+        }
+
+        private int take() {
+            for (int word = 0; word < free.length(); word++) {
+                long bits = free.get(word);
+                while (bits != 0) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    if (free.compareAndSet(word, bits, bits & ~(1L << bit))) {
+                        markDirty(word, 1L << bit);
+                        return numbers[word * 64 + bit];
+                    }
+                    bits = free.get(word);
+                }
+            }
+            return -1;
+        }
+
+        private boolean give(int bit) {
+            int word = bit / 64;
+            long mask = 1L << (bit % 64);
+            long bits;
+            do {
+                bits = free.get(word);
+                if ((bits & mask) != 0) {
+                    return false;
+                }
+            } while (!free.compareAndSet(word, bits, bits | mask));
+            markDirty(word, mask);
+            return true;
+        }
+
+        private void markDirty(int word, long mask) {
+            dirty.getAndAccumulate(word, mask, (bits, added) -> bits | added);
+        }
+
+        private void persistDirty(ParkingSpotDAO parkingSpotDAO) {
+            for (int word = 0; word < dirty.length(); word++) {
+                long bits = dirty.getAndSet(word, 0);
+                while (bits != 0) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    long mask = 1L << bit;
+                    boolean available = (free.get(word) & mask) != 0;
+                    if (!parkingSpotDAO.updateParking(new ParkingSpot(numbers[word * 64 + bit], parkingType, available))) {
+                        logger.error("Unable to save availability of parking spot " + numbers[word * 64 + bit]);
+                        //tried again on the next run
+                        markDirty(word, mask);
+                    }
+                }
+            }
+        }
+
+        private int countFree() {
+            int count = 0;
+            for (int word = 0; word < free.length(); word++) {
+                count += Long.bitCount(free.get(word));
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Immutable tariff, compiled from a tariff file (see resources/tariff.properties) into lookup tables:
+ * <ul>
+ * <li>grace period: stays shorter than it are free, longer ones are paid from the entry</li>
+ * <li>time-of-day bands: rate per hour of each type of spot from a time of day to the next band</li>
+ * <li>tiers: percentage of the band rate paid after some hours of stay</li>
+ * <li>daily cap: maximum price of each 24 hours of stay</li>
+ * <li>discount of the recurring users</li>
+ * </ul>
+ * The rates of each minute of the day are summed into a prefix table, so the price of any part of a stay is two
+ * lookups. A price costs a few lookups per tier, whatever the length of the stay, and allocates nothing when the time
+ * zone has a fixed offset. A new tariff is swapped in whole, see FareCalculatorService.setTariff.
+ */
+public final class Tariff {
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    //amounts are summed in cents per hour times milliseconds times tier percent
+    private static final long UNITS_PER_CENT = MILLIS_PER_HOUR * 100;
+    //time of day in band keys, without ':' which ends a key in a properties file
+    private static final DateTimeFormatter BAND_START = DateTimeFormatter.ofPattern("HHmm");
+
+    private final long graceMillis;
+    private final long paidPercentWithDiscount;
+    private final ZoneId zone;
+    //offset of the time zone when it never changes, so the local time costs no allocation
+    private final boolean fixedOffset;
+    private final long offsetMillis;
+    //by ParkingType ordinal, null for a type without tariff
+    private final TypeTariff[] typeTariffs;
+
+    private Tariff(long graceMillis, long discountPercent, ZoneId zone, TypeTariff[] typeTariffs) {
+        this.graceMillis = graceMillis;
+        this.paidPercentWithDiscount = 100 - discountPercent;
+        this.zone = zone;
+        this.fixedOffset = zone.getRules().isFixedOffset();
+        this.offsetMillis = fixedOffset ? zone.getRules().getOffset(Instant.EPOCH).getTotalSeconds() * 1000L : 0;
+        this.typeTariffs = typeTariffs;
+    }
+
+    /**
+     * @return the historical tariff: rates of Fare all day long, 30 minutes free, 5% discount
+     */
+    public static Tariff standard() {
+        TypeTariff[] typeTariffs = new TypeTariff[ParkingType.values().length];
+        typeTariffs[ParkingType.CAR.ordinal()] = new TypeTariff(flatRate(Fare.CAR_RATE_PER_HOUR_CENTS), new long[]{0}, new long[]{100}, 0);
+        typeTariffs[ParkingType.BIKE.ordinal()] = new TypeTariff(flatRate(Fare.BIKE_RATE_PER_HOUR_CENTS), new long[]{0}, new long[]{100}, 0);
+        return new Tariff(30 * MILLIS_PER_MINUTE, 5, ZoneOffset.UTC, typeTariffs);
+    }
+
+    /**
+     * @param file tariff file
+     * @return the compiled tariff
+     * @throws IllegalArgumentException if the file is not a valid tariff
+     */
+    public static Tariff load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return parse(properties);
+    }
+
+    /**
+     * @param properties content of a tariff file
+     * @return the compiled tariff
+     * @throws IllegalArgumentException if the properties are not a valid tariff
+     */
+    public static Tariff parse(Properties properties) {
+        long graceMinutes = parseLong(properties, "grace.minutes", "30");
+        long discountPercent = parseLong(properties, "discount.percent", "5");
+        if (graceMinutes < 0 || discountPercent < 0 || discountPercent > 100) {
+            throw new IllegalArgumentException("Invalid grace period or discount of the tariff");
+        }
+        String zoneId = properties.getProperty("zone", "").trim();
+        ZoneId zone = zoneId.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zoneId);
+        TypeTariff[] typeTariffs = new TypeTariff[ParkingType.values().length];
+        for (ParkingType parkingType : ParkingType.values()) {
+            String prefix = parkingType.name() + ".";
+            TreeMap<Integer, Long> bands = new TreeMap<>();
+            TreeMap<Long, Long> tiers = new TreeMap<>();
+            tiers.put(0L, 100L);
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(prefix + "band.")) {
+                    LocalTime start;
+                    try {
+                        start = LocalTime.parse(key.substring(prefix.length() + 5), BAND_START);
+                    } catch (DateTimeParseException e) {
+                        throw new IllegalArgumentException("Invalid time of day in tariff key " + key, e);
+                    }
+                    bands.put(start.getHour() * 60 + start.getMinute(), parseLong(properties, key, null));
+                } else if (key.startsWith(prefix + "tier.")) {
+                    long hours;
+                    try {
+                        hours = Long.parseLong(key.substring(prefix.length() + 5));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid hours in tariff key " + key, e);
+                    }
+                    tiers.put(hours * MILLIS_PER_HOUR, parseLong(properties, key, null));
+                }
+            }
+            if (bands.isEmpty()) {
+                continue;
+            }
+            long[] rates = new long[MINUTES_PER_DAY];
+            for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                //before the first band of the day, the last band of the previous day goes on
+                Map.Entry<Integer, Long> band = bands.floorEntry(minute);
+                rates[minute] = (band != null ? band : bands.lastEntry()).getValue();
+            }
+            long[] tierStarts = new long[tiers.size()];
+            long[] tierPercents = new long[tiers.size()];
+            int i = 0;
+            for (Map.Entry<Long, Long> tier : tiers.entrySet()) {
+                tierStarts[i] = tier.getKey();
+                tierPercents[i] = tier.getValue();
+                i++;
+            }
+            long dailyCap = parseLong(properties, prefix + "dailyCap", "0");
+            for (long value : rates) {
+                checkNotNegative(value, parkingType);
+            }
+            for (long value : tierPercents) {
+                checkNotNegative(value, parkingType);
+            }
+            checkNotNegative(dailyCap, parkingType);
+            typeTariffs[parkingType.ordinal()] = new TypeTariff(rates, tierStarts, tierPercents, dailyCap);
+        }
+        return new Tariff(graceMinutes * MILLIS_PER_MINUTE, discountPercent, zone, typeTariffs);
+    }
+
+    /**
+     * @param inTime             epoch millis
+     * @param outTime            epoch millis
+     * @param parkingTypeOrdinal ordinal of the ParkingType of the spot
+     * @param discount           recurring user
+     * @return price in cents, rounded half up once
+     */
+    public long calculateFareCents(long inTime, long outTime, int parkingTypeOrdinal, boolean discount) {
+        if (outTime < inTime) {
+            throw new IllegalArgumentException("Out time provided is incorrect:" + outTime);
+        }
+        if (parkingTypeOrdinal < 0 || parkingTypeOrdinal >= typeTariffs.length || typeTariffs[parkingTypeOrdinal] == null) {
+            throw new IllegalArgumentException("Unkown Parking Type");
+        }
+        long stay = outTime - inTime;
+        //a price of 0 if the duration in the car park is less than the grace period
+        if (stay < graceMillis) {
+            return 0;
+        }
+        long units = typeTariffs[parkingTypeOrdinal].price(inTime + offsetMillis(inTime), stay);
+        long paidPercent = discount ? paidPercentWithDiscount : 100;
+        long divisor = UNITS_PER_CENT * 100;
+        return units / divisor * paidPercent + (units % divisor * paidPercent + divisor / 2) / divisor;
+    }
+
+    /**
+     * @return time zone of the bands
+     */
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    private long offsetMillis(long time) {
+        if (fixedOffset) {
+            return offsetMillis;
+        }
+        return zone.getRules().getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+    }
+
+    private static long[] flatRate(long ratePerHourCents) {
+        long[] rates = new long[MINUTES_PER_DAY];
+        Arrays.fill(rates, ratePerHourCents);
+        return rates;
+    }
+
+    private static long parseLong(Properties properties, String key, String defaultValue) {
+        String value = properties.getProperty(key, defaultValue);
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid tariff value " + key + "=" + value, e);
+        }
+    }
+
+    private static void checkNotNegative(long value, ParkingType parkingType) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative rate, tier or cap in the tariff of " + parkingType);
+        }
+    }
+
+    /**
+     * lookup tables of one type of spot
+     */
+    private static final class TypeTariff {
+        //rate per hour in cents of each minute of the day
+        private final long[] rates;
+        //cost from midnight to the start of each minute, in cents per hour times milliseconds
+        private final long[] prefix;
+        private final long[] tierStarts;
+        private final long[] tierPercents;
+        private final long dailyCapUnits;
+        //cost of any 24 hours past the last tier, capped
+        private final long fullDayUnits;
+
+        private TypeTariff(long[] rates, long[] tierStarts, long[] tierPercents, long dailyCapCents) {
+            this.rates = rates;
+            this.prefix = new long[MINUTES_PER_DAY + 1];
+            for (int minute = 0; minute < MINUTES_PER_DAY; minute++) {
+                prefix[minute + 1] = prefix[minute] + rates[minute] * MILLIS_PER_MINUTE;
+            }
+            this.tierStarts = tierStarts;
+            this.tierPercents = tierPercents;
+            this.dailyCapUnits = Math.multiplyExact(dailyCapCents, UNITS_PER_CENT);
+            this.fullDayUnits = cap(prefix[MINUTES_PER_DAY] * tierPercents[tierPercents.length - 1]);
+        }
+
+        /**
+         * @param localIn local time of the entry, in millis since the epoch
+         * @param stay    millis
+         * @return price in cents per hour times milliseconds times percent
+         */
+        private long price(long localIn, long stay) {
+            long lastTierStart = tierStarts[tierStarts.length - 1];
+            long units = 0;
+            long day = 0;
+            //days of stay holding a change of tier, each one priced and capped
+            while (day < stay) {
+                long dayEnd = Math.min(day + MILLIS_PER_DAY, stay);
+                if (day >= lastTierStart && dayEnd - day == MILLIS_PER_DAY) {
+                    break;
+                }
+                units += cap(tieredCost(localIn, day, dayEnd));
+                day = dayEnd;
+            }
+            //then every full day costs the same
+            long fullDays = (stay - day) / MILLIS_PER_DAY;
+            units = Math.addExact(units, Math.multiplyExact(fullDays, fullDayUnits));
+            day += fullDays * MILLIS_PER_DAY;
+            if (day < stay) {
+                units += cap(tieredCost(localIn, day, stay));
+            }
+            return units;
+        }
+
+        /**
+         * @return cost of [from, to) millis after the entry, at the percentages of the tiers
+         */
+        private long tieredCost(long localIn, long from, long to) {
+            long units = 0;
+            for (int tier = 0; tier < tierStarts.length; tier++) {
+                long start = Math.max(from, tierStarts[tier]);
+                long end = tier + 1 < tierStarts.length ? Math.min(to, tierStarts[tier + 1]) : to;
+                if (start < end) {
+                    units += (costTo(localIn + end) - costTo(localIn + start)) * tierPercents[tier];
+                }
+            }
+            return units;
+        }
+
+        /**
+         * @return cost from the epoch to a local time, in cents per hour times milliseconds
+         */
+        private long costTo(long localTime) {
+            long days = Math.floorDiv(localTime, MILLIS_PER_DAY);
+            long millisOfDay = localTime - days * MILLIS_PER_DAY;
+            int minute = (int) (millisOfDay / MILLIS_PER_MINUTE);
+            return days * prefix[MINUTES_PER_DAY] + prefix[minute] + rates[minute] * (millisOfDay % MILLIS_PER_MINUTE);
+        }
+
+        private long cap(long units) {
+            return dailyCapUnits > 0 ? Math.min(units, dailyCapUnits) : units;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles the tariff file again when it changes and swaps the new tariff into FareCalculatorService. A file that
+ * is not a valid tariff is logged and the current tariff is kept.
+ */
+public class TariffReloader {
+
+    private static final Logger logger = LogManager.getLogger("TariffReloader");
+    private final FareCalculatorService fareCalculatorService;
+    private final Path file;
+    private long lastModified = Long.MIN_VALUE;
+    private ScheduledExecutorService scheduler;
+
+    public TariffReloader(FareCalculatorService fareCalculatorService, Path file) {
+        this.fareCalculatorService = fareCalculatorService;
+        this.file = file;
+    }
+
+    /**
+     * load the tariff file if it changed since the last load
+     *
+     * @return true if a new tariff is in use
+     */
+    public synchronized boolean reload() {
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified == lastModified) {
+                return false;
+            }
+            Tariff tariff = Tariff.load(file);
+            lastModified = modified;
+            fareCalculatorService.setTariff(tariff);
+            logger.info("Tariff of " + file + " in use");
+            return true;
+        } catch (Exception e) {
+            logger.error("Unable to load the tariff " + file + ", the current tariff is kept", e);
+            return false;
+        }
+    }
+
+    /**
+     * check the tariff file in the background every interval
+     *
+     * @param intervalSeconds
+     */
+    public synchronized void start(long intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tariff-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reload, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
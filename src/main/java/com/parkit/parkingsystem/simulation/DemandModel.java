@@ -0,0 +1,83 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.DayOfWeek;
+import java.time.ZonedDateTime;
+import java.util.Random;
+
+/**
+ * Arrivals and stays of a simulated parking: Poisson arrivals whose rate follows the hour of the day (lower on
+ * weekends), log-normal stays, and a share of the arrivals made by vehicles that already came.
+ */
+public class DemandModel {
+
+    //share of the arrivals of a working day in each hour, a city-centre parking
+    private static final double[] TYPICAL_DAY = {
+            0.005, 0.003, 0.002, 0.002, 0.003, 0.01, 0.03, 0.08, 0.11, 0.09, 0.07, 0.07,
+            0.08, 0.07, 0.06, 0.06, 0.06, 0.06, 0.05, 0.04, 0.03, 0.02, 0.01, 0.007};
+
+    private final double[] arrivalsPerHour = new double[24];
+    private final double weekendFactor;
+    private final double meanStayMinutes;
+    private final double staySigma;
+    private final double repeatRatio;
+    private final double bikeRatio;
+    private double maxArrivalsPerHour;
+
+    /**
+     * @param arrivalsPerDay  arrivals of a working day, spread over the hours as in a city-centre parking
+     * @param weekendFactor   arrivals of a weekend day compared to a working day
+     * @param meanStayMinutes mean of the log-normal stays
+     * @param staySigma       shape of the log-normal stays, 0 for stays all of the mean
+     * @param repeatRatio     share of arrivals made by a vehicle that already came and left, when there is one
+     * @param bikeRatio       share of new vehicles that are bikes
+     */
+    public DemandModel(double arrivalsPerDay, double weekendFactor, double meanStayMinutes, double staySigma,
+                       double repeatRatio, double bikeRatio) {
+        double total = 0;
+        for (double share : TYPICAL_DAY) {
+            total += share;
+        }
+        for (int hour = 0; hour < 24; hour++) {
+            arrivalsPerHour[hour] = arrivalsPerDay * TYPICAL_DAY[hour] / total;
+            maxArrivalsPerHour = Math.max(maxArrivalsPerHour, arrivalsPerHour[hour] * Math.max(1, weekendFactor));
+        }
+        this.weekendFactor = weekendFactor;
+        this.meanStayMinutes = meanStayMinutes;
+        this.staySigma = staySigma;
+        this.repeatRatio = repeatRatio;
+        this.bikeRatio = bikeRatio;
+    }
+
+    /**
+     * @param time
+     * @return rate of the arrivals at this time
+     */
+    public double getArrivalsPerHour(ZonedDateTime time) {
+        DayOfWeek day = time.getDayOfWeek();
+        boolean weekend = day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY;
+        return arrivalsPerHour[time.getHour()] * (weekend ? weekendFactor : 1);
+    }
+
+    /**
+     * @return highest rate of the arrivals over the week
+     */
+    public double getMaxArrivalsPerHour() {
+        return maxArrivalsPerHour;
+    }
+
+    public long drawStayMillis(Random random) {
+        //median of the log-normal giving this mean
+        double mu = Math.log(meanStayMinutes * 60_000) - staySigma * staySigma / 2;
+        return Math.max(60_000, (long) Math.exp(mu + staySigma * random.nextGaussian()));
+    }
+
+    public boolean drawReturningVehicle(Random random) {
+        return random.nextDouble() < repeatRatio;
+    }
+
+    public ParkingType drawParkingType(Random random) {
+        return random.nextDouble() < bikeRatio ? ParkingType.BIKE : ParkingType.CAR;
+    }
+}
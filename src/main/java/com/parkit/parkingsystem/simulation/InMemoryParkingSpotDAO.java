@@ -0,0 +1,63 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Spots of a simulated parking, numbered from 1, the cars first. The free spots of each type are handed out lowest
+ * number first, as GET_NEXT_PARKING_SPOT does. Used from the single thread of ParkingSimulation.
+ */
+public class InMemoryParkingSpotDAO extends ParkingSpotDAO {
+
+    private final Map<ParkingType, NavigableSet<Integer>> freeSpots = new EnumMap<>(ParkingType.class);
+
+    /**
+     * @param spots number of spots of each type
+     */
+    public InMemoryParkingSpotDAO(Map<ParkingType, Integer> spots) {
+        int parkingNumber = 0;
+        for (ParkingType parkingType : ParkingType.values()) {
+            NavigableSet<Integer> free = new TreeSet<>();
+            for (int i = 0; i < spots.getOrDefault(parkingType, 0); i++) {
+                free.add(++parkingNumber);
+            }
+            freeSpots.put(parkingType, free);
+        }
+    }
+
+    @Override
+    public int getNextAvailableSlot(ParkingType parkingType) {
+        NavigableSet<Integer> free = freeSpots.get(parkingType);
+        return free.isEmpty() ? -1 : free.first();
+    }
+
+    @Override
+    public ParkingSpot claimNextSpot(ParkingType parkingType) {
+        Integer parkingNumber = freeSpots.get(parkingType).pollFirst();
+        return parkingNumber == null ? null : new ParkingSpot(parkingNumber, parkingType, false);
+    }
+
+    @Override
+    public boolean updateParking(ParkingSpot parkingSpot) {
+        if (parkingSpot.isAvailable()) {
+            onParkingUpdated(parkingSpot);
+        }
+        return true;
+    }
+
+    /**
+     * the spot is free again, e.g. its ticket is closed
+     */
+    @Override
+    public void onParkingUpdated(ParkingSpot parkingSpot) {
+        if (parkingSpot.isAvailable()) {
+            freeSpots.get(parkingSpot.getParkingType()).add(parkingSpot.getId());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculator;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tickets of a simulation, kept in memory with the same rules as the database: one open ticket per vehicle, and
+ * the 5% discount for a vehicle having more than one ticket. Used from the single thread of ParkingSimulation.
+ */
+public class InMemoryTicketDAO extends TicketDAO {
+
+    private final Map<String, Ticket> openTickets = new HashMap<>();
+    private final Map<String, Integer> ticketCounts = new HashMap<>();
+    private int lastId;
+
+    @Override
+    public SaveStatus saveTicket(Ticket ticket) {
+        if (openTickets.putIfAbsent(ticket.getVehicleRegNumber(), ticket) != null) {
+            return SaveStatus.ALREADY_PARKED;
+        }
+        ticket.setId(++lastId);
+        ticketCounts.merge(ticket.getVehicleRegNumber(), 1, Integer::sum);
+        return SaveStatus.SAVED;
+    }
+
+    @Override
+    public Ticket getTicket(String vehicleRegNumber) {
+        return openTickets.get(vehicleRegNumber);
+    }
+
+    @Override
+    public Ticket getLastTicket(String vehicleRegNumber) {
+        return openTickets.get(vehicleRegNumber);
+    }
+
+    @Override
+    public int getNbTicket(String vehicleRegNumber) {
+        return ticketCounts.getOrDefault(vehicleRegNumber, 0);
+    }
+
+    @Override
+    public Ticket closeTicket(String vehicleRegNumber, Date outTime, FareCalculator fareCalculator, boolean freeSpot) {
+        Ticket ticket = openTickets.remove(vehicleRegNumber);
+        if (ticket == null) {
+            return null;
+        }
+        ticket.setOutTime(outTime);
+        fareCalculator.calculateFare(ticket, getNbTicket(vehicleRegNumber) > 1);
+        ticket.getParkingSpot().setAvailable(true);
+        return ticket;
+    }
+
+    @Override
+    public boolean isVehicleParked(String vehicleRegNumber) {
+        return openTickets.containsKey(vehicleRegNumber);
+    }
+}
@@ -0,0 +1,184 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Discrete-event simulation of a parking, for capacity and tariff planning: arrivals drawn from a DemandModel go
+ * through ParkingService.entry and exit as at the gates, while a SimulationClock jumps from one event to the next.
+ * On the in-memory DAOs, a month of a 10K spots parking runs in seconds.
+ * <p>
+ * A vehicle finding no free spot goes away. Vehicles still parked at the end of the simulation have paid nothing.
+ */
+public class ParkingSimulation {
+
+    private final ParkingService parkingService;
+    private final SimulationClock clock;
+    private final DemandModel demandModel;
+    private final int[] capacity = new int[ParkingType.values().length];
+    private final Random random;
+    //vehicles that came and left, drawn for the returning arrivals
+    private final List<Departure> gone = new ArrayList<>();
+    private final PriorityQueue<Departure> departures = new PriorityQueue<>((a, b) -> Long.compare(a.time, b.time));
+    private int vehicles;
+    //current interval
+    private final int[] occupancy = new int[ParkingType.values().length];
+    private int[] peakOccupancy;
+    private int entries;
+    private int exits;
+    private int refused;
+    private double revenue;
+
+    /**
+     * @param parkingService on DAOs that take the times given to entry and exit, with the clock set to clock
+     * @param clock
+     * @param demandModel
+     * @param spots          number of spots of each type of the parking of parkingService
+     * @param seed
+     */
+    public ParkingSimulation(ParkingService parkingService, SimulationClock clock, DemandModel demandModel,
+                             Map<ParkingType, Integer> spots, long seed) {
+        this.parkingService = parkingService;
+        this.clock = clock;
+        this.demandModel = demandModel;
+        for (ParkingType parkingType : ParkingType.values()) {
+            capacity[parkingType.ordinal()] = spots.getOrDefault(parkingType, 0);
+        }
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param spots                 number of spots of each type
+     * @param demandModel
+     * @param fareCalculatorService fares of the tickets, e.g. with the tariff to plan
+     * @param start                 time of the first arrival
+     * @param zone                  time zone of the hours of the demand and of the report
+     * @param seed
+     * @return a simulation of an empty parking on the in-memory DAOs
+     */
+    public static ParkingSimulation inMemory(Map<ParkingType, Integer> spots, DemandModel demandModel,
+                                             FareCalculatorService fareCalculatorService, Instant start, ZoneId zone, long seed) {
+        SimulationClock clock = new SimulationClock(start, zone);
+        ParkingService parkingService = new ParkingService(new InputReaderUtil(), new InMemoryParkingSpotDAO(spots),
+                new InMemoryTicketDAO());
+        parkingService.setFareCalculatorService(fareCalculatorService);
+        parkingService.setClock(clock);
+        return new ParkingSimulation(parkingService, clock, demandModel, spots, seed);
+    }
+
+    /**
+     * @param length   simulated time, from the current time of the clock
+     * @param interval length of a row of the report
+     * @return the curves of the simulation
+     */
+    public SimulationReport run(Duration length, Duration interval) {
+        SimulationReport report = new SimulationReport(capacity.clone(), clock.getZone());
+        long end = clock.millis() + length.toMillis();
+        long intervalMillis = interval.toMillis();
+        long intervalStart = clock.millis();
+        //arrivals at the highest rate, each kept with the ratio of the rate at its time (thinning)
+        double meanArrivalGap = 3_600_000 / demandModel.getMaxArrivalsPerHour();
+        double nextArrival = clock.millis() + drawGap(meanArrivalGap);
+        peakOccupancy = occupancy.clone();
+        while (true) {
+            long next = Math.min((long) nextArrival, departures.isEmpty() ? Long.MAX_VALUE : departures.peek().time);
+            while (intervalStart + intervalMillis <= Math.min(next, end)) {
+                clock.advanceTo(intervalStart + intervalMillis);
+                closeInterval(report, intervalStart);
+                intervalStart += intervalMillis;
+            }
+            if (next >= end) {
+                break;
+            }
+            clock.advanceTo(next);
+            if (!departures.isEmpty() && departures.peek().time == next) {
+                depart(departures.poll());
+            } else {
+                double rate = demandModel.getArrivalsPerHour(clock.instant().atZone(clock.getZone()));
+                if (random.nextDouble() * demandModel.getMaxArrivalsPerHour() < rate) {
+                    arrive();
+                }
+                nextArrival += drawGap(meanArrivalGap);
+            }
+        }
+        clock.advanceTo(end);
+        if (intervalStart < end) {
+            closeInterval(report, intervalStart);
+        }
+        return report;
+    }
+
+    private void arrive() {
+        Departure vehicle;
+        if (!gone.isEmpty() && demandModel.drawReturningVehicle(random)) {
+            int picked = random.nextInt(gone.size());
+            vehicle = gone.get(picked);
+            gone.set(picked, gone.get(gone.size() - 1));
+            gone.remove(gone.size() - 1);
+        } else {
+            vehicle = new Departure("SIM" + (++vehicles), demandModel.drawParkingType(random));
+        }
+        EntryResult result = parkingService.entry(vehicle.vehicleRegNumber, vehicle.parkingType);
+        if (!result.isEntered()) {
+            refused++;
+            gone.add(vehicle);
+            return;
+        }
+        entries++;
+        int type = vehicle.parkingType.ordinal();
+        occupancy[type]++;
+        peakOccupancy[type] = Math.max(peakOccupancy[type], occupancy[type]);
+        vehicle.time = clock.millis() + demandModel.drawStayMillis(random);
+        departures.add(vehicle);
+    }
+
+    private void depart(Departure vehicle) {
+        ExitResult result = parkingService.exit(vehicle.vehicleRegNumber);
+        if (result.getStatus() == ExitResult.Status.EXITED) {
+            exits++;
+            revenue += result.getFare();
+            occupancy[vehicle.parkingType.ordinal()]--;
+        }
+        gone.add(vehicle);
+    }
+
+    private void closeInterval(SimulationReport report, long start) {
+        report.add(new SimulationReport.Interval(start, entries, exits, refused, revenue, occupancy.clone(), peakOccupancy));
+        peakOccupancy = occupancy.clone();
+        entries = 0;
+        exits = 0;
+        refused = 0;
+        revenue = 0;
+    }
+
+    private double drawGap(double meanGap) {
+        return -meanGap * Math.log(1 - random.nextDouble());
+    }
+
+    /**
+     * a vehicle and the time it leaves, once parked
+     */
+    private static final class Departure {
+        private final String vehicleRegNumber;
+        private final ParkingType parkingType;
+        private long time;
+
+        private Departure(String vehicleRegNumber, ParkingType parkingType) {
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+        }
+    }
+}
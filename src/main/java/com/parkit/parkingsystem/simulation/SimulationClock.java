@@ -0,0 +1,55 @@
+package com.parkit.parkingsystem.simulation;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock of a simulation: it only moves when ParkingSimulation advances it to the time of the next event.
+ * The copies made by withZone share its time.
+ */
+public class SimulationClock extends Clock {
+
+    private final AtomicLong millis;
+    private final ZoneId zone;
+
+    public SimulationClock(Instant start, ZoneId zone) {
+        this(new AtomicLong(start.toEpochMilli()), zone);
+    }
+
+    private SimulationClock(AtomicLong millis, ZoneId zone) {
+        this.millis = millis;
+        this.zone = zone;
+    }
+
+    /**
+     * @param time epoch millis, not before the current time of the clock
+     */
+    public void advanceTo(long time) {
+        if (time < millis.get()) {
+            throw new IllegalArgumentException("Simulated time cannot go back from " + millis.get() + " to " + time);
+        }
+        millis.set(time);
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis.get());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new SimulationClock(millis, zone);
+    }
+}
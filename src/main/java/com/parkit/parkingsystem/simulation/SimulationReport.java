@@ -0,0 +1,165 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Occupancy and revenue curves of a simulation, one row per interval of simulated time.
+ */
+public class SimulationReport {
+
+    /**
+     * totals of one interval, occupancies at its end and at its busiest moment
+     */
+    public static class Interval {
+        private final long start;
+        private final int entries;
+        private final int exits;
+        private final int refused;
+        private final double revenue;
+        private final int[] occupancy;
+        private final int[] peakOccupancy;
+
+        Interval(long start, int entries, int exits, int refused, double revenue, int[] occupancy, int[] peakOccupancy) {
+            this.start = start;
+            this.entries = entries;
+            this.exits = exits;
+            this.refused = refused;
+            this.revenue = revenue;
+            this.occupancy = occupancy;
+            this.peakOccupancy = peakOccupancy;
+        }
+
+        /**
+         * @return epoch millis
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public int getExits() {
+            return exits;
+        }
+
+        /**
+         * @return arrivals that found no free spot of their type
+         */
+        public int getRefused() {
+            return refused;
+        }
+
+        public double getRevenue() {
+            return revenue;
+        }
+
+        public int getOccupancy(ParkingType parkingType) {
+            return occupancy[parkingType.ordinal()];
+        }
+
+        public int getPeakOccupancy(ParkingType parkingType) {
+            return peakOccupancy[parkingType.ordinal()];
+        }
+    }
+
+    private final List<Interval> intervals = new ArrayList<>();
+    private final int[] capacity;
+    private final ZoneId zone;
+
+    SimulationReport(int[] capacity, ZoneId zone) {
+        this.capacity = capacity;
+        this.zone = zone;
+    }
+
+    void add(Interval interval) {
+        intervals.add(interval);
+    }
+
+    public List<Interval> getIntervals() {
+        return Collections.unmodifiableList(intervals);
+    }
+
+    public int getCapacity(ParkingType parkingType) {
+        return capacity[parkingType.ordinal()];
+    }
+
+    public long getEntries() {
+        long entries = 0;
+        for (Interval interval : intervals) {
+            entries += interval.entries;
+        }
+        return entries;
+    }
+
+    public long getRefused() {
+        long refused = 0;
+        for (Interval interval : intervals) {
+            refused += interval.refused;
+        }
+        return refused;
+    }
+
+    /**
+     * @return fares of the vehicles that left before the end of the simulation
+     */
+    public double getRevenue() {
+        double revenue = 0;
+        for (Interval interval : intervals) {
+            revenue += interval.revenue;
+        }
+        return revenue;
+    }
+
+    public int getPeakOccupancy(ParkingType parkingType) {
+        int peak = 0;
+        for (Interval interval : intervals) {
+            peak = Math.max(peak, interval.getPeakOccupancy(parkingType));
+        }
+        return peak;
+    }
+
+    /**
+     * one line per interval: start, entries, exits, refused, revenue, then the occupancy and the peak occupancy
+     * of each type of spot
+     *
+     * @param file
+     */
+    public void writeCsv(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder header = new StringBuilder("start,entries,exits,refused,revenue");
+            for (ParkingType parkingType : ParkingType.values()) {
+                header.append(",occupancy_").append(parkingType).append(",peak_").append(parkingType);
+            }
+            writer.write(header.toString());
+            writer.newLine();
+            for (Interval interval : intervals) {
+                StringBuilder line = new StringBuilder()
+                        .append(Instant.ofEpochMilli(interval.start).atZone(zone).toLocalDateTime()).append(',')
+                        .append(interval.entries).append(',')
+                        .append(interval.exits).append(',')
+                        .append(interval.refused).append(',')
+                        .append(String.format(Locale.ROOT, "%.2f", interval.revenue));
+                for (ParkingType parkingType : ParkingType.values()) {
+                    line.append(',').append(interval.getOccupancy(parkingType))
+                            .append(',').append(interval.getPeakOccupancy(parkingType));
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:pooltest:parking";
+    private static final MockDriver driver = new MockDriver();
+
+    private ConnectionPool connectionPool;
+
+    @BeforeAll
+    public static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterAll
+    public static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @BeforeEach
+    public void setUpPerTest() {
+        driver.connections.clear();
+        driver.statements.clear();
+    }
+
+    @AfterEach
+    public void tearDownPerTest() {
+        if (connectionPool != null) {
+            connectionPool.shutdown();
+        }
+    }
+
+    private ConnectionPool newPool(int maxSize, long borrowTimeoutMillis, long validationIntervalMillis) {
+        connectionPool = new ConnectionPool(URL, "sa", "", 0, maxSize, 300_000, borrowTimeoutMillis,
+                validationIntervalMillis, 8);
+        return connectionPool;
+    }
+
+    @Test
+    public void returnedConnectionIsReusedTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(2, 1000, 30_000);
+        //When
+        Connection first = pool.getConnection();
+        //Then
+        assertEquals(1, pool.getActiveConnections());
+        assertEquals(0, pool.getIdleConnections());
+        //When
+        first.close();
+        Connection second = pool.getConnection();
+        second.close();
+        //Then: one physical connection, never closed
+        assertTrue(first.isClosed());
+        assertNotSame(first, second);
+        assertEquals(1, driver.connections.size());
+        assertEquals(1, pool.getOpenConnections());
+        assertEquals(1, pool.getIdleConnections());
+        assertEquals(0, pool.getActiveConnections());
+        verify(driver.connections.get(0), never()).close();
+        assertThrows(SQLException.class, () -> first.createStatement());
+    }
+
+    @Test
+    public void exhaustedPoolTimesOutTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(1, 50, 30_000);
+        Connection borrowed = pool.getConnection();
+        //When
+        SQLException exhausted = assertThrows(SQLException.class, pool::getConnection);
+        borrowed.close();
+        Connection next = pool.getConnection();
+        //Then
+        assertTrue(exhausted.getMessage().startsWith("Timed out after 50 ms"));
+        assertEquals(1, pool.getActiveConnections());
+        assertEquals(1, driver.connections.size());
+        next.close();
+    }
+
+    @Test
+    public void idleConnectionValidatedAfterValidationIntervalTest() throws Exception {
+        //Given: the connection stays idle longer than the interval, then fails validation
+        ConnectionPool pool = newPool(1, 1000, 1);
+        pool.getConnection().close();
+        Connection physical = driver.connections.get(0);
+        when(physical.isValid(anyInt())).thenReturn(false);
+        Thread.sleep(10);
+        //When
+        Connection borrowed = pool.getConnection();
+        borrowed.close();
+        //Then: a new one is opened instead
+        verify(physical, times(1)).isValid(anyInt());
+        verify(physical, times(1)).close();
+        assertEquals(2, driver.connections.size());
+        assertEquals(1, pool.getOpenConnections());
+    }
+
+    @Test
+    public void idleConnectionNotValidatedWithinValidationIntervalTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(1, 1000, 60_000);
+        pool.getConnection().close();
+        //When
+        pool.getConnection().close();
+        //Then: only checked as not closed
+        verify(driver.connections.get(0), never()).isValid(anyInt());
+        assertEquals(1, driver.connections.size());
+    }
+
+    @Test
+    public void preparedStatementReusedFromCacheTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(1, 1000, 30_000);
+        String sql = "select * from ticket where VEHICLE_REG_NUMBER = ?";
+        //When: prepared on a first borrowing, then on a second one
+        Connection con = pool.getConnection();
+        con.prepareStatement(sql).close();
+        con.close();
+        con = pool.getConnection();
+        PreparedStatement ps = con.prepareStatement(sql);
+        //the same query while the cached statement is in use gets a statement of its own
+        PreparedStatement other = con.prepareStatement(sql);
+        //a key generating statement is another entry of the cache
+        con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS).close();
+        con.close();
+        //Then
+        assertEquals(1, pool.getStatementCacheHits());
+        assertEquals(3, pool.getStatementCacheMisses());
+        assertNotSame(ps, other);
+        //the cached statement stays open, the other one is closed with the borrowing
+        assertTrue(ps.isClosed());
+        verify(driver.statements.get(0), never()).close();
+        verify(other, times(1)).close();
+        Connection physical = driver.connections.get(0);
+        verify(physical, times(2)).prepareStatement(sql);
+        verify(physical, times(1)).prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    @Test
+    public void cachedStatementResetWhenGivenBackTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(1, 1000, 30_000);
+        String sql = "select * from ticket";
+        Connection con = pool.getConnection();
+        PreparedStatement ps = con.prepareStatement(sql);
+        PreparedStatement physical = driver.statements.get(0);
+        //When
+        ps.setFetchSize(500);
+        ps.setMaxRows(10);
+        ps.setQueryTimeout(5);
+        ps.close();
+        con.close();
+        //Then: back to the defaults of the driver before the next borrower gets it
+        verify(physical, times(1)).clearParameters();
+        verify(physical, times(1)).clearBatch();
+        verify(physical, times(1)).setFetchSize(0);
+        verify(physical, times(1)).setMaxRows(0);
+        verify(physical, times(1)).setQueryTimeout(0);
+        verify(physical, never()).close();
+    }
+
+    @Test
+    public void cachedStatementLosingTheConnectionBreaksItTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(1, 1000, 30_000);
+        String sql = "select * from ticket";
+        Connection con = pool.getConnection();
+        PreparedStatement ps = con.prepareStatement(sql);
+        PreparedStatement physical = driver.statements.get(0);
+        when(physical.executeQuery()).thenThrow(new SQLException("Communications link failure", "08S01"));
+        //When
+        assertThrows(SQLException.class, ps::executeQuery);
+        con.close();
+        //Then: closed with its cached statement, the next borrower gets a new connection
+        verify(driver.connections.get(0), times(1)).close();
+        verify(physical, times(1)).close();
+        pool.getConnection().close();
+        assertEquals(2, driver.connections.size());
+        assertEquals(1, pool.getOpenConnections());
+    }
+
+    @Test
+    public void failedPrepareOfCachedStatementBreaksConnectionTest() throws Exception {
+        //Given
+        ConnectionPool pool = newPool(1, 1000, 30_000);
+        Connection con = pool.getConnection();
+        when(driver.connections.get(0).prepareStatement(anyString()))
+                .thenThrow(new SQLException("Connection reset", "08006"));
+        //When
+        assertThrows(SQLException.class, () -> con.prepareStatement("select * from ticket"));
+        con.close();
+        //Then
+        verify(driver.connections.get(0), times(1)).close();
+        assertEquals(0, pool.getOpenConnections());
+    }
+
+    /**
+     * driver handing out mock connections, whose statements are mocks too
+     */
+    private static final class MockDriver implements Driver {
+        private final List<Connection> connections = new CopyOnWriteArrayList<>();
+        private final List<PreparedStatement> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            Connection connection = mock(Connection.class);
+            when(connection.isValid(anyInt())).thenReturn(true);
+            when(connection.getAutoCommit()).thenReturn(true);
+            when(connection.prepareStatement(anyString())).thenAnswer(invocation -> newStatement());
+            when(connection.prepareStatement(anyString(), anyInt())).thenAnswer(invocation -> newStatement());
+            connections.add(connection);
+            return connection;
+        }
+
+        private PreparedStatement newStatement() {
+            PreparedStatement statement = mock(PreparedStatement.class);
+            statements.add(statement);
+            return statement;
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:pooltest:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
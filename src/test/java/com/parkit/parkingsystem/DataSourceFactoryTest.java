@@ -0,0 +1,108 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseMode;
+import com.parkit.parkingsystem.config.DataSourceFactory;
+import com.parkit.parkingsystem.config.EmbeddedSchema;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataSourceFactoryTest {
+
+    private Properties embeddedSettings(String url) {
+        Properties settings = new Properties();
+        settings.setProperty("db.mode", "embedded");
+        settings.setProperty("db.embedded.url", url);
+        settings.setProperty("db.embedded.user", "sa");
+        settings.setProperty("db.pool.minSize", "0");
+        settings.setProperty("db.pool.maxSize", "2");
+        settings.setProperty("db.pool.idleTimeoutMs", "300000");
+        settings.setProperty("db.pool.borrowTimeoutMs", "1000");
+        settings.setProperty("db.pool.validationIntervalMs", "30000");
+        settings.setProperty("db.pool.statementCacheSize", "4");
+        return settings;
+    }
+
+    @Test
+    public void modeSelectsTheSettingsOfItsBackendTest() {
+        //Given
+        Properties settings = new Properties();
+        settings.setProperty("db.mysql.url", "jdbc:mysql://localhost:3306/{database}");
+        settings.setProperty("db.embedded.url", "jdbc:h2:mem:{database}");
+        //When & Then: mysql by default
+        assertEquals(DataBaseMode.MYSQL, DataSourceFactory.getMode(settings));
+        assertEquals("jdbc:mysql://localhost:3306/prod", DataSourceFactory.getUrl(settings, "prod"));
+        settings.setProperty("db.mode", " Embedded ");
+        assertEquals(DataBaseMode.EMBEDDED, DataSourceFactory.getMode(settings));
+        assertEquals("jdbc:h2:mem:test", DataSourceFactory.getUrl(settings, "test"));
+        assertEquals("db.embedded.", DataBaseMode.EMBEDDED.getSettingsPrefix());
+    }
+
+    @Test
+    public void missingOrUnknownSettingFailsTest() {
+        //Given
+        Properties settings = new Properties();
+        settings.setProperty("db.mode", "embedded");
+        //When & Then
+        assertThrows(IllegalArgumentException.class, () -> DataSourceFactory.getUrl(settings, "test"));
+        settings.setProperty("db.mode", "oracle");
+        assertThrows(IllegalArgumentException.class, () -> DataSourceFactory.getMode(settings));
+    }
+
+    @Test
+    public void systemPropertyOverridesSettingTest() {
+        //Given
+        System.setProperty("db.pool.maxSize", "3");
+        try {
+            //When
+            Properties settings = DataSourceFactory.loadSettings();
+            //Then: the rest comes from database.properties
+            assertEquals("3", settings.getProperty("db.pool.maxSize"));
+            assertEquals(DataBaseMode.EMBEDDED, DataSourceFactory.getMode(settings));
+        } finally {
+            System.clearProperty("db.pool.maxSize");
+        }
+    }
+
+    @Test
+    public void embeddedDataBaseGetsTheSchemaOnceTest() throws Exception {
+        //Given
+        Properties settings = embeddedSettings("jdbc:h2:mem:factory-{database};DB_CLOSE_DELAY=-1");
+        ConnectionPool pool = DataSourceFactory.create(settings, "test");
+        try (Connection con = pool.getConnection(); Statement statement = con.createStatement()) {
+            statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) values(100, true, 'CAR')");
+        }
+        //When: created again on the same database
+        DataSourceFactory.create(settings, "test").shutdown();
+        //Then: tables kept with their rows
+        try (Connection con = pool.getConnection(); Statement statement = con.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from parking where PARKING_NUMBER = 100")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void embeddedSchemaOfUnknownDataBaseFailsTest() {
+        //Given
+        ConnectionPool pool = new ConnectionPool("jdbc:h2:mem:factory-unknown;DB_CLOSE_DELAY=-1", "sa", "", 0, 1,
+                300_000, 1000, 30_000, 4);
+        try {
+            //When & Then: Data.sql has no "use unknown"
+            assertThrows(SQLException.class, () -> EmbeddedSchema.apply(pool, "unknown"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
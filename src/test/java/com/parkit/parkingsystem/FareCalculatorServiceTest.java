@@ -120,7 +120,7 @@ public class FareCalculatorServiceTest {
         //Act
         fareCalculatorService.calculateFare(ticket);
         //Assert
-        assertEquals((0.75 * Fare.CAR_RATE_PER_HOUR), ticket.getPrice());
+        assertEquals(1.13, ticket.getPrice());//1.125 rounded half up to the cent
     }
 
     @Test
@@ -186,7 +186,7 @@ public class FareCalculatorServiceTest {
         //Act
         fareCalculatorService.calculateFare(ticket, true);
         //Assert
-        assertEquals((0.95 * 0.75 * Fare.CAR_RATE_PER_HOUR), ticket.getPrice());//5% discount
+        assertEquals(1.07, ticket.getPrice());//5% discount on 1.125, rounded to the cent
     }
 
     @Test
@@ -202,6 +202,54 @@ public class FareCalculatorServiceTest {
         //Act
         fareCalculatorService.calculateFare(ticket, true);
         //Assert
-        assertEquals((0.95 * 0.75 * Fare.BIKE_RATE_PER_HOUR), ticket.getPrice());//5% discount
+        assertEquals(0.71, ticket.getPrice());//5% discount on 0.75, rounded to the cent
     }
-}
\ No newline at end of file
+
+    @Test
+    public void calculateFareCentsRoundsHalfUp() {
+        //Arrange: 45 minutes
+        long inTime = 1_000_000L;
+        long outTime = inTime + 45 * 60 * 1000;
+        //Act & Assert
+        assertEquals(113, fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.CAR.ordinal(), false));//112.5
+        assertEquals(107, fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.CAR.ordinal(), true));//106.875
+        assertEquals(75, fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.BIKE.ordinal(), false));
+        assertEquals(0, fareCalculatorService.calculateFareCents(inTime, inTime + 30 * 60 * 1000 - 1, ParkingType.CAR.ordinal(), false));
+        assertEquals(36, fareCalculatorService.calculateFareCents(inTime, inTime + 24 * 60 * 60 * 1000L, ParkingType.CAR.ordinal(), false) / 100);
+    }
+
+    @Test
+    public void calculateFareCentsWithUnknownTypeOrdinal() {
+        //Assert
+        assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFareCents(0, 60 * 60 * 1000, 7, false));
+    }
+
+    @Test
+    public void calculateFaresCentsInBatch() {
+        //Arrange: more stays than one fork-join task takes
+        int stays = 100_000;
+        long[] inTimes = new long[stays];
+        long[] outTimes = new long[stays];
+        int[] parkingTypeOrdinals = new int[stays];
+        boolean[] discounts = new boolean[stays];
+        for (int i = 0; i < stays; i++) {
+            inTimes[i] = 1_000_000L * i;
+            outTimes[i] = inTimes[i] + i * 1000L;
+            parkingTypeOrdinals[i] = i % 2;
+            discounts[i] = i % 3 == 0;
+        }
+        long[] cents = new long[stays];
+        long[] parallelCents = new long[stays];
+        //Act
+        fareCalculatorService.calculateFaresCents(inTimes, outTimes, parkingTypeOrdinals, discounts, cents);
+        fareCalculatorService.calculateFaresCentsInParallel(inTimes, outTimes, parkingTypeOrdinals, discounts, parallelCents);
+        //Assert
+        for (int i = 0; i < stays; i++) {
+            long expected = fareCalculatorService.calculateFareCents(inTimes[i], outTimes[i], parkingTypeOrdinals[i], discounts[i]);
+            assertEquals(expected, cents[i]);
+            assertEquals(expected, parallelCents[i]);
+        }
+        assertThrows(IllegalArgumentException.class, () -> fareCalculatorService.calculateFaresCents(inTimes, outTimes,
+                parkingTypeOrdinals, discounts, new long[1]));
+    }
+}
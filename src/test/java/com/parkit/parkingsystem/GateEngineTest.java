@@ -0,0 +1,159 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculator;
+import com.parkit.parkingsystem.service.GateEngine;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GateEngineTest {
+
+    private final SlowTicketDAO ticketDAO = new SlowTicketDAO();
+    private GateEngine gateEngine;
+
+    @AfterEach
+    public void tearDown() {
+        gateEngine.close();
+    }
+
+    @Test
+    public void concurrentRequestsAreBoundedTest() {
+        //Given
+        gateEngine = new GateEngine(new ParkingService(new InputReaderUtil(), new FreeParkingSpotDAO(), ticketDAO), 2);
+        List<CompletableFuture<EntryResult>> entries = new ArrayList<>();
+        //When
+        for (int i = 0; i < 20; i++) {
+            entries.add(gateEngine.entry("PLATE" + i, ParkingType.CAR, new Date()));
+        }
+        //Then
+        for (CompletableFuture<EntryResult> entry : entries) {
+            assertEquals(EntryResult.Status.ENTERED, entry.join().getStatus());
+        }
+        assertEquals(20, ticketDAO.openTickets.size());
+        assertTrue(ticketDAO.maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void requestsOfOnePlateRunInOrderTest() {
+        //Given: the entry is slow, the exit would find no ticket if it ran first
+        gateEngine = new GateEngine(new ParkingService(new InputReaderUtil(), new FreeParkingSpotDAO(), ticketDAO), 4);
+        Date inTime = new Date(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+        //When
+        CompletableFuture<EntryResult> entry = gateEngine.entry("ABCDEF", ParkingType.CAR, inTime);
+        CompletableFuture<ExitResult> exit = gateEngine.exit("ABCDEF", new Date());
+        CompletableFuture<EntryResult> other = gateEngine.entry("GHIJKL", ParkingType.CAR, inTime);
+        //Then
+        assertEquals(EntryResult.Status.ENTERED, entry.join().getStatus());
+        assertEquals(ExitResult.Status.EXITED, exit.join().getStatus());
+        assertEquals(EntryResult.Status.ENTERED, other.join().getStatus());
+        assertTrue(exit.join().getFare() > 0);
+        assertEquals(Arrays.asList("save ABCDEF", "close ABCDEF"), ticketDAO.eventsOf("ABCDEF"));
+    }
+
+    @Test
+    public void closeWhenInterruptedKeepsInterruptStatusTest() {
+        //Given: an entry still in flight
+        gateEngine = new GateEngine(new ParkingService(new InputReaderUtil(), new FreeParkingSpotDAO(), ticketDAO), 1);
+        gateEngine.entry("ABCDEF", ParkingType.CAR, new Date());
+        //When
+        Thread.currentThread().interrupt();
+        gateEngine.close();
+        //Then: closed at once, the caller still sees the interrupt
+        assertTrue(Thread.interrupted());
+        assertThrows(RejectedExecutionException.class, () -> gateEngine.entry("GHIJKL", ParkingType.CAR, new Date()));
+    }
+
+    static class FreeParkingSpotDAO extends ParkingSpotDAO {
+        private final AtomicInteger nextSpot = new AtomicInteger();
+
+        @Override
+        public ParkingSpot claimNextSpot(ParkingType parkingType) {
+            return new ParkingSpot(nextSpot.incrementAndGet(), parkingType, false);
+        }
+
+        @Override
+        public void onParkingUpdated(ParkingSpot parkingSpot) {
+        }
+    }
+
+    /**
+     * saves in memory, each save taking 20 ms
+     */
+    static class SlowTicketDAO extends TicketDAO {
+        private final Map<String, Ticket> openTickets = new ConcurrentHashMap<>();
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public boolean isVehicleParked(String vehicleRegNumber) {
+            return false;
+        }
+
+        @Override
+        public int getNbTicket(String vehicleRegNumber) {
+            return 0;
+        }
+
+        @Override
+        public SaveStatus saveTicket(Ticket ticket) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            openTickets.put(ticket.getVehicleRegNumber(), ticket);
+            events.add("save " + ticket.getVehicleRegNumber());
+            return SaveStatus.SAVED;
+        }
+
+        @Override
+        public Ticket closeTicket(String vehicleRegNumber, Date outTime, FareCalculator fareCalculator, boolean freeSpot) {
+            Ticket ticket = openTickets.remove(vehicleRegNumber);
+            events.add("close " + vehicleRegNumber);
+            if (ticket == null) {
+                return null;
+            }
+            ticket.setOutTime(outTime);
+            fareCalculator.calculateFare(ticket, false);
+            return ticket;
+        }
+
+        List<String> eventsOf(String vehicleRegNumber) {
+            List<String> eventsOfPlate = new ArrayList<>();
+            synchronized (events) {
+                for (String event : events) {
+                    if (event.endsWith(" " + vehicleRegNumber)) {
+                        eventsOfPlate.add(event);
+                    }
+                }
+            }
+            return eventsOfPlate;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.journal.JournalReplayer;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GateJournalTest {
+
+    private Path directory;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("gate-journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void unacknowledgedRecordsAreReadBackTest() throws IOException {
+        //Given
+        Date inTime = new Date(1_000_000L);
+        GateJournal journal = GateJournal.open(directory, 1024 * 1024);
+        long entry = journal.append(JournalRecord.entry("ABCDEF", new ParkingSpot(2, ParkingType.CAR, false), inTime));
+        long exit = journal.append(JournalRecord.exit("GHIJKL", new Date(2_000_000L)));
+        journal.acknowledge(exit);
+        journal.close();
+        //When
+        GateJournal reopened = GateJournal.open(directory, 1024 * 1024);
+        List<JournalRecord> records = reopened.getUnacknowledgedRecords();
+        //Then
+        assertEquals(1, records.size());
+        JournalRecord record = records.get(0);
+        assertEquals(entry, record.getSequence());
+        assertEquals(JournalRecord.Type.ENTRY, record.getType());
+        assertEquals("ABCDEF", record.getVehicleRegNumber());
+        assertEquals(2, record.getParkingSpot().getId());
+        assertEquals(ParkingType.CAR, record.getParkingSpot().getParkingType());
+        assertEquals(inTime, record.getTime());
+        //sequence numbers go on after the recovered records
+        assertTrue(reopened.append(JournalRecord.exit("ABCDEF", new Date())) > exit);
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecordIsCutOffTest() throws IOException {
+        //Given
+        GateJournal journal = GateJournal.open(directory, 1024 * 1024);
+        journal.append(JournalRecord.exit("ABCDEF", new Date()));
+        journal.append(JournalRecord.exit("GHIJKL", new Date()));
+        journal.close();
+        Path segment = segments().get(0);
+        long length = Files.size(segment);
+        //a crash in the middle of the second record
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(length - 3);
+        }
+        //When
+        GateJournal reopened = GateJournal.open(directory, 1024 * 1024);
+        //Then
+        List<JournalRecord> records = reopened.getUnacknowledgedRecords();
+        assertEquals(1, records.size());
+        assertEquals("ABCDEF", records.get(0).getVehicleRegNumber());
+        assertTrue(Files.size(segment) < length - 3);
+        reopened.close();
+    }
+
+    @Test
+    public void corruptedRecordIsSkippedTest() throws IOException {
+        //Given
+        GateJournal journal = GateJournal.open(directory, 1024 * 1024);
+        journal.append(JournalRecord.exit("ABCDEF", new Date()));
+        journal.close();
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(Files.size(segment) - 1);
+            file.write('X');
+        }
+        //When
+        GateJournal reopened = GateJournal.open(directory, 1024 * 1024);
+        //Then
+        assertEquals(0, reopened.getUnacknowledgedRecords().size());
+        reopened.close();
+    }
+
+    @Test
+    public void acknowledgedSegmentsAreDeletedTest() throws IOException {
+        //Given: segments of about 4 records
+        GateJournal journal = GateJournal.open(directory, 150);
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sequences.add(journal.append(JournalRecord.exit("PLATE" + i, new Date())));
+        }
+        int segmentsBefore = segments().size();
+        //When
+        for (long sequence : sequences.subList(0, 18)) {
+            journal.acknowledge(sequence);
+        }
+        journal.checkpoint();
+        //Then
+        assertTrue(segmentsBefore > 2);
+        assertTrue(segments().size() < segmentsBefore);
+        journal.close();
+        GateJournal reopened = GateJournal.open(directory, 150);
+        List<JournalRecord> records = reopened.getUnacknowledgedRecords();
+        assertEquals(2, records.size());
+        assertEquals("PLATE18", records.get(0).getVehicleRegNumber());
+        reopened.close();
+    }
+
+    @Test
+    public void concurrentAppendsTest() throws Exception {
+        //Given
+        GateJournal journal = GateJournal.open(directory, 4096);
+        List<Thread> gates = new ArrayList<>();
+        //When
+        for (int g = 0; g < 8; g++) {
+            final int gate = g;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    try {
+                        journal.append(JournalRecord.exit("G" + gate + "-" + i, new Date()));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            thread.start();
+            gates.add(thread);
+        }
+        for (Thread thread : gates) {
+            thread.join();
+        }
+        journal.close();
+        //Then
+        GateJournal reopened = GateJournal.open(directory, 4096);
+        List<JournalRecord> records = reopened.getUnacknowledgedRecords();
+        assertEquals(800, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).getSequence());
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void replayAcknowledgesAppliedRecordsTest() throws IOException {
+        //Given
+        GateJournal journal = GateJournal.open(directory, 1024 * 1024);
+        journal.append(JournalRecord.exit("ABCDEF", new Date()));
+        journal.append(JournalRecord.exit("GHIJKL", new Date()));
+        journal.close();
+        GateJournal reopened = GateJournal.open(directory, 1024 * 1024);
+        //When: only the first one can be applied
+        int applied = JournalReplayer.replay(reopened, record -> record.getVehicleRegNumber().equals("ABCDEF"));
+        reopened.close();
+        //Then
+        assertEquals(1, applied);
+        GateJournal again = GateJournal.open(directory, 1024 * 1024);
+        assertEquals(1, again.getUnacknowledgedCount());
+        assertEquals("GHIJKL", again.getUnacknowledgedRecords().get(0).getVehicleRegNumber());
+        assertNull(again.getUnacknowledgedRecords().get(0).getParkingSpot());
+        again.close();
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*")) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        segments.sort(Comparator.naturalOrder());
+        return segments;
+    }
+}
@@ -0,0 +1,303 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ActiveTicketRegistry;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.GatePipeline;
+import com.parkit.parkingsystem.service.SpotAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GatePipelineTest {
+
+    private final InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO();
+    private SpotAllocator spotAllocator;
+    private GatePipeline gatePipeline;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            parkingSpots.add(new ParkingSpot(i, ParkingType.CAR, true));
+        }
+        spotAllocator = new SpotAllocator(parkingSpots, new ParkingSpotDAO() {
+            @Override
+            public boolean updateParking(ParkingSpot parkingSpot) {
+                return true;
+            }
+        });
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        ticketDAO.unblock();
+        gatePipeline.close();
+        spotAllocator.close();
+    }
+
+    @Test
+    public void entryThenExitTest() {
+        //Given
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 4, GatePipeline.Backpressure.BLOCK);
+        Date inTime = new Date(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+        //When
+        CompletableFuture<EntryResult> entry = gatePipeline.entry("ABCDEF", ParkingType.CAR, inTime);
+        CompletableFuture<EntryResult> again = gatePipeline.entry("ABCDEF", ParkingType.CAR, inTime);
+        CompletableFuture<ExitResult> exit = gatePipeline.exit("ABCDEF", new Date());
+        //Then
+        assertEquals(EntryResult.Status.ENTERED, entry.join().getStatus());
+        assertEquals(1, entry.join().getParkingSpot().getId());
+        assertEquals(EntryResult.Status.ALREADY_PARKED, again.join().getStatus());
+        assertEquals(ExitResult.Status.EXITED, exit.join().getStatus());
+        assertTrue(exit.join().getFare() > 0);
+        assertEquals(entry.join().getTicket().getId(), exit.join().getTicket().getId());
+        assertEquals(1, ticketDAO.closed.size());
+        assertEquals(3, spotAllocator.countAvailable(ParkingType.CAR));
+        assertEquals(ExitResult.Status.NOT_CLOSED, gatePipeline.exit("ABCDEF", new Date()).join().getStatus());
+    }
+
+    @Test
+    public void fullRingRejectsEventsTest() {
+        //Given: the first batch is stuck in the DB, the ring holds two events
+        ticketDAO.block();
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 2, 1, GatePipeline.Backpressure.REJECT);
+        CompletableFuture<EntryResult> first = gatePipeline.entry("ABCDEF", ParkingType.CAR, new Date());
+        CompletableFuture<EntryResult> second = gatePipeline.entry("GHIJKL", ParkingType.CAR, new Date());
+        //When
+        CompletableFuture<ExitResult> rejected = gatePipeline.exit("ABCDEF", new Date());
+        //Then
+        assertEquals(ExitResult.Status.BUSY, rejected.join().getStatus());
+        assertFalse(first.isDone());
+        ticketDAO.unblock();
+        assertEquals(EntryResult.Status.ENTERED, first.join().getStatus());
+        assertEquals(EntryResult.Status.ENTERED, second.join().getStatus());
+    }
+
+    @Test
+    public void closeWhenInterruptedKeepsInterruptStatusTest() {
+        //Given
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 4, GatePipeline.Backpressure.BLOCK);
+        assertEquals(EntryResult.Status.ENTERED, gatePipeline.entry("ABCDEF", ParkingType.CAR, new Date()).join().getStatus());
+        //When
+        Thread.currentThread().interrupt();
+        gatePipeline.close();
+        //Then: stopped all the same, the caller still sees the interrupt
+        assertTrue(Thread.interrupted());
+        assertThrows(RejectedExecutionException.class, () -> gatePipeline.entry("GHIJKL", ParkingType.CAR, new Date()));
+    }
+
+    @Test
+    public void failedSaveGivesTheSpotBackTest() {
+        //Given
+        ticketDAO.failSaves = true;
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 4, GatePipeline.Backpressure.BLOCK);
+        //When
+        EntryResult entry = gatePipeline.entry("ABCDEF", ParkingType.CAR, new Date()).join();
+        //Then
+        assertEquals(EntryResult.Status.FAILED, entry.getStatus());
+        assertEquals(3, ticketDAO.saveAttempts.get());
+        assertEquals(3, spotAllocator.countAvailable(ParkingType.CAR));
+        assertFalse(ticketDAO.activeTicketRegistry.contains("ABCDEF"));
+    }
+
+    @Test
+    public void firstVisitInOneBatchPaysFullFareTest() {
+        //Given
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 8, GatePipeline.Backpressure.BLOCK);
+        //When
+        ExitResult exit = enterAndExitInOneBatch("ABCDEF");
+        //Then: 2 hours of a car, no discount
+        assertEquals(ExitResult.Status.EXITED, exit.getStatus());
+        assertEquals(3.0, exit.getFare(), 0.001);
+    }
+
+    @Test
+    public void repeatVisitInOneBatchGetsDiscountTest() {
+        //Given
+        ticketDAO.addPastVisit("ABCDEF");
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 8, GatePipeline.Backpressure.BLOCK);
+        //When
+        ExitResult exit = enterAndExitInOneBatch("ABCDEF");
+        //Then: 2 hours of a car, 5% off
+        assertEquals(ExitResult.Status.EXITED, exit.getStatus());
+        assertEquals(2.85, exit.getFare(), 0.001);
+    }
+
+    @Test
+    public void visitsOfABatchCountedWithOneQueryTest() {
+        //Given
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 8, GatePipeline.Backpressure.BLOCK);
+        //When
+        enterAndExitInOneBatch("ABCDEF");
+        //Then: one query for the batch of OTHER, one for the entry and exit of ABCDEF
+        assertEquals(2, ticketDAO.countQueries.get());
+    }
+
+    @Test
+    public void exitBeforeEntryIsNotClosedTest() {
+        //Given
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 4, GatePipeline.Backpressure.BLOCK);
+        Date inTime = new Date(System.currentTimeMillis() - 60 * 60 * 1000);
+        assertEquals(EntryResult.Status.ENTERED, gatePipeline.entry("ABCDEF", ParkingType.CAR, inTime).join().getStatus());
+        //When
+        ExitResult early = gatePipeline.exit("ABCDEF", new Date(inTime.getTime() - 1000)).join();
+        //Then: still parked, its spot taken
+        assertEquals(ExitResult.Status.NOT_CLOSED, early.getStatus());
+        assertTrue(ticketDAO.activeTicketRegistry.contains("ABCDEF"));
+        assertEquals(2, spotAllocator.countAvailable(ParkingType.CAR));
+        assertEquals(ExitResult.Status.EXITED, gatePipeline.exit("ABCDEF", new Date()).join().getStatus());
+        assertEquals(3, spotAllocator.countAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    public void failingBatchIsUndoneTest() {
+        //Given: ABCDEF parked, the batch of OTHER held in the DB, then the counts fail
+        gatePipeline = new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), 8, 8, GatePipeline.Backpressure.BLOCK);
+        assertEquals(EntryResult.Status.ENTERED, gatePipeline.entry("ABCDEF", ParkingType.CAR, new Date()).join().getStatus());
+        ticketDAO.block();
+        CompletableFuture<EntryResult> other = gatePipeline.entry("OTHER", ParkingType.CAR, new Date());
+        await(() -> ticketDAO.saveAttempts.get() == 2);
+        ticketDAO.failCounts = true;
+        //When: an entry and an exit in the same failing batch
+        CompletableFuture<EntryResult> entry = gatePipeline.entry("GHIJKL", ParkingType.CAR, new Date());
+        CompletableFuture<ExitResult> exit = gatePipeline.exit("ABCDEF", new Date());
+        await(() -> !ticketDAO.activeTicketRegistry.contains("ABCDEF"));
+        ticketDAO.unblock();
+        //Then: nothing written, the entry gives its spot back and the exit its ticket
+        assertEquals(EntryResult.Status.ENTERED, other.join().getStatus());
+        assertEquals(EntryResult.Status.FAILED, entry.join().getStatus());
+        assertEquals(ExitResult.Status.NOT_CLOSED, exit.join().getStatus());
+        assertEquals(2, ticketDAO.saveAttempts.get());
+        assertEquals(0, ticketDAO.closed.size());
+        assertTrue(ticketDAO.activeTicketRegistry.contains("ABCDEF"));
+        assertFalse(ticketDAO.activeTicketRegistry.contains("GHIJKL"));
+        assertEquals(1, spotAllocator.countAvailable(ParkingType.CAR));
+    }
+
+    /**
+     * hold the DB on the entry of another vehicle until the entry and the exit are both allocated, so that they
+     * are written in the same batch
+     */
+    private ExitResult enterAndExitInOneBatch(String vehicleRegNumber) {
+        long inTime = 1_700_000_000_000L;
+        ticketDAO.block();
+        CompletableFuture<EntryResult> other = gatePipeline.entry("OTHER", ParkingType.CAR, new Date(inTime));
+        await(() -> ticketDAO.saveAttempts.get() == 1);
+        CompletableFuture<EntryResult> entry = gatePipeline.entry(vehicleRegNumber, ParkingType.CAR, new Date(inTime));
+        await(() -> ticketDAO.activeTicketRegistry.contains(vehicleRegNumber));
+        CompletableFuture<ExitResult> exit = gatePipeline.exit(vehicleRegNumber, new Date(inTime + 2 * 60 * 60 * 1000));
+        await(() -> !ticketDAO.activeTicketRegistry.contains(vehicleRegNumber));
+        ticketDAO.unblock();
+        assertEquals(EntryResult.Status.ENTERED, other.join().getStatus());
+        assertEquals(EntryResult.Status.ENTERED, entry.join().getStatus());
+        assertEquals(2, ticketDAO.saveAttempts.get());
+        return exit.join();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met after 10 seconds");
+            Thread.yield();
+        }
+    }
+
+    /**
+     * saves in memory, each batch of saves can be held back or fail
+     */
+    static class InMemoryTicketDAO extends TicketDAO {
+        private final List<Ticket> saved = Collections.synchronizedList(new ArrayList<>());
+        private final List<Ticket> closed = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, Integer> ticketCounts = new ConcurrentHashMap<>();
+        private final AtomicInteger saveAttempts = new AtomicInteger();
+        private final AtomicInteger countQueries = new AtomicInteger();
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+        private volatile boolean failSaves;
+        private volatile boolean failCounts;
+
+        InMemoryTicketDAO() {
+            activeTicketRegistry = new ActiveTicketRegistry(Collections.emptyList());
+        }
+
+        void block() {
+            blocked = new CountDownLatch(1);
+        }
+
+        void unblock() {
+            blocked.countDown();
+        }
+
+        void addPastVisit(String vehicleRegNumber) {
+            ticketCounts.merge(vehicleRegNumber, 1, Integer::sum);
+        }
+
+        @Override
+        public int getNbTicket(String vehicleRegNumber) {
+            return ticketCounts.getOrDefault(vehicleRegNumber, 0);
+        }
+
+        @Override
+        public Map<String, Integer> getNbTickets(Collection<String> vehicleRegNumbers) {
+            countQueries.incrementAndGet();
+            if (failCounts) {
+                throw new IllegalStateException("Counting failed");
+            }
+            Map<String, Integer> counts = new HashMap<>();
+            for (String vehicleRegNumber : vehicleRegNumbers) {
+                counts.put(vehicleRegNumber, getNbTicket(vehicleRegNumber));
+            }
+            return counts;
+        }
+
+        @Override
+        public boolean saveTickets(List<Ticket> tickets) {
+            saveAttempts.incrementAndGet();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failSaves) {
+                return false;
+            }
+            for (Ticket ticket : tickets) {
+                saved.add(ticket);
+                ticket.setId(saved.size());
+                addPastVisit(ticket.getVehicleRegNumber());
+            }
+            return true;
+        }
+
+        @Override
+        public boolean closeTickets(List<Ticket> tickets) {
+            closed.addAll(tickets);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.benchmark.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    /**
+     * highest value of the bucket of this value, read as the lower of two recorded values
+     */
+    private static long bucketOf(long value) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE);
+        return histogram.getValueAtPercentile(50);
+    }
+
+    @Test
+    public void valuesBelow256HaveOneBucketEachTest() {
+        //When & Then
+        for (long value = 0; value < 256; value++) {
+            assertEquals(value, bucketOf(value));
+        }
+    }
+
+    @Test
+    public void bucketsAround256And512Test() {
+        //Then: two values per bucket from 256, four from 512
+        assertEquals(255, bucketOf(255));
+        assertEquals(257, bucketOf(256));
+        assertEquals(257, bucketOf(257));
+        assertEquals(259, bucketOf(258));
+        assertEquals(511, bucketOf(510));
+        assertEquals(511, bucketOf(511));
+        assertEquals(515, bucketOf(512));
+        assertEquals(515, bucketOf(515));
+        assertEquals(519, bucketOf(516));
+        assertEquals(1023, bucketOf(1023));
+        assertEquals(1031, bucketOf(1024));
+    }
+
+    @Test
+    public void veryLargeValuesTest() {
+        //Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        //When
+        histogram.record(1L << 62);
+        histogram.record(Long.MAX_VALUE);
+        //Then: the last bucket ends at Long.MAX_VALUE
+        assertEquals((1L << 62) + (1L << 55) - 1, histogram.getValueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(2, histogram.getTotalCount());
+    }
+
+    @Test
+    public void bucketWithinOnePartIn128OfTheValueTest() {
+        //Given
+        Random random = new Random(11);
+        //When & Then
+        for (int i = 0; i < 10_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long highest = bucketOf(value);
+            assertTrue(highest >= value, value + " above its bucket " + highest);
+            assertTrue(highest - value <= value / 128, value + " too far from its bucket " + highest);
+        }
+    }
+
+    @Test
+    public void percentilesTest() {
+        //Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        //When
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        //Then
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(200, histogram.getValueAtPercentile(20));
+        assertEquals(501, histogram.getValueAtPercentile(50));
+        assertEquals(991, histogram.getValueAtPercentile(99));
+        //the bucket of 1000 ends at 1003, never above the max recorded
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void addMergesHistogramsTest() {
+        //Given
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(100);
+        first.record(-5);
+        second.record(300);
+        second.record(700);
+        //When
+        first.add(second);
+        //Then: negative values count as 0
+        assertEquals(4, first.getTotalCount());
+        assertEquals(700, first.getMax());
+        assertEquals(275, first.getMean(), 1e-9);
+        assertEquals(0, first.getValueAtPercentile(25));
+        assertEquals(100, first.getValueAtPercentile(50));
+        assertEquals(301, first.getValueAtPercentile(75));
+        assertEquals(700, first.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptyHistogramTest() {
+        //Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        //Then
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0.0, histogram.getMean());
+    }
+}
@@ -0,0 +1,166 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.benchmark.LoadTrace;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadTraceTest {
+
+    private static LoadTrace trace(String lines) throws IOException {
+        Path file = Files.createTempFile("load-trace", ".csv");
+        try {
+            Files.write(file, lines.getBytes(StandardCharsets.UTF_8));
+            return LoadTrace.read(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertSameEvents(List<LoadTrace.Event> expected, List<LoadTrace.Event> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+            assertEquals(expected.get(i).getType(), actual.get(i).getType());
+            assertEquals(expected.get(i).getVehicleRegNumber(), actual.get(i).getVehicleRegNumber());
+            assertEquals(expected.get(i).getParkingType(), actual.get(i).getParkingType());
+        }
+    }
+
+    @Test
+    public void syntheticTraceTest() {
+        //When: 10 hours of 100 arrivals an hour
+        LoadTrace trace = LoadTrace.synthetic(10, 100, 90, 0.5, 0.3, 0.2, 42);
+        //Then
+        assertEquals(10 * 3_600_000L, trace.getDuration());
+        Set<String> parked = new HashSet<>();
+        Set<String> left = new HashSet<>();
+        int arrivals = 0;
+        int repeats = 0;
+        int bikes = 0;
+        long previousTime = 0;
+        for (LoadTrace.Event event : trace.getEvents()) {
+            assertTrue(event.getTime() >= previousTime);
+            assertTrue(event.getTime() < trace.getDuration());
+            previousTime = event.getTime();
+            if (event.getType() == LoadTrace.Type.ENTRY) {
+                arrivals++;
+                assertTrue(parked.add(event.getVehicleRegNumber()), event.getVehicleRegNumber() + " entered twice");
+                if (left.remove(event.getVehicleRegNumber())) {
+                    repeats++;
+                }
+                if (event.getParkingType() == ParkingType.BIKE) {
+                    bikes++;
+                }
+            } else {
+                assertTrue(parked.remove(event.getVehicleRegNumber()), event.getVehicleRegNumber() + " left unparked");
+                left.add(event.getVehicleRegNumber());
+            }
+        }
+        assertTrue(arrivals > 850 && arrivals < 1150, arrivals + " arrivals");
+        assertTrue(repeats > 0);
+        assertTrue(bikes > 0 && bikes < arrivals / 2);
+        assertTrue(trace.getPeakOccupancy(ParkingType.CAR) > 0);
+    }
+
+    @Test
+    public void syntheticTraceDependsOnlyOnItsSeedTest() {
+        //When
+        LoadTrace first = LoadTrace.synthetic(2, 200, 60, 0.8, 0.5, 0.1, 7);
+        LoadTrace second = LoadTrace.synthetic(2, 200, 60, 0.8, 0.5, 0.1, 7);
+        //Then
+        assertSameEvents(first.getEvents(), second.getEvents());
+    }
+
+    @Test
+    public void syntheticTraceWithoutRepeatsOrBikesTest() {
+        //When
+        LoadTrace trace = LoadTrace.synthetic(5, 100, 30, 0, 0, 0, 3);
+        //Then: every plate enters once, every stay is of the mean
+        Map<String, Long> entries = new HashMap<>();
+        for (LoadTrace.Event event : trace.getEvents()) {
+            assertEquals(ParkingType.CAR, event.getParkingType());
+            if (event.getType() == LoadTrace.Type.ENTRY) {
+                assertEquals(null, entries.put(event.getVehicleRegNumber(), event.getTime()));
+            } else {
+                long stay = event.getTime() - entries.get(event.getVehicleRegNumber());
+                assertTrue(Math.abs(stay - 30 * 60_000L) <= 1, "stay of " + stay);
+            }
+        }
+        assertEquals(0, trace.getPeakOccupancy(ParkingType.BIKE));
+    }
+
+    @Test
+    public void csvRoundTripTest() throws IOException {
+        //Given
+        LoadTrace trace = LoadTrace.synthetic(3, 150, 45, 0.7, 0.4, 0.3, 5);
+        Path file = Files.createTempFile("load-trace", ".csv");
+        try {
+            //When
+            trace.write(file);
+            LoadTrace read = LoadTrace.read(file);
+            //Then
+            assertSameEvents(trace.getEvents(), read.getEvents());
+            List<LoadTrace.Event> events = read.getEvents();
+            assertEquals(events.get(events.size() - 1).getTime() + 1, read.getDuration());
+            assertEquals(trace.getPeakOccupancy(ParkingType.CAR), read.getPeakOccupancy(ParkingType.CAR));
+            assertEquals(trace.getPeakOccupancy(ParkingType.BIKE), read.getPeakOccupancy(ParkingType.BIKE));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void readSortsAndDefaultsToCarsTest() throws IOException {
+        //When
+        LoadTrace trace = trace("#timeMillis,type,plate,vehicleType\n"
+                + "\n"
+                + "5000,EXIT,ABCDEF,BIKE\n"
+                + " 1000 , ENTRY , ABCDEF , BIKE \n"
+                + "2000,ENTRY,GHIJKL\n"
+                + "3000,ENTRY,MNOPQR,\n");
+        //Then
+        List<LoadTrace.Event> events = trace.getEvents();
+        assertEquals(4, events.size());
+        assertEquals(1000, events.get(0).getTime());
+        assertEquals("ABCDEF", events.get(0).getVehicleRegNumber());
+        assertEquals(ParkingType.BIKE, events.get(0).getParkingType());
+        assertEquals(ParkingType.CAR, events.get(1).getParkingType());
+        assertEquals(ParkingType.CAR, events.get(2).getParkingType());
+        assertEquals(LoadTrace.Type.EXIT, events.get(3).getType());
+        assertEquals(5001, trace.getDuration());
+        assertEquals(2, trace.getPeakOccupancy(ParkingType.CAR));
+        assertEquals(1, trace.getPeakOccupancy(ParkingType.BIKE));
+    }
+
+    @Test
+    public void readEmptyTraceTest() throws IOException {
+        //When
+        LoadTrace trace = trace("#timeMillis,type,plate,vehicleType\n");
+        //Then
+        assertTrue(trace.getEvents().isEmpty());
+        assertEquals(0, trace.getDuration());
+        assertFalse(trace.getPeakOccupancy(ParkingType.CAR) > 0);
+    }
+
+    @Test
+    public void readInvalidLineTest() {
+        //Then
+        assertThrows(IOException.class, () -> trace("1000,ENTRY\n"));
+        assertThrows(IllegalArgumentException.class, () -> trace("1000,PARK,ABCDEF\n"));
+    }
+}
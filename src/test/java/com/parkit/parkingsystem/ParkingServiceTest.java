@@ -1,10 +1,17 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ActiveTicketRegistry;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.model.EntryResult;
+import com.parkit.parkingsystem.model.ExitResult;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculator;
+import com.parkit.parkingsystem.service.ParkingEventListener;
 import com.parkit.parkingsystem.service.ParkingService;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,11 +22,19 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collections;
 import java.util.Date;
 
 import static junit.framework.Assert.assertNotNull;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -60,18 +75,17 @@ public class ParkingServiceTest {
     public void processExitingVehicleTest() throws Exception {
         // Arrange
         Ticket ticket = getTicket();
-        ticket.setOutTime(null); // OUT_TIME = null
+        ticket.getParkingSpot().setAvailable(true);
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket);
-        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1);
-        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
+        when(ticketDAO.closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean())).thenReturn(ticket);
         // Act
         parkingService.processExitingVehicle();
         //Verify
         verify(inputReaderUtil, times(1)).readVehicleRegistrationNumber();
-        verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
-        verify(ticketDAO, times(1)).updateTicket(any(Ticket.class));
-        verify(parkingSpotDAO, times(1)).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO, times(1)).closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean());
+        verify(parkingSpotDAO, times(1)).onParkingUpdated(ticket.getParkingSpot());
+        verify(ticketDAO, never()).getNbTicket("ABCDEF");
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
         assertNotNull(ticket.getOutTime());
     }
 
@@ -80,30 +94,295 @@ public class ParkingServiceTest {
         //Arrange
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
         when(inputReaderUtil.readSelection()).thenReturn(1);
-        when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(new ParkingSpot(1, ParkingType.CAR, false));
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(TicketDAO.SaveStatus.SAVED);
         //Act
         parkingService.processIncomingVehicle();
         //Assert
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(parkingSpotDAO, Mockito.times(1)).claimNextSpot(ParkingType.CAR);
         verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
     }
 
+    @Test
+    public void testParkingEventListenerToldOfExit() throws Exception {
+        //Arrange
+        Ticket ticket = getTicket();
+        ParkingEventListener parkingEventListener = mock(ParkingEventListener.class);
+        parkingService.addParkingEventListener(parkingEventListener);
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(ticketDAO.closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean())).thenReturn(ticket);
+        //Act
+        parkingService.processExitingVehicle();
+        //Verify
+        verify(parkingEventListener, times(1)).onExit(ticket);
+        verify(parkingEventListener, never()).onEntry(any(Ticket.class));
+    }
+
+    @Test
+    public void testProcessIncomingVehicleParkingFull() throws Exception {
+        //Arrange
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(inputReaderUtil.readSelection()).thenReturn(2);
+        when(parkingSpotDAO.claimNextSpot(ParkingType.BIKE)).thenReturn(null);
+        //Act
+        parkingService.processIncomingVehicle();
+        //Assert
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void testProcessIncomingVehicleAlreadyParked() throws Exception {
+        //Arrange
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(ticketDAO.isVehicleParked("ABCDEF")).thenReturn(true);
+        //Act
+        parkingService.processIncomingVehicle();
+        //Assert
+        verify(parkingSpotDAO, never()).claimNextSpot(any(ParkingType.class));
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void testProcessIncomingVehicleSaveFailureFreesSpot() throws Exception {
+        //Arrange
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(parkingSpot);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(TicketDAO.SaveStatus.FAILED);
+        //Act
+        parkingService.processIncomingVehicle();
+        //Assert
+        verify(parkingSpotDAO, times(1)).updateParking(parkingSpot);
+        assertThat(parkingSpot.isAvailable()).isTrue();
+    }
+
+    @Test
+    public void testProcessIncomingVehicleJournaledWhenSaveFails() throws Exception {
+        //Arrange
+        Path journalDirectory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = GateJournal.open(journalDirectory, 1024 * 1024);
+        parkingService.setGateJournal(gateJournal);
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(parkingSpot);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(TicketDAO.SaveStatus.FAILED, TicketDAO.SaveStatus.SAVED);
+        //Act: the DB is down, the vehicle enters anyway
+        parkingService.processIncomingVehicle();
+        gateJournal.close();
+        //Assert
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+        //Act: next startup, the DB is back
+        GateJournal reopened = GateJournal.open(journalDirectory, 1024 * 1024);
+        parkingService.setGateJournal(reopened);
+        int replayed = parkingService.replayJournal();
+        //Assert
+        assertThat(replayed).isEqualTo(1);
+        assertThat(reopened.getUnacknowledgedCount()).isEqualTo(0);
+        verify(ticketDAO, times(2)).saveTicket(any(Ticket.class));
+        verify(parkingSpotDAO, times(1)).updateParking(any(ParkingSpot.class));
+        reopened.close();
+    }
+
+    @Test
+    public void testConcurrentEntryOfSameVehicleIsRefusedAndFreesSpot() throws Exception {
+        //Arrange: a concurrent entry of the same vehicle saves its ticket first
+        Path journalDirectory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = GateJournal.open(journalDirectory, 1024 * 1024);
+        parkingService.setGateJournal(gateJournal);
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(parkingSpot);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(TicketDAO.SaveStatus.ALREADY_PARKED);
+        //Act
+        EntryResult result = parkingService.entry("ABCDEF", ParkingType.CAR);
+        //Assert: nothing left to replay
+        assertThat(result.getStatus()).isEqualTo(EntryResult.Status.ALREADY_PARKED);
+        verify(parkingSpotDAO, times(1)).updateParking(parkingSpot);
+        assertThat(parkingSpot.isAvailable()).isTrue();
+        assertThat(gateJournal.getUnacknowledgedCount()).isEqualTo(0);
+        gateJournal.close();
+    }
+
+    @Test
+    public void testExitKeptInJournalWhenDataBaseIsDown() throws Exception {
+        //Arrange: no active ticket registry, the DB cannot be reached
+        Path journalDirectory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = GateJournal.open(journalDirectory, 1024 * 1024);
+        TicketDAO unreachableTicketDAO = new TicketDAO();
+        unreachableTicketDAO.dataBaseConfig = mock(DataBaseConfig.class);
+        when(unreachableTicketDAO.dataBaseConfig.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ParkingService outageParkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, unreachableTicketDAO);
+        outageParkingService.setGateJournal(gateJournal);
+        //Act
+        ExitResult result = outageParkingService.exit("ABCDEF", new Date());
+        //Assert
+        assertThat(result.getStatus()).isEqualTo(ExitResult.Status.JOURNALED);
+        assertThat(gateJournal.getUnacknowledgedCount()).isEqualTo(1);
+        gateJournal.close();
+    }
+
+    @Test
+    public void testExitAfterJournaledEntryKeptInJournal() throws Exception {
+        //Arrange: an active ticket registry, the DB cannot be reached
+        Path journalDirectory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = GateJournal.open(journalDirectory, 1024 * 1024);
+        TicketDAO unreachableTicketDAO = new TicketDAO();
+        unreachableTicketDAO.dataBaseConfig = mock(DataBaseConfig.class);
+        unreachableTicketDAO.activeTicketRegistry = new ActiveTicketRegistry(Collections.emptyList());
+        when(unreachableTicketDAO.dataBaseConfig.getConnection()).thenThrow(new SQLException("Connection refused"));
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(new ParkingSpot(1, ParkingType.CAR, false));
+        ParkingService outageParkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, unreachableTicketDAO);
+        outageParkingService.setGateJournal(gateJournal);
+        //Act
+        EntryResult entry = outageParkingService.entry("ABCDEF", ParkingType.CAR, new Date());
+        ExitResult exit = outageParkingService.exit("ABCDEF", new Date());
+        //Assert: both are replayed on the next startup
+        assertThat(entry.getStatus()).isEqualTo(EntryResult.Status.JOURNALED);
+        assertThat(exit.getStatus()).isEqualTo(ExitResult.Status.JOURNALED);
+        assertThat(gateJournal.getUnacknowledgedCount()).isEqualTo(2);
+        gateJournal.close();
+    }
+
+    @Test
+    public void testExitOfVehicleNotParkedDroppedFromJournal() throws Exception {
+        //Arrange
+        Path journalDirectory = Files.createTempDirectory("gate-journal");
+        GateJournal gateJournal = GateJournal.open(journalDirectory, 1024 * 1024);
+        parkingService.setGateJournal(gateJournal);
+        when(ticketDAO.closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean())).thenReturn(null);
+        when(ticketDAO.hasOpenTicket("ABCDEF")).thenReturn(false);
+        //Act
+        ExitResult result = parkingService.exit("ABCDEF", new Date());
+        //Assert
+        assertThat(result.getStatus()).isEqualTo(ExitResult.Status.NOT_CLOSED);
+        assertThat(gateJournal.getUnacknowledgedCount()).isEqualTo(0);
+        gateJournal.close();
+    }
+
     @Test
     public void processExitingVehicleTestUnableUpdate() throws Exception {
         // Arrange
-        Ticket ticket = getTicket();
-        ticket.setOutTime(null); // OUT_TIME = null
         when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
-        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket);
-        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1);
-        when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(false);
+        when(ticketDAO.closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean())).thenReturn(null);
         // Act
         parkingService.processExitingVehicle();
         // Assert
         verify(inputReaderUtil, times(1)).readVehicleRegistrationNumber();
-        verify(ticketDAO, times(1)).getNbTicket("ABCDEF");
-        verify(ticketDAO, times(1)).updateTicket(any(Ticket.class));
+        verify(ticketDAO, times(1)).closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean());
+        verify(parkingSpotDAO, never()).onParkingUpdated(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void testEntryReturnsSpotAndTicket() throws Exception {
+        //Arrange
+        Date inTime = new Date();
+        ParkingSpot parkingSpot = new ParkingSpot(2, ParkingType.CAR, false);
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(parkingSpot);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(TicketDAO.SaveStatus.SAVED);
+        //Act
+        EntryResult result = parkingService.entry("ABCDEF", ParkingType.CAR, inTime);
+        //Assert
+        assertThat(result.getStatus()).isEqualTo(EntryResult.Status.ENTERED);
+        assertThat(result.getParkingSpot()).isEqualTo(parkingSpot);
+        assertThat(result.getTicket().getVehicleRegNumber()).isEqualTo("ABCDEF");
+        assertThat(result.getTicket().getInTime()).isEqualTo(inTime);
+        assertThat(result.isRecurringUser()).isTrue();
+        verifyNoInteractions(inputReaderUtil);
+    }
+
+    @Test
+    public void testEntryFailsWhenSpotCannotBeClaimed() throws Exception {
+        //Arrange
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenThrow(new SQLException("Connection refused"));
+        //Act
+        EntryResult result = parkingService.entry("ABCDEF", ParkingType.CAR, new Date());
+        //Assert: a DB error, not a full parking
+        assertThat(result.getStatus()).isEqualTo(EntryResult.Status.FAILED);
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void testEntryRefusedWhenParkingFull() throws Exception {
+        //Arrange
+        when(parkingSpotDAO.claimNextSpot(ParkingType.BIKE)).thenReturn(null);
+        //Act
+        EntryResult result = parkingService.entry("ABCDEF", ParkingType.BIKE, new Date());
+        //Assert
+        assertThat(result.getStatus()).isEqualTo(EntryResult.Status.NO_SPOT_AVAILABLE);
+        assertThat(result.isEntered()).isFalse();
+        assertNull(result.getTicket());
+        verify(ticketDAO, never()).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void testExitReturnsFare() {
+        //Arrange
+        Date outTime = new Date();
+        Ticket ticket = getTicket();
+        ticket.setPrice(4.5);
+        when(ticketDAO.closeTicket(eq("ABCDEF"), eq(outTime), any(FareCalculator.class), eq(true))).thenReturn(ticket);
+        //Act
+        ExitResult result = parkingService.exit("ABCDEF", outTime);
+        //Assert
+        assertThat(result.getStatus()).isEqualTo(ExitResult.Status.EXITED);
+        assertThat(result.getFare()).isEqualTo(4.5);
+        assertThat(result.getTicket()).isEqualTo(ticket);
+        verify(parkingSpotDAO, times(1)).onParkingUpdated(ticket.getParkingSpot());
+        //the console fare is not shared with the callers of exit
+        assertThat(parkingService.someOtherMethod()).isEqualTo(0.0);
+        verifyNoInteractions(inputReaderUtil);
+    }
+
+    @Test
+    public void testExitWithoutOpenTicket() {
+        //Arrange
+        when(ticketDAO.closeTicket(eq("ABCDEF"), any(Date.class), any(FareCalculator.class), anyBoolean())).thenReturn(null);
+        //Act
+        ExitResult result = parkingService.exit("ABCDEF", new Date());
+        //Assert
+        assertThat(result.getStatus()).isEqualTo(ExitResult.Status.NOT_CLOSED);
+        assertThat(result.getFare()).isEqualTo(0.0);
+        verify(parkingSpotDAO, never()).onParkingUpdated(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void testLostTicketInsertGivesTheSpotBack() {
+        //Arrange
+        Ticket ticket = getTicket();
+        //Act
+        parkingService.onLostWrite(ticket, true);
+        parkingService.onLostWrite(getTicket(), false);
+        //Assert
+        assertThat(ticket.getParkingSpot().isAvailable()).isTrue();
+        verify(parkingSpotDAO, times(1)).updateParking(ticket.getParkingSpot());
+        verifyNoMoreInteractions(parkingSpotDAO);
+    }
+
+    @Test
+    public void testEntryAndExitTakeTheTimeOfTheClock() throws Exception {
+        //Arrange
+        Instant now = Instant.parse("2024-03-01T08:00:00Z");
+        parkingService.setClock(Clock.fixed(now, ZoneId.of("UTC")));
+        when(parkingSpotDAO.claimNextSpot(ParkingType.CAR)).thenReturn(new ParkingSpot(2, ParkingType.CAR, false));
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(TicketDAO.SaveStatus.SAVED);
+        when(ticketDAO.closeTicket(eq("ABCDEF"), eq(Date.from(now)), any(FareCalculator.class), eq(true))).thenReturn(getTicket());
+        //Act
+        EntryResult entry = parkingService.entry("ABCDEF", ParkingType.CAR);
+        ExitResult exit = parkingService.exit("ABCDEF");
+        //Assert
+        assertThat(entry.getTicket().getInTime()).isEqualTo(Date.from(now));
+        assertThat(exit.getStatus()).isEqualTo(ExitResult.Status.EXITED);
+    }
+
+    @Test
+    public void testEntryRejectsEmptyVehicleRegNumber() {
+        //Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> parkingService.entry(" ", ParkingType.CAR, new Date()));
+        verifyNoInteractions(parkingSpotDAO, ticketDAO);
     }
 
     @Test
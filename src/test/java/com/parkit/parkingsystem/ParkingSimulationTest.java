@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.simulation.DemandModel;
+import com.parkit.parkingsystem.simulation.ParkingSimulation;
+import com.parkit.parkingsystem.simulation.SimulationReport;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParkingSimulationTest {
+
+    private static final Instant MONDAY = Instant.parse("2024-03-04T00:00:00Z");
+
+    private SimulationReport simulate(int cars, int bikes, double arrivalsPerDay, long seed) {
+        Map<ParkingType, Integer> spots = new EnumMap<>(ParkingType.class);
+        spots.put(ParkingType.CAR, cars);
+        spots.put(ParkingType.BIKE, bikes);
+        DemandModel demandModel = new DemandModel(arrivalsPerDay, 0.5, 120, 0.8, 0.5, 0.1);
+        return ParkingSimulation.inMemory(spots, demandModel, new FareCalculatorService(), MONDAY, ZoneId.of("UTC"), seed)
+                .run(Duration.ofDays(2), Duration.ofHours(1));
+    }
+
+    @Test
+    public void occupancyFollowsEntriesAndExitsTest() {
+        //When
+        SimulationReport report = simulate(10, 2, 200, 42);
+        //Then
+        assertEquals(48, report.getIntervals().size());
+        int parked = 0;
+        for (SimulationReport.Interval interval : report.getIntervals()) {
+            parked += interval.getEntries() - interval.getExits();
+            assertEquals(parked, interval.getOccupancy(ParkingType.CAR) + interval.getOccupancy(ParkingType.BIKE));
+            assertTrue(interval.getPeakOccupancy(ParkingType.CAR) <= 10);
+            assertTrue(interval.getPeakOccupancy(ParkingType.BIKE) <= 2);
+        }
+        //more demand than spots in the morning
+        assertTrue(report.getRefused() > 0);
+        assertEquals(10, report.getPeakOccupancy(ParkingType.CAR));
+        assertTrue(report.getRevenue() > 0);
+    }
+
+    @Test
+    public void largeParkingRefusesNobodyTest() {
+        //When
+        SimulationReport report = simulate(1000, 100, 200, 42);
+        //Then
+        assertEquals(0, report.getRefused());
+        assertTrue(report.getEntries() > 300);
+        assertTrue(report.getPeakOccupancy(ParkingType.CAR) < 1000);
+    }
+
+    @Test
+    public void sameSeedGivesSameRunTest() {
+        //When
+        SimulationReport first = simulate(10, 2, 200, 7);
+        SimulationReport second = simulate(10, 2, 200, 7);
+        //Then
+        assertEquals(first.getEntries(), second.getEntries());
+        assertEquals(first.getRefused(), second.getRefused());
+        assertEquals(first.getRevenue(), second.getRevenue(), 0.001);
+    }
+}
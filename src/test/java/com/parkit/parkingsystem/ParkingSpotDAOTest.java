@@ -4,6 +4,7 @@ import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotIndex;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,9 +17,11 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 
 import static junit.framework.Assert.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -135,4 +138,140 @@ public class ParkingSpotDAOTest {
         //When
         parkingSpotDAO.getNextAvailableSlot(parkingType);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetNextAvailableSlot_FromIndex() throws Exception {
+        //Given
+        ParkingSpotDAO indexedParkingSpotDAO = new ParkingSpotDAO();
+        indexedParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        indexedParkingSpotDAO.parkingSpotIndex = new ParkingSpotIndex(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, false),
+                new ParkingSpot(2, ParkingType.CAR, true),
+                new ParkingSpot(3, ParkingType.CAR, true),
+                new ParkingSpot(4, ParkingType.BIKE, false)));
+        //When
+        int carSlot = indexedParkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+        int bikeSlot = indexedParkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE);
+        //Then
+        assertEquals(2, carSlot);
+        assertEquals(-1, bikeSlot);
+        //Verify
+        verify(dataBaseConfig, never()).getConnection();
+    }
+
+    @Test
+    public void testUpdateParking_WritesThroughIndex() throws Exception {
+        //Given
+        ParkingSpotDAO indexedParkingSpotDAO = new ParkingSpotDAO();
+        indexedParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        indexedParkingSpotDAO.parkingSpotIndex = new ParkingSpotIndex(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, true),
+                new ParkingSpot(2, ParkingType.CAR, true)));
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+        //When
+        indexedParkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+        //Then
+        assertEquals(2, indexedParkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+        //When
+        indexedParkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, true));
+        //Then
+        assertEquals(1, indexedParkingSpotDAO.getNextAvailableSlot(ParkingType.CAR));
+    }
+
+    @Test
+    public void testLoadParkingSpotIndex() throws Exception {
+        //Given
+        ParkingSpotDAO indexedParkingSpotDAO = new ParkingSpotDAO();
+        indexedParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_PARKING_SPOTS)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getInt(1)).thenReturn(1, 4);
+        when(resultSet.getBoolean(2)).thenReturn(false, true);
+        when(resultSet.getString(3)).thenReturn("CAR", "BIKE");
+        //When
+        ParkingSpotIndex parkingSpotIndex = indexedParkingSpotDAO.loadParkingSpotIndex();
+        //Then
+        assertEquals(0, parkingSpotIndex.countAvailable(ParkingType.CAR));
+        assertEquals(4, indexedParkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+    }
+
+    @Test
+    public void testClaimNextSpot_LocksThenTakesSpot() throws Exception {
+        //Given
+        ParkingSpotDAO claimingParkingSpotDAO = new ParkingSpotDAO();
+        claimingParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        PreparedStatement updateStatement = mock(PreparedStatement.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT)).thenReturn(preparedStatement);
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(updateStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(2);
+        //When
+        ParkingSpot parkingSpot = claimingParkingSpotDAO.claimNextSpot(ParkingType.CAR);
+        //Then
+        assertEquals(2, parkingSpot.getId());
+        assertFalse(parkingSpot.isAvailable());
+        //Verify: one query and one update in one transaction
+        verify(preparedStatement).setString(1, "CAR");
+        verify(updateStatement).setBoolean(1, false);
+        verify(updateStatement).setInt(2, 2);
+        verify(connection).setAutoCommit(false);
+        verify(connection).commit();
+        verify(connection, never()).prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+    }
+
+    @Test
+    public void testClaimNextSpot_NullWhenParkingFull() throws Exception {
+        //Given
+        ParkingSpotDAO claimingParkingSpotDAO = new ParkingSpotDAO();
+        claimingParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+        //When
+        ParkingSpot parkingSpot = claimingParkingSpotDAO.claimNextSpot(ParkingType.BIKE);
+        //Then
+        assertEquals(null, parkingSpot);
+        verify(connection, never()).prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+    }
+
+    @Test
+    public void testClaimNextSpot_ThrowsOnDataBaseError() throws Exception {
+        //Given
+        ParkingSpotDAO claimingParkingSpotDAO = new ParkingSpotDAO();
+        claimingParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.LOCK_NEXT_PARKING_SPOT)).thenThrow(new SQLException("Lock timeout"));
+        //When
+        assertThrows(SQLException.class, () -> claimingParkingSpotDAO.claimNextSpot(ParkingType.CAR));
+        //Then
+        verify(connection).rollback();
+        verify(connection).setAutoCommit(true);
+        verify(dataBaseConfig).closeConnection(connection);
+    }
+
+    @Test
+    public void testClaimNextSpot_FromIndexWhenParkingFull() throws Exception {
+        //Given
+        ParkingSpotDAO claimingParkingSpotDAO = new ParkingSpotDAO();
+        claimingParkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        claimingParkingSpotDAO.parkingSpotIndex = new ParkingSpotIndex(Arrays.asList(
+                new ParkingSpot(4, ParkingType.BIKE, true)));
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.CLAIM_PARKING_SPOT)).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+        //When
+        ParkingSpot first = claimingParkingSpotDAO.claimNextSpot(ParkingType.BIKE);
+        ParkingSpot second = claimingParkingSpotDAO.claimNextSpot(ParkingType.BIKE);
+        //Then
+        assertEquals(4, first.getId());
+        assertEquals(null, second);
+        verify(connection, never()).prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
+    }
+}
@@ -0,0 +1,138 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SummaryPeriod;
+import com.parkit.parkingsystem.dao.ParkingSummaryDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.ParkingSummary;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingStatistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ParkingStatisticsTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Mock
+    private ParkingSummaryDAO parkingSummaryDAO;
+    private ParkingStatistics parkingStatistics;
+    //start of the current hour, in the retention window
+    private long hour;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        parkingStatistics = new ParkingStatistics(48, 90, ZoneOffset.UTC);
+        parkingStatistics.parkingSummaryDAO = parkingSummaryDAO;
+        hour = System.currentTimeMillis() / HOUR * HOUR;
+    }
+
+    private Ticket getTicket(ParkingType parkingType, long inTime, long outTime, double price) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(outTime < 0 ? null : new Date(outTime));
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    @Test
+    public void entriesAndExitsAreSummedByHourTest() {
+        //Given
+        long inTime = hour - 2 * HOUR + 10 * 60 * 1000;
+        long outTime = hour + 5 * 60 * 1000;
+        //When: two cars leave in the current hour, a bike enters
+        parkingStatistics.onEntry(getTicket(ParkingType.CAR, inTime, -1, 0));
+        parkingStatistics.onExit(getTicket(ParkingType.CAR, inTime, outTime, 2.25));
+        parkingStatistics.onExit(getTicket(ParkingType.CAR, outTime - 20 * 60 * 1000, outTime, 0));
+        parkingStatistics.onEntry(getTicket(ParkingType.BIKE, outTime, -1, 0));
+        //Then
+        ParkingSummary cars = parkingStatistics.getSummary(SummaryPeriod.HOUR, ParkingType.CAR, new Date(outTime));
+        assertEquals(new Date(hour), cars.getPeriodStart());
+        assertEquals(0, cars.getEntries());
+        assertEquals(2, cars.getExits());
+        assertEquals(225, cars.getRevenueCents());
+        assertEquals((115 + 20) / 2.0, cars.getAverageStayMinutes());
+        assertArrayEquals(new long[]{1, 0, 1, 0, 0, 0, 0}, cars.getStays());
+        assertEquals(1, parkingStatistics.getSummary(SummaryPeriod.HOUR, ParkingType.CAR, new Date(inTime)).getEntries());
+        assertEquals(2, parkingStatistics.getSummaries(SummaryPeriod.HOUR, ParkingType.CAR,
+                new Date(hour - 3 * HOUR), new Date(hour + HOUR)).size());
+        ParkingSummary day = parkingStatistics.getSummary(SummaryPeriod.DAY, ParkingType.BIKE, new Date(outTime));
+        assertEquals(1, day.getEntries());
+        assertEquals(0, parkingStatistics.getOccupancy(ParkingType.CAR));
+        assertEquals(1, parkingStatistics.getOccupancy(ParkingType.BIKE));
+    }
+
+    @Test
+    public void flushSavesOnlyNewIncrementsTest() {
+        //Given
+        when(parkingSummaryDAO.addToSummaries(anyList())).thenReturn(true);
+        parkingStatistics.onExit(getTicket(ParkingType.CAR, hour, hour + 10 * 60 * 1000, 1.5));
+        //When
+        assertTrue(parkingStatistics.flush());
+        assertTrue(parkingStatistics.flush());
+        parkingStatistics.onExit(getTicket(ParkingType.CAR, hour, hour + 10 * 60 * 1000, 1.5));
+        assertTrue(parkingStatistics.flush());
+        //Then: the hour and the day of each exit, once; totals are kept
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ParkingSummary>> increments = ArgumentCaptor.forClass(List.class);
+        verify(parkingSummaryDAO, times(2)).addToSummaries(increments.capture());
+        for (List<ParkingSummary> flushed : increments.getAllValues()) {
+            assertEquals(2, flushed.size());
+            assertEquals(1, flushed.get(0).getExits());
+            assertEquals(150, flushed.get(0).getRevenueCents());
+        }
+        assertEquals(2, parkingStatistics.getSummary(SummaryPeriod.HOUR, ParkingType.CAR, new Date(hour)).getExits());
+    }
+
+    @Test
+    public void failedFlushIsRetriedTest() {
+        //Given
+        when(parkingSummaryDAO.addToSummaries(anyList())).thenReturn(false, true);
+        parkingStatistics.onEntry(getTicket(ParkingType.CAR, hour, -1, 0));
+        //When
+        assertFalse(parkingStatistics.flush());
+        parkingStatistics.onEntry(getTicket(ParkingType.CAR, hour, -1, 0));
+        assertTrue(parkingStatistics.flush());
+        //Then
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ParkingSummary>> increments = ArgumentCaptor.forClass(List.class);
+        verify(parkingSummaryDAO, times(2)).addToSummaries(increments.capture());
+        assertEquals(2, increments.getAllValues().get(1).get(0).getEntries());
+    }
+
+    @Test
+    public void oldBucketsAreDroppedOnceSavedTest() {
+        //Given: an exit three days ago, out of the hourly window
+        when(parkingSummaryDAO.addToSummaries(anyList())).thenReturn(true);
+        long outTime = hour - 72 * HOUR;
+        parkingStatistics.onExit(getTicket(ParkingType.CAR, outTime - HOUR, outTime, 1.5));
+        //When
+        parkingStatistics.flush();
+        parkingStatistics.flush();
+        //Then
+        assertEquals(0, parkingStatistics.getSummary(SummaryPeriod.HOUR, ParkingType.CAR, new Date(outTime)).getExits());
+        assertEquals(1, parkingStatistics.getSummary(SummaryPeriod.DAY, ParkingType.CAR, new Date(outTime)).getExits());
+        verify(parkingSummaryDAO, never()).getOccupancy();
+    }
+}
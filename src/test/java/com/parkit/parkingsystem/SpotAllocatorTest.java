@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.SpotAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class SpotAllocatorTest {
+
+    @Mock
+    private ParkingSpotDAO parkingSpotDAO;
+    private SpotAllocator spotAllocator;
+
+    @BeforeEach
+    public void setUpPerTest() {
+        lenient().when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int number = 1; number <= 1000; number++) {
+            parkingSpots.add(new ParkingSpot(number, number % 10 == 0 ? ParkingType.BIKE : ParkingType.CAR, true));
+        }
+        spotAllocator = new SpotAllocator(parkingSpots, parkingSpotDAO);
+    }
+
+    @AfterEach
+    public void tearDownPerTest() throws InterruptedException {
+        spotAllocator.close();
+    }
+
+    @Test
+    public void allocateUntilFull() {
+        //Act
+        for (int i = 0; i < 100; i++) {
+            ParkingSpot parkingSpot = spotAllocator.allocate(ParkingType.BIKE);
+            assertNotNull(parkingSpot);
+            assertEquals(0, parkingSpot.getId() % 10);
+        }
+        //Assert
+        assertNull(spotAllocator.allocate(ParkingType.BIKE));
+        assertEquals(0, spotAllocator.countAvailable(ParkingType.BIKE));
+        assertEquals(900, spotAllocator.countAvailable(ParkingType.CAR));
+    }
+
+    @Test
+    public void releaseMakesSpotAvailableAndPersistsIt() {
+        //Arrange
+        ParkingSpot parkingSpot = spotAllocator.allocate(ParkingType.CAR);
+        verify(parkingSpotDAO, timeout(1000)).updateParking(argThat(spot -> spot.getId() == parkingSpot.getId() && !spot.isAvailable()));
+        //Act
+        boolean released = spotAllocator.release(parkingSpot);
+        //Assert
+        assertTrue(released);
+        assertFalse(spotAllocator.release(parkingSpot));//already free
+        assertEquals(900, spotAllocator.countAvailable(ParkingType.CAR));
+        verify(parkingSpotDAO, timeout(1000)).updateParking(argThat(spot -> spot.getId() == parkingSpot.getId() && spot.isAvailable()));
+    }
+
+    @Test
+    public void concurrentGatesNeverGetTheSameSpot() throws Exception {
+        //Arrange
+        int gates = 16;
+        Set<Integer> allocated = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(gates);
+        List<Integer> duplicates = new ArrayList<>();
+        //Act
+        for (int g = 0; g < gates; g++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    ParkingSpot parkingSpot;
+                    while ((parkingSpot = spotAllocator.allocate(ParkingType.CAR)) != null) {
+                        if (!allocated.add(parkingSpot.getId())) {
+                            synchronized (duplicates) {
+                                duplicates.add(parkingSpot.getId());
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        //Assert
+        assertTrue(duplicates.isEmpty());
+        assertEquals(900, allocated.size());
+    }
+}
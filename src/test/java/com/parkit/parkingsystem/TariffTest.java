@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.Tariff;
+import com.parkit.parkingsystem.service.TariffReloader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TariffTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    //a midnight UTC
+    private static final long MIDNIGHT = 1_699_920_000_000L;
+    private static final int CAR = ParkingType.CAR.ordinal();
+
+    private Tariff tariff(String... lines) {
+        Properties properties = new Properties();
+        properties.setProperty("zone", "UTC");
+        properties.setProperty("grace.minutes", "0");
+        properties.setProperty("discount.percent", "0");
+        for (String line : lines) {
+            String[] keyValue = line.split("=");
+            properties.setProperty(keyValue[0], keyValue[1]);
+        }
+        return Tariff.parse(properties);
+    }
+
+    @Test
+    public void tariffFileGivesStandardPricesTest() throws IOException {
+        //Given
+        Properties properties = new Properties();
+        properties.load(Files.newInputStream(Paths.get("resources/tariff.properties")));
+        properties.setProperty("zone", "Europe/Paris");
+        Tariff fromFile = Tariff.parse(properties);
+        Tariff standard = Tariff.standard();
+        Random random = new Random(7);
+        //When & Then
+        for (int i = 0; i < 10_000; i++) {
+            long inTime = MIDNIGHT + random.nextInt(1_000_000_000);
+            long outTime = inTime + random.nextInt(200_000_000);
+            int parkingType = random.nextInt(2);
+            boolean discount = random.nextBoolean();
+            assertEquals(standard.calculateFareCents(inTime, outTime, parkingType, discount),
+                    fromFile.calculateFareCents(inTime, outTime, parkingType, discount));
+        }
+        assertEquals(113, standard.calculateFareCents(0, 45 * MINUTE, CAR, false));
+        assertEquals(0, standard.calculateFareCents(0, 30 * MINUTE - 1, CAR, false));
+    }
+
+    @Test
+    public void timeOfDayBandsTest() {
+        //Given: day rate from 08:00 to 20:00
+        Tariff tariff = tariff("CAR.band.0800=300", "CAR.band.2000=100");
+        //Then
+        assertEquals(400, tariff.calculateFareCents(MIDNIGHT + 19 * HOUR, MIDNIGHT + 21 * HOUR, CAR, false));
+        //the night band goes on after midnight
+        assertEquals(9 * 100 + 300, tariff.calculateFareCents(MIDNIGHT + 23 * HOUR, MIDNIGHT + 33 * HOUR, CAR, false));
+        //prorated inside a minute
+        assertEquals(3, tariff.calculateFareCents(MIDNIGHT + 8 * HOUR + 30 * 1000, MIDNIGHT + 8 * HOUR + 66 * 1000, CAR, false));
+    }
+
+    @Test
+    public void tiersTest() {
+        //Given: half price after 2 hours
+        Tariff tariff = tariff("CAR.band.0000=200", "CAR.tier.2=50");
+        //Then
+        assertEquals(2 * 200 + 100, tariff.calculateFareCents(MIDNIGHT, MIDNIGHT + 3 * HOUR, CAR, false));
+        assertEquals(2 * 200 + 46 * 100, tariff.calculateFareCents(MIDNIGHT, MIDNIGHT + 48 * HOUR, CAR, false));
+    }
+
+    @Test
+    public void dailyCapTest() {
+        //Given
+        Tariff capped = tariff("CAR.band.0000=150", "CAR.dailyCap=2000");
+        Tariff tieredAndCapped = tariff("CAR.band.0000=150", "CAR.tier.2=50", "CAR.dailyCap=1000");
+        //Then
+        assertEquals(2000, capped.calculateFareCents(MIDNIGHT, MIDNIGHT + 24 * HOUR, CAR, false));
+        assertEquals(2000 + 2000 + 300, capped.calculateFareCents(MIDNIGHT + 5 * HOUR, MIDNIGHT + 55 * HOUR, CAR, false));
+        assertEquals(3000, tieredAndCapped.calculateFareCents(MIDNIGHT, MIDNIGHT + 72 * HOUR, CAR, false));
+        assertEquals(3000, tieredAndCapped.calculateFareCents(MIDNIGHT, MIDNIGHT + 71 * HOUR + 30 * MINUTE, CAR, false));
+        assertEquals(2000 + 75, tieredAndCapped.calculateFareCents(MIDNIGHT, MIDNIGHT + 49 * HOUR, CAR, false));
+    }
+
+    @Test
+    public void graceAndDiscountTest() {
+        //Given
+        Tariff tariff = tariff("CAR.band.0000=150", "grace.minutes=15", "discount.percent=10");
+        //Then
+        assertEquals(0, tariff.calculateFareCents(MIDNIGHT, MIDNIGHT + 14 * MINUTE, CAR, true));
+        assertEquals(40, tariff.calculateFareCents(MIDNIGHT, MIDNIGHT + 16 * MINUTE, CAR, false));
+        assertEquals(135, tariff.calculateFareCents(MIDNIGHT, MIDNIGHT + HOUR, CAR, true));
+    }
+
+    @Test
+    public void invalidTariffTest() {
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.band.0000=abc"));
+        assertThrows(IllegalArgumentException.class, () -> tariff("CAR.band.0000=-5"));
+        //no band for the bikes
+        Tariff tariff = tariff("CAR.band.0000=150");
+        assertThrows(IllegalArgumentException.class,
+                () -> tariff.calculateFareCents(MIDNIGHT, MIDNIGHT + HOUR, ParkingType.BIKE.ordinal(), false));
+    }
+
+    @Test
+    public void reloaderSwapsTariffTest() throws IOException {
+        //Given
+        FareCalculatorService fareCalculatorService = new FareCalculatorService();
+        Path file = Files.createTempFile("tariff", ".properties");
+        try {
+            Files.write(file, "zone=UTC\nCAR.band.0000=300\nBIKE.band.0000=100\n".getBytes(StandardCharsets.ISO_8859_1));
+            TariffReloader tariffReloader = new TariffReloader(fareCalculatorService, file);
+            //When
+            assertTrue(tariffReloader.reload());
+            assertFalse(tariffReloader.reload());
+            Tariff loaded = fareCalculatorService.getTariff();
+            Files.write(file, "CAR.band.0000=oops\n".getBytes(StandardCharsets.ISO_8859_1));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            //Then: an invalid file leaves the tariff in use
+            assertFalse(tariffReloader.reload());
+            assertSame(loaded, fareCalculatorService.getTariff());
+            assertEquals(300, fareCalculatorService.calculateFareCents(MIDNIGHT, MIDNIGHT + HOUR, CAR, false));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
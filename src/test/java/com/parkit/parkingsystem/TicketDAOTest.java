@@ -2,10 +2,14 @@ package com.parkit.parkingsystem;
 
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.dao.ActiveTicketRegistry;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.dao.VisitCountCache;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,10 +19,20 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.parkit.parkingsystem.constants.ParkingType.CAR;
 import static junit.framework.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -197,4 +211,476 @@ public class TicketDAOTest {
         assertNotNull(ticket.getInTime());
         assertEquals(CAR, ticket.getParkingSpot().getParkingType());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void closeTicketTest() throws Exception {
+        //Given
+        PreparedStatement closeStatement = mock(PreparedStatement.class);
+        PreparedStatement parkingStatement = mock(PreparedStatement.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_OPEN_TICKET_WITH_COUNT)).thenReturn(preparedStatement);
+        when(connection.prepareStatement(DBConstants.CLOSE_TICKET)).thenReturn(closeStatement);
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(parkingStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(7); //ID
+        when(resultSet.getInt(2)).thenReturn(2); //PARKING_NUMBER
+        when(resultSet.getTimestamp(3)).thenReturn(new Timestamp(System.currentTimeMillis() - 60 * 60 * 1000)); //IN_TIME
+        when(resultSet.getString(4)).thenReturn("CAR"); //TYPE
+        when(resultSet.getInt(5)).thenReturn(2); //second visit
+        when(closeStatement.executeUpdate()).thenReturn(1);
+        Date outTime = new Date();
+        //When
+        Ticket closedTicket = ticketDAO.closeTicket("ABCDEF", outTime, new FareCalculatorService(), true);
+        //Then
+        assertNotNull(closedTicket);
+        assertEquals(7, closedTicket.getId());
+        assertEquals(outTime, closedTicket.getOutTime());
+        assertEquals(1.5 * 0.95, closedTicket.getPrice(), 0.01);
+        assertTrue(closedTicket.getParkingSpot().isAvailable());
+        //Verify
+        verify(closeStatement).setInt(3, 7);
+        verify(parkingStatement).setBoolean(1, true);
+        verify(parkingStatement).setInt(2, 2);
+        verify(connection).setAutoCommit(false);
+        verify(connection).commit();
+    }
+
+    @Test
+    public void closeTicketLeavesSpotToAllocatorTest() throws Exception {
+        //Given
+        PreparedStatement closeStatement = mock(PreparedStatement.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_OPEN_TICKET_WITH_COUNT)).thenReturn(preparedStatement);
+        when(connection.prepareStatement(DBConstants.CLOSE_TICKET)).thenReturn(closeStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(7); //ID
+        when(resultSet.getInt(2)).thenReturn(2); //PARKING_NUMBER
+        when(resultSet.getTimestamp(3)).thenReturn(new Timestamp(System.currentTimeMillis() - 60 * 60 * 1000)); //IN_TIME
+        when(resultSet.getString(4)).thenReturn("CAR"); //TYPE
+        when(resultSet.getInt(5)).thenReturn(1); //first visit
+        when(closeStatement.executeUpdate()).thenReturn(1);
+        //When
+        Ticket closedTicket = ticketDAO.closeTicket("ABCDEF", new Date(), new FareCalculatorService(), false);
+        //Then: the spot is written back by the allocator, not here
+        assertNotNull(closedTicket);
+        assertEquals(1.5, closedTicket.getPrice(), 0.01);
+        verify(connection, never()).prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
+        verify(connection).commit();
+    }
+
+    @Test
+    public void closeTicketWithoutOpenTicketTest() throws Exception {
+        //Given
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_OPEN_TICKET_WITH_COUNT)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+        //When
+        Ticket closedTicket = ticketDAO.closeTicket("ABCDEF", new Date(), new FareCalculatorService(), true);
+        //Then
+        assertNull(closedTicket);
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    public void getNbTicketFromVisitCountCacheTest() throws Exception {
+        //Given
+        TicketDAO cachingTicketDAO = new TicketDAO();
+        cachingTicketDAO.dataBaseConfig = dataBaseConfig;
+        cachingTicketDAO.visitCountCache = new VisitCountCache(10);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_NB_TICKET)).thenReturn(preparedStatement);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(2);
+        //When
+        int firstCount = cachingTicketDAO.getNbTicket("ABCDEF");
+        TicketDAO.SaveStatus saved = cachingTicketDAO.saveTicket(getTicket());
+        int secondCount = cachingTicketDAO.getNbTicket("ABCDEF");
+        //Then
+        assertEquals(2, firstCount);
+        assertEquals(TicketDAO.SaveStatus.SAVED, saved);
+        assertEquals(3, secondCount);
+        //Verify
+        verify(preparedStatement, times(1)).executeQuery();
+    }
+
+    @Test
+    public void loadVisitCountCacheTest() throws Exception {
+        //Given
+        TicketDAO cachingTicketDAO = new TicketDAO();
+        cachingTicketDAO.dataBaseConfig = dataBaseConfig;
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_RECENT_VISIT_COUNTS)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(1)).thenReturn("ABCDEF", "GHIJKL");
+        when(resultSet.getInt(2)).thenReturn(4, 1);
+        //When
+        VisitCountCache cache = cachingTicketDAO.loadVisitCountCache(2);
+        //Then
+        assertEquals(2, cache.size());
+        assertEquals(4, cachingTicketDAO.getNbTicket("ABCDEF"));
+        assertEquals(1, cachingTicketDAO.getNbTicket("GHIJKL"));
+        verify(preparedStatement).setInt(1, 2);
+        verify(connection, never()).prepareStatement(DBConstants.GET_NB_TICKET);
+    }
+
+    @Test
+    public void visitCountCacheEvictsLeastRecentlyUsedTest() {
+        //Given
+        VisitCountCache cache = new VisitCountCache(2);
+        cache.put("AAA", 1);
+        cache.put("BBB", 2);
+        cache.get("AAA");
+        //When
+        cache.put("CCC", 3);
+        //Then
+        assertEquals(Integer.valueOf(1), cache.get("AAA"));
+        assertNull(cache.get("BBB"));
+        assertEquals(Integer.valueOf(3), cache.get("CCC"));
+    }
+
+    @Test
+    public void closeTicketFromActiveTicketRegistryTest() throws Exception {
+        //Given
+        TicketDAO registryTicketDAO = new TicketDAO();
+        registryTicketDAO.dataBaseConfig = dataBaseConfig;
+        Ticket openTicket = new Ticket();
+        openTicket.setId(7);
+        openTicket.setParkingSpot(new ParkingSpot(2, CAR, false));
+        openTicket.setVehicleRegNumber("ABCDEF");
+        openTicket.setInTime(new Timestamp(System.currentTimeMillis() - 60 * 60 * 1000));
+        registryTicketDAO.activeTicketRegistry = new ActiveTicketRegistry(Collections.singletonList(openTicket));
+        PreparedStatement closeStatement = mock(PreparedStatement.class);
+        PreparedStatement parkingStatement = mock(PreparedStatement.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_NB_TICKET)).thenReturn(preparedStatement);
+        when(connection.prepareStatement(DBConstants.CLOSE_TICKET)).thenReturn(closeStatement);
+        when(connection.prepareStatement(DBConstants.UPDATE_PARKING_SPOT)).thenReturn(parkingStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(1); //first visit
+        when(closeStatement.executeUpdate()).thenReturn(1);
+        //When
+        Ticket closedTicket = registryTicketDAO.closeTicket("ABCDEF", new Date(), new FareCalculatorService(), true);
+        //Then
+        assertNotNull(closedTicket);
+        assertEquals(1.5, closedTicket.getPrice(), 0.01);
+        assertFalse(registryTicketDAO.isVehicleParked("ABCDEF"));
+        assertNull(openTicket.getOutTime());
+        //Verify
+        verify(closeStatement).setInt(3, 7);
+        verify(connection, never()).prepareStatement(DBConstants.GET_OPEN_TICKET);
+        verify(connection, never()).prepareStatement(DBConstants.GET_OPEN_TICKET_WITH_COUNT);
+        verify(connection).commit();
+    }
+
+    @Test
+    public void closeTicketOfVehicleNotParkedTest() throws Exception {
+        //Given
+        TicketDAO registryTicketDAO = new TicketDAO();
+        registryTicketDAO.dataBaseConfig = dataBaseConfig;
+        registryTicketDAO.activeTicketRegistry = new ActiveTicketRegistry(Collections.<Ticket>emptyList());
+        //When
+        Ticket closedTicket = registryTicketDAO.closeTicket("ABCDEF", new Date(), new FareCalculatorService(), true);
+        //Then
+        assertNull(closedTicket);
+        verify(dataBaseConfig, never()).getConnection();
+    }
+
+    @Test
+    public void saveTicketPublishesTicketOnceSavedTest() throws Exception {
+        //Given
+        TicketDAO registryTicketDAO = new TicketDAO();
+        registryTicketDAO.dataBaseConfig = dataBaseConfig;
+        ActiveTicketRegistry registry = new ActiveTicketRegistry(Collections.<Ticket>emptyList());
+        registryTicketDAO.activeTicketRegistry = registry;
+        ResultSet generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        //during the insert the plate is held, without a ticket to close
+        boolean[] heldWithoutTicket = new boolean[1];
+        when(preparedStatement.execute()).thenAnswer(invocation -> {
+            heldWithoutTicket[0] = registry.contains("ABCDEF") && registry.get("ABCDEF") == null;
+            return false;
+        });
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true);
+        when(generatedKeys.getInt(1)).thenReturn(42);
+        Ticket newTicket = getTicket();
+        newTicket.setOutTime(null);
+        //When
+        assertEquals(TicketDAO.SaveStatus.SAVED, registryTicketDAO.saveTicket(newTicket));
+        newTicket.setPrice(9.9);
+        //Then
+        assertTrue(heldWithoutTicket[0]);
+        Ticket activeTicket = registry.get("ABCDEF");
+        assertNotSame(newTicket, activeTicket);
+        assertEquals(42, activeTicket.getId());
+        assertEquals(1.5, activeTicket.getPrice());
+    }
+
+    @Test
+    public void saveTicketWithoutGeneratedKeyReleasesPlateTest() throws Exception {
+        //Given
+        TicketDAO registryTicketDAO = new TicketDAO();
+        registryTicketDAO.dataBaseConfig = dataBaseConfig;
+        registryTicketDAO.activeTicketRegistry = new ActiveTicketRegistry(Collections.<Ticket>emptyList());
+        ResultSet generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(false);
+        Ticket newTicket = getTicket();
+        newTicket.setOutTime(null);
+        //When
+        TicketDAO.SaveStatus saved = registryTicketDAO.saveTicket(newTicket);
+        //Then
+        assertEquals(TicketDAO.SaveStatus.FAILED, saved);
+        assertFalse(registryTicketDAO.isVehicleParked("ABCDEF"));
+    }
+
+    @Test
+    public void saveTicketRegistersActiveTicketTest() throws Exception {
+        //Given
+        TicketDAO registryTicketDAO = new TicketDAO();
+        registryTicketDAO.dataBaseConfig = dataBaseConfig;
+        registryTicketDAO.activeTicketRegistry = new ActiveTicketRegistry(Collections.<Ticket>emptyList());
+        ResultSet generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true);
+        when(generatedKeys.getInt(1)).thenReturn(42);
+        Ticket newTicket = getTicket();
+        newTicket.setOutTime(null);
+        //When
+        TicketDAO.SaveStatus saved = registryTicketDAO.saveTicket(newTicket);
+        TicketDAO.SaveStatus savedAgain = registryTicketDAO.saveTicket(newTicket);
+        //Then
+        assertEquals(TicketDAO.SaveStatus.SAVED, saved);
+        assertEquals(TicketDAO.SaveStatus.ALREADY_PARKED, savedAgain);
+        assertEquals(42, newTicket.getId());
+        assertTrue(registryTicketDAO.isVehicleParked("ABCDEF"));
+        verify(preparedStatement, times(1)).execute();
+    }
+
+    @Test
+    public void loadActiveTicketRegistryTest() throws Exception {
+        //Given
+        TicketDAO registryTicketDAO = new TicketDAO();
+        registryTicketDAO.dataBaseConfig = dataBaseConfig;
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_OPEN_TICKETS)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getInt(1)).thenReturn(3);
+        when(resultSet.getInt(2)).thenReturn(1);
+        when(resultSet.getString(3)).thenReturn("ABCDEF");
+        when(resultSet.getTimestamp(4)).thenReturn(new Timestamp(System.currentTimeMillis()));
+        when(resultSet.getString(5)).thenReturn("CAR");
+        //When
+        ActiveTicketRegistry registry = registryTicketDAO.loadActiveTicketRegistry();
+        //Then
+        assertEquals(1, registry.size());
+        assertEquals(3, registry.get("ABCDEF").getId());
+        assertTrue(registryTicketDAO.isVehicleParked("ABCDEF"));
+        assertFalse(registryTicketDAO.isVehicleParked("GHIJKL"));
+    }
+
+    @Test
+    public void saveTicketWithWriteBehindTest() throws Exception {
+        //Given
+        TicketDAO writeBehindTicketDAO = new TicketDAO();
+        writeBehindTicketDAO.dataBaseConfig = dataBaseConfig;
+        ResultSet generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true, true, true, false);
+        when(generatedKeys.getInt(1)).thenReturn(1, 2, 3);
+        //a long delay, the three tickets are written together when the flush is asked
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, 10, 60_000);
+        writeBehindTicketDAO.ticketWriteBehind = ticketWriteBehind;
+        Ticket[] tickets = new Ticket[3];
+        try {
+            //When
+            for (int i = 0; i < tickets.length; i++) {
+                tickets[i] = new Ticket();
+                tickets[i].setParkingSpot(new ParkingSpot(i + 1, CAR, false));
+                tickets[i].setVehicleRegNumber("PLATE" + i);
+                tickets[i].setInTime(new Date());
+                assertEquals(TicketDAO.SaveStatus.SAVED, writeBehindTicketDAO.saveTicket(tickets[i]));
+            }
+            //Then
+            assertTrue(ticketWriteBehind.flush(5000));
+        } finally {
+            ticketWriteBehind.close();
+        }
+        assertEquals(3, tickets[2].getId());
+        assertEquals(0, ticketWriteBehind.getPendingWrites());
+        //Verify
+        verify(preparedStatement, times(3)).addBatch();
+        verify(preparedStatement, times(1)).executeBatch();
+        verify(connection, times(1)).commit();
+        verify(preparedStatement, never()).execute();
+    }
+
+    @Test
+    public void writeBehindLosesOnlyTheRefusedTicketTest() throws Exception {
+        //Given: the group fails three times, then the second ticket alone is refused
+        TicketDAO writeBehindTicketDAO = new TicketDAO();
+        writeBehindTicketDAO.dataBaseConfig = dataBaseConfig;
+        writeBehindTicketDAO.activeTicketRegistry = new ActiveTicketRegistry(Collections.emptyList());
+        writeBehindTicketDAO.visitCountCache = new VisitCountCache(10);
+        writeBehindTicketDAO.visitCountCache.put("PLATE1", 1);
+        ResultSet generatedKeys = mock(ResultSet.class);
+        SQLException refused = new SQLException("Referential integrity constraint violation");
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        when(preparedStatement.executeBatch()).thenThrow(refused, refused, refused)
+                .thenReturn(new int[]{1}).thenThrow(refused).thenReturn(new int[]{1});
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true);
+        when(generatedKeys.getInt(1)).thenReturn(1, 3);
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, 10, 60_000);
+        writeBehindTicketDAO.ticketWriteBehind = ticketWriteBehind;
+        ticketWriteBehind.addLostWriteListener(writeBehindTicketDAO::onLostWrite);
+        Ticket[] tickets = new Ticket[3];
+        try {
+            //When
+            for (int i = 0; i < tickets.length; i++) {
+                tickets[i] = new Ticket();
+                tickets[i].setParkingSpot(new ParkingSpot(i + 1, CAR, false));
+                tickets[i].setVehicleRegNumber("PLATE" + i);
+                tickets[i].setInTime(new Date());
+                assertEquals(TicketDAO.SaveStatus.SAVED, writeBehindTicketDAO.saveTicket(tickets[i]));
+            }
+            assertTrue(ticketWriteBehind.flush(5000));
+        } finally {
+            ticketWriteBehind.close();
+        }
+        //Then
+        assertEquals(1, ticketWriteBehind.getLostWrites());
+        assertEquals(1, tickets[0].getId());
+        assertEquals(3, tickets[2].getId());
+        assertTrue(writeBehindTicketDAO.isVehicleParked("PLATE0"));
+        assertFalse(writeBehindTicketDAO.isVehicleParked("PLATE1"));
+        assertTrue(writeBehindTicketDAO.isVehicleParked("PLATE2"));
+        assertEquals(1, (int) writeBehindTicketDAO.visitCountCache.get("PLATE1"));
+        //Verify: the group is rolled back three times, then each ticket has its own transaction
+        verify(preparedStatement, times(6)).executeBatch();
+        verify(connection, times(2)).commit();
+    }
+
+    @Test
+    public void writeBehindClosesWhileQueueIsFullTest() throws Exception {
+        //Given: the writer waits for a connection, a gate fills the queue and waits for room
+        CountDownLatch dataBaseBack = new CountDownLatch(1);
+        ResultSet generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenAnswer(invocation -> {
+            dataBaseBack.await();
+            return connection;
+        });
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true);
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseConfig, 10, 60_000);
+        Ticket newTicket = getTicket();
+        int tickets = 10_020;
+        AtomicInteger queued = new AtomicInteger();
+        Thread gate = new Thread(() -> {
+            for (int i = 0; i < tickets; i++) {
+                if (ticketWriteBehind.save(newTicket)) {
+                    queued.incrementAndGet();
+                }
+            }
+        });
+        gate.start();
+        waitForState(gate, Thread.State.WAITING);
+        //When
+        Thread closer = new Thread(ticketWriteBehind::close);
+        closer.start();
+        //Then: close waits for the writer, not for the gate, and new tickets are refused
+        waitForState(closer, Thread.State.TIMED_WAITING);
+        assertFalse(ticketWriteBehind.save(newTicket));
+        dataBaseBack.countDown();
+        gate.join(10_000);
+        closer.join(10_000);
+        assertFalse(closer.isAlive());
+        //the ticket waiting for room is queued and written, the next ones are refused
+        assertTrue(queued.get() > 10_000 && queued.get() < tickets);
+        assertEquals(0, ticketWriteBehind.getPendingWrites());
+    }
+
+    private static void waitForState(Thread thread, Thread.State state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (thread.getState() != state) {
+            assertTrue("Thread still " + thread.getState(), System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void saveTicketsWithMissingGeneratedKeysTest() throws Exception {
+        //Given: two tickets inserted, one key returned
+        TicketDAO batchTicketDAO = new TicketDAO();
+        batchTicketDAO.dataBaseConfig = dataBaseConfig;
+        ResultSet generatedKeys = mock(ResultSet.class);
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)).thenReturn(preparedStatement);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(generatedKeys);
+        when(generatedKeys.next()).thenReturn(true, false);
+        when(generatedKeys.getInt(1)).thenReturn(7);
+        Ticket first = new Ticket();
+        first.setParkingSpot(new ParkingSpot(1, CAR, false));
+        first.setVehicleRegNumber("PLATE1");
+        first.setInTime(new Date());
+        Ticket second = new Ticket();
+        second.setParkingSpot(new ParkingSpot(2, CAR, false));
+        second.setVehicleRegNumber("PLATE2");
+        second.setInTime(new Date());
+        //When
+        boolean saved = batchTicketDAO.saveTickets(Arrays.asList(first, second));
+        //Then
+        assertFalse(saved);
+        assertEquals(0, first.getId());
+        verify(connection, never()).commit();
+        verify(connection, times(1)).rollback();
+    }
+
+    @Test
+    public void streamVehicleTicketsPagesBothTablesByIdTest() throws Exception {
+        //Given: pages of two tickets, the ticket table and the archive read by the same query
+        when(dataBaseConfig.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(DBConstants.GET_VEHICLE_TICKETS_PAGE)).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        Timestamp inTime = new Timestamp(System.currentTimeMillis() - 60 * 60 * 1000);
+        Timestamp outTime = new Timestamp(System.currentTimeMillis());
+        when(resultSet.next()).thenReturn(true, true, false, true, false);
+        when(resultSet.getInt(1)).thenReturn(3, 5, 6); //ID
+        when(resultSet.getTimestamp(6)).thenReturn(outTime, outTime, null); //OUT_TIME, 6 still parked
+        when(resultSet.getString(3)).thenReturn("ABCDEF");
+        when(resultSet.getString(7)).thenReturn("CAR");
+        when(resultSet.getTimestamp(5)).thenReturn(inTime);
+        //When
+        List<Ticket> history = ticketDAO.streamVehicleTickets("ABCDEF", 2).collect(Collectors.toList());
+        //Then
+        assertEquals(3, history.size());
+        assertEquals(3, history.get(0).getId());
+        assertEquals(5, history.get(1).getId());
+        assertEquals(6, history.get(2).getId());
+        assertNull(history.get(2).getOutTime());
+        //Verify: the second page starts after ticket 5 in both tables
+        verify(preparedStatement, times(2)).setString(1, "ABCDEF");
+        verify(preparedStatement, times(2)).setString(4, "ABCDEF");
+        verify(preparedStatement, times(1)).setInt(2, 5);
+        verify(preparedStatement, times(1)).setInt(5, 5);
+        verify(preparedStatement, times(2)).setInt(7, 2);
+    }
+}
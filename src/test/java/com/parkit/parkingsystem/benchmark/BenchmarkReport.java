@@ -0,0 +1,58 @@
+package com.parkit.parkingsystem.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.Map;
+
+/**
+ * Runs the benchmarks given as arguments with the GC profiler and prints, for each one, its throughput, the
+ * allocation rate and the bytes allocated per operation. A regression shows as a lower score or more bytes per
+ * operation, e.g. for FareCalculatorServiceBenchmark.primitiveFare, which must allocate nothing.
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.main=com.parkit.parkingsystem.benchmark.BenchmarkReport
+ * -Dbenchmark.args="FareCalculatorServiceBenchmark ParkingServiceBenchmark"
+ */
+public class BenchmarkReport {
+
+    public static void main(String[] args) throws Exception {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .verbosity(VerboseMode.SILENT);
+        for (String benchmark : args) {
+            options.include(benchmark);
+        }
+        System.out.printf("%-60s %-46s %18s %14s %14s%n", "benchmark", "params", "score", "MB/s", "B/op");
+        for (RunResult result : new Runner(options.build()).run()) {
+            Result<?> score = result.getPrimaryResult();
+            //JMH declares the values as raw Results
+            Map<String, ?> secondary = result.getSecondaryResults();
+            System.out.printf("%-60s %-46s %11.3f %-6s %14.1f %14.1f%n",
+                    result.getParams().getBenchmark().replaceAll("^.*\\.benchmark\\.", ""),
+                    params(result), score.getScore(), score.getScoreUnit(),
+                    secondary(secondary, "gc.alloc.rate"), secondary(secondary, "gc.alloc.rate.norm"));
+        }
+    }
+
+    private static String params(RunResult result) {
+        StringBuilder params = new StringBuilder();
+        for (String key : result.getParams().getParamsKeys()) {
+            params.append(key).append('=').append(result.getParams().getParam(key)).append(' ');
+        }
+        return params.toString().trim();
+    }
+
+    private static double secondary(Map<String, ?> secondary, String label) {
+        for (Map.Entry<String, ?> result : secondary.entrySet()) {
+            //older JMH versions prefix the labels of the profilers with a dot
+            if (result.getKey().replace("·", "").equals(label)) {
+                return ((Result<?>) result.getValue()).getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
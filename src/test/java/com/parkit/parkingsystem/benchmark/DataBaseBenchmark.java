@@ -0,0 +1,229 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.DataSourceFactory;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Average time of the DAO methods, each running the queries of DBConstants, on the embedded test database seeded
+ * with a number of tickets: about 10 tickets per vehicle, one ticket entered per minute, all of them closed, and one
+ * spot per 100 tickets, the last tenth of them available. Each size runs with the connection pool or with a new
+ * connection per call, and with or without the secondary indexes of the ticket table.
+ * The tickets saved during an iteration are deleted after it, so the table keeps its size.
+ * isVehicleParked is not measured, it answers from memory only. H2 reuses the result of a prepared query while its
+ * tables do not change, which the read-only methods get on the statements cached by the pool.
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.args="DataBaseBenchmark -rf csv -rff dao-benchmark.csv"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class DataBaseBenchmark {
+
+    private static final String DATABASE = "test";
+    private static final long FIRST_IN_TIME = 1_577_836_800_000L;
+    private static final long MINUTE = 60 * 1000L;
+    //rows inserted per statement when seeding, keeps the transactions of the largest sizes small
+    private static final int SEED_CHUNK = 1_000_000;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1000", "100000"})
+    private int rows;
+    @Param({"pooled", "unpooled"})
+    private String connections;
+    @Param({"true", "false"})
+    private boolean indexes;
+
+    private final DataBaseTestConfig seedConfig = new DataBaseTestConfig();
+    private final ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+    private final TicketDAO ticketDAO = new TicketDAO();
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    //loading the registry or the cache changes the behavior of the DAO, they are loaded by another one
+    private final TicketDAO loadingTicketDAO = new TicketDAO();
+    private final String[] vehicleRegNumbers = new String[LOOKUPS];
+    private int spots;
+    private int lastSeededId;
+    private int next;
+    private Ticket seededTicket;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DataBaseConfig dataBaseConfig = connections.equals("pooled") ? seedConfig : new UnpooledDataBaseConfig();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        loadingTicketDAO.dataBaseConfig = dataBaseConfig;
+        spots = Math.max(100, rows / 100);
+        int vehicles = Math.max(10, rows / 10);
+        new DataBasePrepareService().clearDataBaseEntries();
+        try (Connection con = seedConfig.getConnection(); Statement statement = con.createStatement()) {
+            statement.execute("delete from parking where PARKING_NUMBER > 5");
+            statement.execute("update parking set AVAILABLE = false");
+            statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) select X, X > " + (spots - spots / 10)
+                    + ", case when mod(X, 5) = 0 then 'BIKE' else 'CAR' end from system_range(6, " + spots + ")");
+            for (int from = 1; from <= rows; from += SEED_CHUNK) {
+                int to = Math.min(rows, from + SEED_CHUNK - 1);
+                statement.execute("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME)"
+                        + " select 1 + mod(X, " + spots + "), 'V' || mod(X, " + vehicles + "), 1.5,"
+                        + " dateadd('MINUTE', X, timestamp '2020-01-01 00:00:00'),"
+                        + " dateadd('MINUTE', X + 90, timestamp '2020-01-01 00:00:00')"
+                        + " from system_range(" + from + ", " + to + ")");
+            }
+            if (!indexes) {
+                statement.execute("drop index ticket_vehicle");
+                statement.execute("drop index ticket_in_time");
+            }
+            statement.execute("analyze");
+            try (ResultSet rs = statement.executeQuery("select max(ID) from ticket")) {
+                rs.next();
+                lastSeededId = rs.getInt(1);
+            }
+        }
+        for (int i = 0; i < LOOKUPS; i++) {
+            vehicleRegNumbers[i] = "V" + (int) ((i * 7919L) % vehicles);
+        }
+        seededTicket = ticketDAO.getTicket(vehicleRegNumbers[0]);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteSavedTickets() throws SQLException, ClassNotFoundException {
+        try (Connection con = seedConfig.getConnection(); Statement statement = con.createStatement()) {
+            statement.executeUpdate("delete from ticket where ID > " + lastSeededId);
+            statement.executeUpdate("update parking set AVAILABLE = PARKING_NUMBER > " + (spots - spots / 10));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException, ClassNotFoundException {
+        if (!indexes) {
+            try (Connection con = seedConfig.getConnection(); Statement statement = con.createStatement()) {
+                statement.execute("create index ticket_vehicle on ticket(VEHICLE_REG_NUMBER, ID)");
+                statement.execute("create index ticket_in_time on ticket(IN_TIME, ID)");
+            }
+        }
+        new DataBasePrepareService().clearDataBaseEntries();
+    }
+
+    @Benchmark
+    public int getNextAvailableSlot() {
+        return parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR);
+    }
+
+    @Benchmark
+    public boolean updateParking() {
+        //spot 1 is taken by the seeded tickets, it stays taken
+        return parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+    }
+
+    @Benchmark
+    public boolean claimNextSpotThenFreeIt() throws Exception {
+        ParkingSpot parkingSpot = parkingSpotDAO.claimNextSpot(ParkingType.CAR);
+        parkingSpot.setAvailable(true);
+        return parkingSpotDAO.updateParking(parkingSpot);
+    }
+
+    @Benchmark
+    public TicketDAO.SaveStatus saveTicket() {
+        return ticketDAO.saveTicket(newTicket("NEW" + (next++ % 100_000)));
+    }
+
+    @Benchmark
+    public Ticket saveThenCloseTicket() {
+        String vehicleRegNumber = "OPEN" + (next++ % 100_000);
+        ticketDAO.saveTicket(newTicket(vehicleRegNumber));
+        return ticketDAO.closeTicket(vehicleRegNumber, new Date(FIRST_IN_TIME + (rows + 120L) * MINUTE),
+                fareCalculatorService, true);
+    }
+
+    @Benchmark
+    public Ticket getTicket() {
+        return ticketDAO.getTicket(nextVehicleRegNumber());
+    }
+
+    @Benchmark
+    public boolean updateTicket() {
+        return ticketDAO.updateTicket(seededTicket);
+    }
+
+    @Benchmark
+    public int getNbTicket() {
+        return ticketDAO.getNbTicket(nextVehicleRegNumber());
+    }
+
+    @Benchmark
+    public long streamVehicleTickets() {
+        return ticketDAO.streamVehicleTickets(nextVehicleRegNumber(), 500).count();
+    }
+
+    @Benchmark
+    public long streamTicketsOfOneDay() {
+        Date from = new Date(FIRST_IN_TIME + rows / 2 * MINUTE);
+        return ticketDAO.streamTicketsEnteredBetween(from, new Date(from.getTime() + TimeUnit.DAYS.toMillis(1)), 500).count();
+    }
+
+    @Benchmark
+    public Object loadVisitCountCache() {
+        return loadingTicketDAO.loadVisitCountCache(1000);
+    }
+
+    @Benchmark
+    public Object loadActiveTicketRegistry() {
+        return loadingTicketDAO.loadActiveTicketRegistry();
+    }
+
+    private String nextVehicleRegNumber() {
+        return vehicleRegNumbers[next++ & (LOOKUPS - 1)];
+    }
+
+    private Ticket newTicket(String vehicleRegNumber) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(FIRST_IN_TIME + (rows + 1L) * MINUTE));
+        return ticket;
+    }
+
+    /**
+     * a new physical connection for each DAO call, closed by closeConnection
+     */
+    static class UnpooledDataBaseConfig extends DataBaseTestConfig {
+        private final Properties settings = DataSourceFactory.loadSettings();
+        private final String prefix = DataSourceFactory.getMode(settings).getSettingsPrefix();
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return DriverManager.getConnection(DataSourceFactory.getUrl(settings, DATABASE),
+                    settings.getProperty(prefix + "user"), settings.getProperty(prefix + "password", ""));
+        }
+    }
+}
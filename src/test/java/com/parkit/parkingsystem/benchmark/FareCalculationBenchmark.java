@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to re-rate a batch of stays: the calculateFare loop over Ticket objects, the batch over primitive arrays,
+ * and the same batch split among the fork-join pool.
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.args="FareCalculationBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FareCalculationBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int stays;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private Ticket[] tickets;
+    private boolean[] discounts;
+    private long[] inTimes;
+    private long[] outTimes;
+    private int[] parkingTypeOrdinals;
+    private long[] cents;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        long day = 1_700_000_000_000L;
+        tickets = new Ticket[stays];
+        discounts = new boolean[stays];
+        inTimes = new long[stays];
+        outTimes = new long[stays];
+        parkingTypeOrdinals = new int[stays];
+        cents = new long[stays];
+        for (int i = 0; i < stays; i++) {
+            inTimes[i] = day + random.nextInt(12 * 60 * 60 * 1000);
+            outTimes[i] = inTimes[i] + random.nextInt(10 * 60 * 60 * 1000);
+            ParkingType parkingType = random.nextInt(4) == 0 ? ParkingType.BIKE : ParkingType.CAR;
+            parkingTypeOrdinals[i] = parkingType.ordinal();
+            discounts[i] = random.nextBoolean();
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(i % 100 + 1, parkingType, false));
+            ticket.setInTime(new Date(inTimes[i]));
+            ticket.setOutTime(new Date(outTimes[i]));
+            tickets[i] = ticket;
+        }
+    }
+
+    @Benchmark
+    public Ticket[] ticketLoop() {
+        for (int i = 0; i < tickets.length; i++) {
+            fareCalculatorService.calculateFare(tickets[i], discounts[i]);
+        }
+        return tickets;
+    }
+
+    @Benchmark
+    public long[] primitiveBatch() {
+        fareCalculatorService.calculateFaresCents(inTimes, outTimes, parkingTypeOrdinals, discounts, cents);
+        return cents;
+    }
+
+    @Benchmark
+    public long[] parallelBatch() {
+        fareCalculatorService.calculateFaresCentsInParallel(inTimes, outTimes, parkingTypeOrdinals, discounts, cents);
+        return cents;
+    }
+}
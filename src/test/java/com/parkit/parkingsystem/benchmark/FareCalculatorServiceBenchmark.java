@@ -0,0 +1,82 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.Tariff;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one fare: calculateFare on a Ticket and calculateFareCents on primitives, for a stay under the grace
+ * period, a short stay and a stay of several days, with and without discount, with the standard tariff and with a
+ * tariff of bands, tiers and daily cap. Run with the allocation rates through BenchmarkReport, see README.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FareCalculatorServiceBenchmark {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @Param({"20", "45", "4000"})
+    private long stayMinutes;
+    @Param({"false", "true"})
+    private boolean discount;
+    @Param({"standard", "banded"})
+    private String tariff;
+
+    private final FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    private final Ticket ticket = new Ticket();
+    private long inTime;
+    private long outTime;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (tariff.equals("banded")) {
+            Properties properties = new Properties();
+            properties.setProperty("zone", "UTC");
+            properties.setProperty("CAR.band.0000", "100");
+            properties.setProperty("CAR.band.0800", "300");
+            properties.setProperty("CAR.band.2000", "150");
+            properties.setProperty("CAR.tier.3", "50");
+            properties.setProperty("CAR.dailyCap", "2000");
+            properties.setProperty("BIKE.band.0000", "100");
+            fareCalculatorService.setTariff(Tariff.parse(properties));
+        }
+        inTime = 1_700_000_000_000L;
+        outTime = inTime + stayMinutes * MINUTE;
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(new Date(inTime));
+        ticket.setOutTime(new Date(outTime));
+    }
+
+    @Benchmark
+    public double ticketFare() {
+        fareCalculatorService.calculateFare(ticket, discount);
+        return ticket.getPrice();
+    }
+
+    @Benchmark
+    public long primitiveFare() {
+        return fareCalculatorService.calculateFareCents(inTime, outTime, ParkingType.CAR.ordinal(), discount);
+    }
+}
@@ -0,0 +1,85 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.journal.GateJournal;
+import com.parkit.parkingsystem.journal.JournalRecord;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Durable appends per second to the gate journal: each operation journals an entry and acknowledges it, and returns
+ * once the record is on disk. Gate threads appending together share their fsync.
+ * Run the sweep from 1 to 64 gate threads with
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.main=com.parkit.parkingsystem.benchmark.GateJournalBenchmark -Dbenchmark.args=
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class GateJournalBenchmark {
+
+    private static final ParkingSpot PARKING_SPOT = new ParkingSpot(1, ParkingType.CAR, false);
+
+    private Path directory;
+    private GateJournal gateJournal;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("gate-journal-benchmark");
+        gateJournal = GateJournal.open(directory, 64L * 1024 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        gateJournal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long appendEntry() throws IOException {
+        long sequence = gateJournal.append(JournalRecord.entry("ABCDEF", PARKING_SPOT, new Date()));
+        gateJournal.acknowledge(sequence);
+        return sequence;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %15s%n", "threads", "appends/s");
+        for (int threads = 1; threads <= 64; threads *= 4) {
+            Options options = new OptionsBuilder()
+                    .include(GateJournalBenchmark.class.getName())
+                    .threads(threads)
+                    .verbosity(org.openjdk.jmh.runner.options.VerboseMode.SILENT)
+                    .build();
+            for (RunResult result : new Runner(options).run()) {
+                System.out.printf("%-8d %15.0f%n", threads, result.getPrimaryResult().getScore());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import com.parkit.parkingsystem.service.GatePipeline;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SpotAllocator;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gate events per second and latency of one event, from its submission to its answer, during a wave of entries
+ * followed by a wave of exits of the same vehicles: gate threads calling ParkingService.entry and exit directly,
+ * then the same gates submitting to a GatePipeline with several batch sizes.
+ * Uses the test database, with a parking of one spot per vehicle; other databases are given as for
+ * TicketWriteBehindBenchmark:
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.main=com.parkit.parkingsystem.benchmark.GatePipelineBenchmark -Dbenchmark.args=
+ */
+public class GatePipelineBenchmark {
+
+    private static final int VEHICLES = 10_000;
+    private static final int GATE_THREADS = 8;
+    private static final int RING_CAPACITY = 1024;
+    private static final int[] BATCH_SIZES = {1, 16, 128};
+
+    public static void main(String[] args) throws Exception {
+        DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+        DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+        try {
+            addSpots(dataBaseTestConfig);
+            //warm up the pool, the statement caches and the JIT
+            run(dataBaseTestConfig, 0);
+            run(dataBaseTestConfig, 16);
+            System.out.printf("%-20s %12s %10s %10s %10s %10s%n", "mode", "events/s", "p50 us", "p99 us", "p99.9 us", "max us");
+            print("direct", run(dataBaseTestConfig, 0));
+            for (int batchSize : BATCH_SIZES) {
+                print("pipeline batch=" + batchSize, run(dataBaseTestConfig, batchSize));
+            }
+        } finally {
+            dataBasePrepareService.clearDataBaseEntries();
+            try (Connection con = dataBaseTestConfig.getConnection(); Statement statement = con.createStatement()) {
+                statement.execute("delete from parking where PARKING_NUMBER > 5");
+            }
+        }
+    }
+
+    private static void addSpots(DataBaseTestConfig dataBaseTestConfig) throws Exception {
+        new DataBasePrepareService().clearDataBaseEntries();
+        try (Connection con = dataBaseTestConfig.getConnection(); Statement statement = con.createStatement()) {
+            statement.execute("delete from parking where PARKING_NUMBER > 5");
+            statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) select X, true, 'CAR'"
+                    + " from system_range(6, " + (VEHICLES + 5) + ")");
+        }
+    }
+
+    /**
+     * @param batchSize 0 for the direct calls to ParkingService
+     * @return latencies in nanoseconds of the events, sorted, followed by the duration of the run
+     */
+    private static long[] run(DataBaseTestConfig dataBaseTestConfig, int batchSize) throws Exception {
+        new DataBasePrepareService().clearDataBaseEntries();
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO.loadActiveTicketRegistry();
+        SpotAllocator spotAllocator = SpotAllocator.load(parkingSpotDAO);
+        ParkingService parkingService = new ParkingService(new InputReaderUtil(), parkingSpotDAO, ticketDAO);
+        parkingService.setSpotAllocator(spotAllocator);
+        GatePipeline gatePipeline = batchSize == 0 ? null
+                : new GatePipeline(ticketDAO, spotAllocator, new FareCalculatorService(), RING_CAPACITY, batchSize, GatePipeline.Backpressure.BLOCK);
+        long[] latencies = new long[2 * VEHICLES + 1];
+        Date inTime = new Date(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+        long start = System.nanoTime();
+        wave(latencies, 0, i -> {
+            long submitted = System.nanoTime();
+            if (gatePipeline == null) {
+                parkingService.entry("BENCH" + i, ParkingType.CAR, inTime);
+                return CompletableFuture.completedFuture(System.nanoTime() - submitted);
+            }
+            return gatePipeline.entry("BENCH" + i, ParkingType.CAR, inTime).thenApply(result -> System.nanoTime() - submitted);
+        });
+        Date outTime = new Date();
+        wave(latencies, VEHICLES, i -> {
+            long submitted = System.nanoTime();
+            if (gatePipeline == null) {
+                parkingService.exit("BENCH" + i, outTime);
+                return CompletableFuture.completedFuture(System.nanoTime() - submitted);
+            }
+            return gatePipeline.exit("BENCH" + i, outTime).thenApply(result -> System.nanoTime() - submitted);
+        });
+        latencies[2 * VEHICLES] = System.nanoTime() - start;
+        if (gatePipeline != null) {
+            gatePipeline.close();
+        }
+        spotAllocator.close();
+        Arrays.sort(latencies, 0, 2 * VEHICLES);
+        return latencies;
+    }
+
+    /**
+     * one event per vehicle, submitted by the gate threads, waiting for every answer
+     */
+    private static void wave(long[] latencies, int offset, Gate gate) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        List<Thread> gates = new ArrayList<>();
+        List<CompletableFuture<Void>> answers = new ArrayList<>();
+        for (int t = 0; t < GATE_THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                List<CompletableFuture<Void>> answersOfGate = new ArrayList<>();
+                for (int i = next.getAndIncrement(); i < VEHICLES; i = next.getAndIncrement()) {
+                    int event = i;
+                    answersOfGate.add(gate.submit(i).thenAccept(latency -> latencies[offset + event] = latency));
+                }
+                synchronized (answers) {
+                    answers.addAll(answersOfGate);
+                }
+            });
+            thread.start();
+            gates.add(thread);
+        }
+        for (Thread thread : gates) {
+            thread.join();
+        }
+        CompletableFuture.allOf(answers.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void print(String mode, long[] latencies) {
+        int events = latencies.length - 1;
+        System.out.printf("%-20s %12.0f %10d %10d %10d %10d%n", mode, events / (latencies[events] / 1e9),
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                latencies[events - 1] / 1000);
+    }
+
+    private static long percentile(long[] latencies, double percentile) {
+        return latencies[(int) Math.ceil(percentile * (latencies.length - 1)) - 1] / 1000;
+    }
+
+    private interface Gate {
+        CompletableFuture<Long> submit(int vehicle);
+    }
+}
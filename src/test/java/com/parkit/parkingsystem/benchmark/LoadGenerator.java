@@ -0,0 +1,212 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.SpotAllocator;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a trace of arrivals and departures against ParkingService on the DAOs of the app, from N gate threads,
+ * and prints the throughput and the latency percentiles of the entries and of the exits, to size the hardware of a
+ * site. The events of one plate always go to the same gate, in the order of the trace.
+ * <p>
+ * The trace is replayed speedup times faster than recorded: the latency of an event is counted from the time it
+ * was due, not from the time its gate got to it, so a gate falling behind shows in the percentiles instead of slowing
+ * the arrivals down. With speedup=0 the events are sent as fast as the gates go, and the latency is the time of
+ * the call. The parking table of the test database gets as many spots as the busiest moment of the trace needs.
+ * <p>
+ * Options, as key=value arguments (defaults in brackets): gates [8], trace [synthetic], hours [2],
+ * arrivalsPerHour [3600], meanStayMinutes [90], staySigma [0.75], repeatRatio [0.3], bikeRatio [0.1], seed [42],
+ * record [none, file to save the trace to], speedup [360], spotAllocator [false], e.g.
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.main=com.parkit.parkingsystem.benchmark.LoadGenerator
+ * -Dbenchmark.args="gates=16 arrivalsPerHour=7200 speedup=720"
+ */
+public class LoadGenerator {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        int gates = Integer.parseInt(options.getOrDefault("gates", "8"));
+        double speedup = Double.parseDouble(options.getOrDefault("speedup", "360"));
+        LoadTrace trace = options.containsKey("trace")
+                ? LoadTrace.read(Paths.get(options.get("trace")))
+                : LoadTrace.synthetic(Double.parseDouble(options.getOrDefault("hours", "2")),
+                Double.parseDouble(options.getOrDefault("arrivalsPerHour", "3600")),
+                Double.parseDouble(options.getOrDefault("meanStayMinutes", "90")),
+                Double.parseDouble(options.getOrDefault("staySigma", "0.75")),
+                Double.parseDouble(options.getOrDefault("repeatRatio", "0.3")),
+                Double.parseDouble(options.getOrDefault("bikeRatio", "0.1")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        if (options.containsKey("record")) {
+            trace.write(Paths.get(options.get("record")));
+        }
+        DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+        DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+        try {
+            addSpots(dataBaseTestConfig, trace.getPeakOccupancy(ParkingType.CAR), trace.getPeakOccupancy(ParkingType.BIKE));
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+            parkingSpotDAO.loadParkingSpotIndex();
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseTestConfig;
+            ticketDAO.loadVisitCountCache(100_000);
+            ticketDAO.loadActiveTicketRegistry();
+            ParkingService parkingService = new ParkingService(new InputReaderUtil(), parkingSpotDAO, ticketDAO);
+            SpotAllocator spotAllocator = null;
+            if (Boolean.parseBoolean(options.getOrDefault("spotAllocator", "false"))) {
+                spotAllocator = SpotAllocator.load(parkingSpotDAO);
+                parkingService.setSpotAllocator(spotAllocator);
+            }
+            System.out.printf("%d events over %.1f hours, %d gates, speedup %s, peak of %d cars and %d bikes%n",
+                    trace.getEvents().size(), trace.getDuration() / 3_600_000.0, gates, speedup == 0 ? "none" : speedup,
+                    trace.getPeakOccupancy(ParkingType.CAR), trace.getPeakOccupancy(ParkingType.BIKE));
+            report(replay(parkingService, trace, gates, speedup));
+            if (spotAllocator != null) {
+                spotAllocator.close();
+            }
+        } finally {
+            dataBasePrepareService.clearDataBaseEntries();
+            try (Connection con = dataBaseTestConfig.getConnection(); Statement statement = con.createStatement()) {
+                statement.execute("delete from parking where PARKING_NUMBER > 5");
+            }
+        }
+    }
+
+    private static void addSpots(DataBaseTestConfig dataBaseTestConfig, int cars, int bikes) throws Exception {
+        new DataBasePrepareService().clearDataBaseEntries();
+        try (Connection con = dataBaseTestConfig.getConnection(); Statement statement = con.createStatement()) {
+            statement.execute("delete from parking where PARKING_NUMBER > 5");
+            statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) select X, true, 'CAR'"
+                    + " from system_range(6, " + (cars + 5) + ")");
+            statement.execute("insert into parking(PARKING_NUMBER, AVAILABLE, TYPE) select X, true, 'BIKE'"
+                    + " from system_range(" + (cars + 6) + ", " + (cars + bikes + 5) + ")");
+        }
+    }
+
+    private static Gate[] replay(ParkingService parkingService, LoadTrace trace, int gates, double speedup)
+            throws InterruptedException {
+        Gate[] gateThreads = new Gate[gates];
+        for (int g = 0; g < gates; g++) {
+            gateThreads[g] = new Gate(parkingService, speedup, "load-gate-" + g);
+        }
+        for (LoadTrace.Event event : trace.getEvents()) {
+            gateThreads[Math.floorMod(event.getVehicleRegNumber().hashCode(), gates)].events.add(event);
+        }
+        //times of the trace end now, so that no ticket is in the future
+        long base = System.currentTimeMillis() - trace.getDuration();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (Gate gate : gateThreads) {
+            gate.base = base;
+            gate.start = start;
+            gate.start();
+        }
+        for (Gate gate : gateThreads) {
+            gate.join();
+        }
+        return gateThreads;
+    }
+
+    private static void report(Gate[] gates) {
+        LatencyHistogram entries = new LatencyHistogram();
+        LatencyHistogram exits = new LatencyHistogram();
+        Map<String, Integer> statuses = new TreeMap<>();
+        long end = 0;
+        for (Gate gate : gates) {
+            entries.add(gate.entries);
+            exits.add(gate.exits);
+            gate.statuses.forEach((status, count) -> statuses.merge(status, count, Integer::sum));
+            end = Math.max(end, gate.end);
+        }
+        double seconds = (end - gates[0].start) / 1e9;
+        System.out.printf("%-10s %10s %10s %10s", "operation", "count", "ops/s", "mean us");
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %10s", "p" + (percentile == (int) percentile ? String.valueOf((int) percentile) : String.valueOf(percentile)) + " us");
+        }
+        System.out.printf(" %10s%n", "max us");
+        print("entry", entries, seconds);
+        print("exit", exits, seconds);
+        System.out.println("replayed in " + String.format("%.1f", seconds) + " s, statuses " + statuses);
+    }
+
+    private static void print(String operation, LatencyHistogram histogram, double seconds) {
+        System.out.printf("%-10s %10d %10.0f %10.0f", operation, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                histogram.getMean() / 1000);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %10d", histogram.getValueAtPercentile(percentile) / 1000);
+        }
+        System.out.printf(" %10d%n", histogram.getMax() / 1000);
+    }
+
+    /**
+     * replays the events of its plates, each at its time
+     */
+    private static class Gate extends Thread {
+        private final ParkingService parkingService;
+        private final double speedup;
+        private final List<LoadTrace.Event> events = new ArrayList<>();
+        private final LatencyHistogram entries = new LatencyHistogram();
+        private final LatencyHistogram exits = new LatencyHistogram();
+        private final Map<String, Integer> statuses = new HashMap<>();
+        private long base;
+        private long start;
+        private long end;
+
+        Gate(ParkingService parkingService, double speedup, String name) {
+            super(name);
+            this.parkingService = parkingService;
+            this.speedup = speedup;
+        }
+
+        @Override
+        public void run() {
+            for (LoadTrace.Event event : events) {
+                long due;
+                if (speedup > 0) {
+                    due = start + (long) (TimeUnit.MILLISECONDS.toNanos(event.getTime()) / speedup);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    due = System.nanoTime();
+                }
+                Date time = new Date(base + event.getTime());
+                String status;
+                try {
+                    status = event.getType() == LoadTrace.Type.ENTRY
+                            ? parkingService.entry(event.getVehicleRegNumber(), event.getParkingType(), time).getStatus().toString()
+                            : parkingService.exit(event.getVehicleRegNumber(), time).getStatus().toString();
+                } catch (RuntimeException e) {
+                    status = "ERROR";
+                }
+                long latency = System.nanoTime() - due;
+                (event.getType() == LoadTrace.Type.ENTRY ? entries : exits).record(latency);
+                statuses.merge(event.getType() + " " + status, 1, Integer::sum);
+            }
+            end = System.nanoTime();
+        }
+    }
+}
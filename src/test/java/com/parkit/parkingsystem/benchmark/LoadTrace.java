@@ -0,0 +1,190 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Arrivals and departures of a parking, ordered by time since the start of the trace.
+ * A synthetic trace has Poisson arrivals, log-normal stays, and a share of arrivals made by vehicles that already
+ * came and left; departures after the end of the trace are left out. A trace is saved and read back as CSV lines
+ * timeMillis,ENTRY|EXIT,plate,CAR|BIKE, e.g. to replay the gate logs of a site.
+ */
+public class LoadTrace {
+
+    public enum Type {
+        ENTRY,
+        EXIT
+    }
+
+    /**
+     * one arrival or departure
+     */
+    public static class Event {
+        private final long time;
+        private final Type type;
+        private final String vehicleRegNumber;
+        private final ParkingType parkingType;
+
+        Event(long time, Type type, String vehicleRegNumber, ParkingType parkingType) {
+            this.time = time;
+            this.type = type;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.parkingType = parkingType;
+        }
+
+        /**
+         * @return milliseconds since the start of the trace
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getVehicleRegNumber() {
+            return vehicleRegNumber;
+        }
+
+        public ParkingType getParkingType() {
+            return parkingType;
+        }
+    }
+
+    private final List<Event> events;
+    private final long duration;
+
+    private LoadTrace(List<Event> events, long duration) {
+        this.events = events;
+        this.duration = duration;
+    }
+
+    /**
+     * @param hours           length of the trace
+     * @param arrivalsPerHour mean rate of the Poisson arrivals
+     * @param meanStayMinutes mean of the log-normal stays
+     * @param staySigma       shape of the log-normal stays, 0 for stays all of the mean
+     * @param repeatRatio     share of arrivals made by a vehicle that already left, when there is one
+     * @param bikeRatio       share of new vehicles that are bikes
+     * @param seed
+     */
+    public static LoadTrace synthetic(double hours, double arrivalsPerHour, double meanStayMinutes, double staySigma,
+                                      double repeatRatio, double bikeRatio, long seed) {
+        Random random = new Random(seed);
+        long duration = (long) (hours * 3_600_000);
+        double meanArrivalGap = 3_600_000 / arrivalsPerHour;
+        //median of the log-normal giving this mean
+        double mu = Math.log(meanStayMinutes * 60_000) - staySigma * staySigma / 2;
+        List<Event> events = new ArrayList<>();
+        PriorityQueue<Event> departures = new PriorityQueue<>((a, b) -> Long.compare(a.time, b.time));
+        List<Event> gone = new ArrayList<>();
+        int vehicles = 0;
+        for (double time = -meanArrivalGap * Math.log(1 - random.nextDouble()); time < duration;
+             time += -meanArrivalGap * Math.log(1 - random.nextDouble())) {
+            long arrival = (long) time;
+            while (!departures.isEmpty() && departures.peek().time <= arrival) {
+                Event departure = departures.poll();
+                events.add(departure);
+                gone.add(departure);
+            }
+            String vehicleRegNumber;
+            ParkingType parkingType;
+            if (!gone.isEmpty() && random.nextDouble() < repeatRatio) {
+                int picked = random.nextInt(gone.size());
+                Event previous = gone.get(picked);
+                gone.set(picked, gone.get(gone.size() - 1));
+                gone.remove(gone.size() - 1);
+                vehicleRegNumber = previous.vehicleRegNumber;
+                parkingType = previous.parkingType;
+            } else {
+                vehicleRegNumber = "LOAD" + (++vehicles);
+                parkingType = random.nextDouble() < bikeRatio ? ParkingType.BIKE : ParkingType.CAR;
+            }
+            events.add(new Event(arrival, Type.ENTRY, vehicleRegNumber, parkingType));
+            long stay = Math.max(60_000, (long) Math.exp(mu + staySigma * random.nextGaussian()));
+            if (arrival + stay < duration) {
+                departures.add(new Event(arrival + stay, Type.EXIT, vehicleRegNumber, parkingType));
+            }
+        }
+        while (!departures.isEmpty()) {
+            events.add(departures.poll());
+        }
+        return new LoadTrace(events, duration);
+    }
+
+    /**
+     * @param file CSV lines timeMillis,ENTRY|EXIT,plate,CAR|BIKE ordered by time, blank lines and lines starting
+     *             with # are skipped
+     */
+    public static LoadTrace read(Path file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    throw new IOException("Invalid trace line: " + line);
+                }
+                ParkingType parkingType = fields.length > 3 && !fields[3].isEmpty()
+                        ? ParkingType.valueOf(fields[3].trim()) : ParkingType.CAR;
+                events.add(new Event(Long.parseLong(fields[0].trim()), Type.valueOf(fields[1].trim()), fields[2].trim(), parkingType));
+            }
+        }
+        events.sort((a, b) -> Long.compare(a.time, b.time));
+        return new LoadTrace(events, events.isEmpty() ? 0 : events.get(events.size() - 1).time + 1);
+    }
+
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("#timeMillis,type,plate,vehicleType");
+            writer.newLine();
+            for (Event event : events) {
+                writer.write(event.time + "," + event.type + "," + event.vehicleRegNumber + "," + event.parkingType);
+                writer.newLine();
+            }
+        }
+    }
+
+    public List<Event> getEvents() {
+        return events;
+    }
+
+    /**
+     * @return milliseconds covered by the trace
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @param parkingType
+     * @return most vehicles of this type parked at the same time
+     */
+    public int getPeakOccupancy(ParkingType parkingType) {
+        int parked = 0;
+        int peak = 0;
+        for (Event event : events) {
+            if (event.parkingType != parkingType) {
+                continue;
+            }
+            parked += event.type == Type.ENTRY ? 1 : -1;
+            peak = Math.max(peak, parked);
+        }
+        return peak;
+    }
+}
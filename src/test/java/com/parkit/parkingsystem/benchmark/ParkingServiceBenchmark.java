@@ -0,0 +1,197 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculator;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InputReaderUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a vehicle entering then leaving through ParkingService, from the console methods and from the
+ * headless entry and exit, with stub DAOs (the service alone) and with the DAOs on the embedded test database.
+ * The stubs are plain subclasses: a Mockito mock records every call and would measure itself. The console output
+ * of ParkingService is discarded during the run.
+ * Run with the allocation rates through BenchmarkReport, see README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParkingServiceBenchmark {
+
+    private static final int PLATES = 1000;
+    private static final long FIRST_IN_TIME = 1_577_836_800_000L;
+    private static final long MINUTE = 60 * 1000L;
+    //headless stays: free, just over the free half hour, a few hours, over a day
+    private static final long[] STAYS = {20 * MINUTE, 45 * MINUTE, 3 * 60 * MINUTE, 26 * 60 * MINUTE};
+
+    @Param({"stub", "embedded"})
+    private String dao;
+
+    private final String[] plates = new String[PLATES];
+    private final CyclingInputReaderUtil inputReaderUtil = new CyclingInputReaderUtil();
+    private ParkingService parkingService;
+    private PrintStream console;
+    //clock of the headless entries and exits, each visit starting after the previous one
+    private long time = FIRST_IN_TIME;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < PLATES; i++) {
+            plates[i] = "BENCH" + i;
+        }
+        if (dao.equals("stub")) {
+            Set<String> recurringPlates = new HashSet<>();
+            for (int i = 1; i < PLATES; i += 2) {
+                recurringPlates.add(plates[i]);
+            }
+            parkingService = new ParkingService(inputReaderUtil, new StubParkingSpotDAO(),
+                    new StubTicketDAO(recurringPlates));
+        } else {
+            DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+            new DataBasePrepareService().clearDataBaseEntries();
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseTestConfig;
+            parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        }
+        console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+        if (dao.equals("embedded")) {
+            new DataBasePrepareService().clearDataBaseEntries();
+        }
+    }
+
+    @Benchmark
+    public double entryThenExit() {
+        inputReaderUtil.plate = plates[inputReaderUtil.next++ % PLATES];
+        parkingService.processIncomingVehicle();
+        parkingService.processExitingVehicle();
+        return parkingService.someOtherMethod();
+    }
+
+    /**
+     * the stays cycle through STAYS; every other plate of the stubs is a recurring user, on the embedded database
+     * a plate is one from its second visit
+     */
+    @Benchmark
+    public double headlessEntryThenExit() {
+        int visit = inputReaderUtil.next++;
+        String plate = plates[visit % PLATES];
+        Date inTime = new Date(time);
+        Date outTime = new Date(time + STAYS[visit % STAYS.length]);
+        time = outTime.getTime() + MINUTE;
+        parkingService.entry(plate, ParkingType.CAR, inTime);
+        return parkingService.exit(plate, outTime).getFare();
+    }
+
+    /**
+     * a car, with the plate chosen by the benchmark
+     */
+    static class CyclingInputReaderUtil extends InputReaderUtil {
+        private String plate;
+        private int next;
+
+        @Override
+        public int readSelection() {
+            return 1;
+        }
+
+        @Override
+        public String readVehicleRegistrationNumber() {
+            return plate;
+        }
+    }
+
+    static class StubParkingSpotDAO extends ParkingSpotDAO {
+        @Override
+        public ParkingSpot claimNextSpot(ParkingType parkingType) {
+            return new ParkingSpot(1, parkingType, false);
+        }
+
+        @Override
+        public boolean updateParking(ParkingSpot parkingSpot) {
+            return true;
+        }
+
+        @Override
+        public void onParkingUpdated(ParkingSpot parkingSpot) {
+        }
+    }
+
+    /**
+     * keeps the last ticket only, its fare computed as TicketDAO.closeTicket does
+     */
+    static class StubTicketDAO extends TicketDAO {
+        private final Set<String> recurringPlates;
+        private Ticket ticket;
+
+        StubTicketDAO(Set<String> recurringPlates) {
+            this.recurringPlates = recurringPlates;
+        }
+
+        @Override
+        public boolean isVehicleParked(String vehicleRegNumber) {
+            return false;
+        }
+
+        @Override
+        public int getNbTicket(String vehicleRegNumber) {
+            return recurringPlates.contains(vehicleRegNumber) ? 1 : 0;
+        }
+
+        @Override
+        public SaveStatus saveTicket(Ticket ticket) {
+            this.ticket = ticket;
+            return SaveStatus.SAVED;
+        }
+
+        @Override
+        public Ticket closeTicket(String vehicleRegNumber, Date outTime, FareCalculator fareCalculator, boolean freeSpot) {
+            ticket.setOutTime(outTime);
+            fareCalculator.calculateFare(ticket, getNbTicket(vehicleRegNumber) >= 1);
+            return ticket;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.SpotAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of spot assignment when gate threads share one process: every operation takes a spot and gives it
+ * back. The lock-free SpotAllocator is compared with a free list behind one global lock.
+ * Run the sweep from 1 to 64 gate threads with
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.main=com.parkit.parkingsystem.benchmark.SpotAllocatorBenchmark -Dbenchmark.args=
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class SpotAllocatorBenchmark {
+
+    private static final int SPOTS = 10_000;
+
+    private SpotAllocator spotAllocator;
+    private final TreeSet<Integer> lockedFreeSpots = new TreeSet<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for (int number = 1; number <= SPOTS; number++) {
+            parkingSpots.add(new ParkingSpot(number, ParkingType.CAR, true));
+            lockedFreeSpots.add(number);
+        }
+        spotAllocator = new SpotAllocator(parkingSpots, new NoDataBaseParkingSpotDAO());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        spotAllocator.close();
+    }
+
+    @Benchmark
+    public boolean lockFreeAllocator() {
+        ParkingSpot parkingSpot = spotAllocator.allocate(ParkingType.CAR);
+        return spotAllocator.release(parkingSpot);
+    }
+
+    @Benchmark
+    public boolean globalLock() {
+        int parkingNumber;
+        synchronized (lockedFreeSpots) {
+            parkingNumber = lockedFreeSpots.pollFirst();
+        }
+        synchronized (lockedFreeSpots) {
+            return lockedFreeSpots.add(parkingNumber);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %-20s %15s%n", "threads", "benchmark", "ops/us");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(SpotAllocatorBenchmark.class.getName())
+                    .threads(threads)
+                    .verbosity(org.openjdk.jmh.runner.options.VerboseMode.SILENT)
+                    .build();
+            for (RunResult result : new Runner(options).run()) {
+                System.out.printf("%-8d %-20s %15.2f%n", threads,
+                        result.getParams().getBenchmark().replaceAll(".*\\.", ""),
+                        result.getPrimaryResult().getScore());
+            }
+        }
+    }
+
+    /**
+     * availability is not saved, only the assignment itself is measured
+     */
+    static class NoDataBaseParkingSpotDAO extends ParkingSpotDAO {
+        @Override
+        public boolean updateParking(ParkingSpot parkingSpot) {
+            return true;
+        }
+    }
+}
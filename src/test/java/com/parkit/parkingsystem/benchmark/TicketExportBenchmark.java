@@ -0,0 +1,78 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.export.ExportFormat;
+import com.parkit.parkingsystem.export.TicketExporter;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+
+/**
+ * Tickets exported per second to CSV and to the binary format, with one reader and with several readers.
+ * The number of tickets is the first argument, 1 000 000 by default; 10M tickets need a larger heap for the
+ * in-memory test database, e.g. -Dbenchmark.args=10000000 -Dbenchmark.jvmArgs=-Xmx8g, or a file database.
+ */
+public class TicketExportBenchmark {
+
+    private static final int[] READERS = {1, 4};
+
+    public static void main(String[] args) throws Exception {
+        int tickets = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+        DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+        dataBasePrepareService.clearDataBaseEntries();
+        insertTickets(dataBaseTestConfig, tickets);
+        Path directory = Files.createTempDirectory("ticket-export");
+        Path file = directory.resolve("tickets");
+        //warm up the JIT
+        export(dataBaseTestConfig, 4, file, ExportFormat.CSV);
+        export(dataBaseTestConfig, 4, file, ExportFormat.BINARY);
+        System.out.printf("%-8s %-8s %15s %12s%n", "format", "readers", "tickets/s", "MB");
+        for (ExportFormat format : ExportFormat.values()) {
+            for (int readers : READERS) {
+                long start = System.nanoTime();
+                long exported = export(dataBaseTestConfig, readers, file, format);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-8s %-8d %15.0f %12.1f%n", format, readers, exported / seconds,
+                        Files.size(file) / 1e6);
+            }
+        }
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static long export(DataBaseTestConfig dataBaseTestConfig, int readers, Path file, ExportFormat format)
+            throws Exception {
+        TicketExporter ticketExporter = new TicketExporter(readers, 100_000);
+        ticketExporter.dataBaseConfig = dataBaseTestConfig;
+        return ticketExporter.export(file, format);
+    }
+
+    private static void insertTickets(DataBaseTestConfig dataBaseTestConfig, int tickets) throws Exception {
+        long start = System.currentTimeMillis() - tickets * 1000L;
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)");
+            for (int i = 0; i < tickets; i++) {
+                ps.setInt(1, i % 5 + 1);
+                ps.setString(2, "P" + i % 100_000);
+                ps.setDouble(3, i % 7 * 0.75);
+                ps.setTimestamp(4, new Timestamp(start + i * 1000L));
+                ps.setTimestamp(5, new Timestamp(start + i * 1000L + 5_400_000L));
+                ps.addBatch();
+                if (i % 10_000 == 9_999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+            dataBaseTestConfig.closePreparedStatement(ps);
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+}
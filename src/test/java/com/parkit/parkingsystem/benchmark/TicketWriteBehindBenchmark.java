@@ -0,0 +1,78 @@
+package com.parkit.parkingsystem.benchmark;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tickets saved per second by gate threads during an arrival wave, with the synchronous insert of
+ * TicketDAO.saveTicket and with the write-behind. The write-behind time includes the final flush, so both
+ * modes measure tickets committed, not only acknowledged.
+ * Uses the test database; to write the tickets to disk, run it on an embedded file database with
+ * mvn -Pbenchmark verify -DskipTests -Dbenchmark.main=com.parkit.parkingsystem.benchmark.TicketWriteBehindBenchmark
+ * -Dbenchmark.args= -Dbenchmark.jvmArgs=-Ddb.embedded.url=jdbc:h2:file:./target/bench/{database}
+ */
+public class TicketWriteBehindBenchmark {
+
+    private static final int TICKETS = 20_000;
+    private static final int[] GATE_THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws Exception {
+        DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+        DataBasePrepareService dataBasePrepareService = new DataBasePrepareService();
+        //warm up the pool, the statement caches and the JIT
+        run(dataBaseTestConfig, 4, null);
+        run(dataBaseTestConfig, 4, new TicketWriteBehind(dataBaseTestConfig, 200, 20));
+        System.out.printf("%-8s %-16s %15s%n", "threads", "mode", "tickets/s");
+        for (int threads : GATE_THREADS) {
+            dataBasePrepareService.clearDataBaseEntries();
+            System.out.printf("%-8d %-16s %15.0f%n", threads, "synchronous", run(dataBaseTestConfig, threads, null));
+            dataBasePrepareService.clearDataBaseEntries();
+            System.out.printf("%-8d %-16s %15.0f%n", threads, "write-behind",
+                    run(dataBaseTestConfig, threads, new TicketWriteBehind(dataBaseTestConfig, 200, 20)));
+        }
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    /**
+     * @return tickets committed per second
+     */
+    private static double run(DataBaseTestConfig dataBaseTestConfig, int threads, TicketWriteBehind ticketWriteBehind)
+            throws InterruptedException {
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO.ticketWriteBehind = ticketWriteBehind;
+        AtomicInteger next = new AtomicInteger();
+        List<Thread> gates = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            Thread gate = new Thread(() -> {
+                for (int i = next.getAndIncrement(); i < TICKETS; i = next.getAndIncrement()) {
+                    Ticket ticket = new Ticket();
+                    ticket.setParkingSpot(new ParkingSpot(i % 3 + 1, ParkingType.CAR, false));
+                    ticket.setVehicleRegNumber("BENCH" + i);
+                    ticket.setInTime(new Date());
+                    ticketDAO.saveTicket(ticket);
+                }
+            });
+            gate.start();
+            gates.add(gate);
+        }
+        for (Thread gate : gates) {
+            gate.join();
+        }
+        if (ticketWriteBehind != null) {
+            ticketWriteBehind.close();
+        }
+        return TICKETS / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,109 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BinaryTicketWriterTest {
+
+    private static final long IN_TIME = 1_700_000_000_000L;
+    private static final int N = BinaryTicketFormat.BLOCK_TICKETS;
+
+    private Path writeTickets(int tickets) throws Exception {
+        Path file = Files.createTempFile("tickets", ".bin");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        ByteBuffer header = BinaryTicketFormat.header(tickets);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        try (BinaryTicketWriter writer = new BinaryTicketWriter(channel)) {
+            for (int i = 0; i < tickets; i++) {
+                //plates of the second block shorter than the ones of the first block in the same slots
+                String plate = i < N ? "LONGPLATE" + i % 10 + "XX" : "P" + i % 10;
+                writer.write(i + 1, i % 5 + 1, i % 5 < 3 ? ParkingType.CAR : ParkingType.BIKE, plate, i * 0.5,
+                        IN_TIME + i * 1000L, i % 7 == 0 ? -1 : IN_TIME + i * 1000L + 3_600_000L);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void ticketsAreWrittenInColumnsByBlocksTest() throws Exception {
+        //Given
+        int tickets = N + 3;
+        Path file = writeTickets(tickets);
+        try {
+            //When
+            ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+            //Then: a full block then a block of the 3 remaining tickets
+            int firstBlock = BinaryTicketFormat.HEADER_SIZE;
+            int secondBlock = firstBlock + 4 + N * BinaryTicketFormat.TICKET_SIZE;
+            assertEquals(secondBlock + 4 + 3 * BinaryTicketFormat.TICKET_SIZE, content.capacity());
+            assertEquals(N, content.getInt(firstBlock));
+            assertEquals(3, content.getInt(secondBlock));
+            int ids = secondBlock + 4;
+            int parkingNumbers = ids + 4 * 3;
+            int types = parkingNumbers + 4 * 3;
+            int inTimes = types + 3;
+            int outTimes = inTimes + 8 * 3;
+            int prices = outTimes + 8 * 3;
+            int plates = prices + 4 * 3;
+            assertEquals(N + 1, content.getInt(ids));
+            assertEquals(N + 3, content.getInt(ids + 8));
+            assertEquals(N % 5 + 1, content.getInt(parkingNumbers));
+            assertEquals(ParkingType.BIKE.ordinal(), content.get(types + 2));
+            assertEquals(IN_TIME + (N + 1) * 1000L, content.getLong(inTimes + 8));
+            assertEquals(IN_TIME + N * 1000L + 3_600_000L, content.getLong(outTimes));
+            assertEquals(-1, content.getLong(firstBlock + 4 + 17 * N + 8 * (N - 1)));
+            assertEquals((N + 1) * 50, content.getInt(prices + 4));
+            byte[] plate = new byte[BinaryTicketFormat.PLATE_SIZE];
+            content.position(plates + BinaryTicketFormat.PLATE_SIZE);
+            content.get(plate);
+            assertEquals("P" + (N + 1) % 10 + "\0\0\0\0\0\0\0\0", new String(plate, StandardCharsets.US_ASCII));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void ticketsReadBackTest() throws Exception {
+        //Given
+        int tickets = 2 * N + 1;
+        Path file = writeTickets(tickets);
+        try {
+            //When
+            List<Ticket> read = new ArrayList<>();
+            long count = BinaryTicketFormat.read(file, read::add);
+            //Then
+            assertEquals(tickets, count);
+            assertEquals(tickets, read.size());
+            for (int i = 0; i < tickets; i++) {
+                assertEquals(i + 1, read.get(i).getId());
+            }
+            Ticket first = read.get(0);
+            assertEquals("LONGPLATE0", first.getVehicleRegNumber());
+            assertNull(first.getOutTime());
+            Ticket last = read.get(tickets - 1);
+            assertEquals("P" + (tickets - 1) % 10, last.getVehicleRegNumber());
+            assertEquals((tickets - 1) % 5 + 1, last.getParkingSpot().getId());
+            assertEquals(ParkingType.CAR, read.get(N + 1).getParkingSpot().getParkingType());
+            assertEquals(ParkingType.BIKE, read.get(N + 2).getParkingSpot().getParkingType());
+            assertEquals((tickets - 1) * 0.5, last.getPrice());
+            assertEquals(IN_TIME + (tickets - 1) * 1000L, last.getInTime().getTime());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CsvTicketWriterTest {
+
+    private static final long IN_TIME = 1_700_000_000_000L;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private String write(int bufferSize, Row... rows) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvTicketWriter writer = new CsvTicketWriter(Channels.newChannel(out), bufferSize)) {
+            for (Row row : rows) {
+                writer.write(row.id, row.parkingNumber, row.parkingType, row.vehicleRegNumber, row.price, row.inTime,
+                        row.outTime);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void plateWithSeparatorIsQuotedTest() throws Exception {
+        //Given
+        Row comma = new Row(1, 2, ParkingType.CAR, "AB,\"CD", 1.5, IN_TIME, IN_TIME + 3_600_000L);
+        Row newLine = new Row(2, 4, ParkingType.BIKE, "AB\nCD", 0, IN_TIME, -1);
+        Row plain = new Row(3, 1, ParkingType.CAR, "ABCDEF", 12.25, IN_TIME, -1);
+        //When
+        String csv = write(1024, comma, newLine, plain);
+        //Then
+        assertEquals("1,2,CAR,\"AB,\"\"CD\",1.50,2023-11-14T22:13:20.000Z,2023-11-14T23:13:20.000Z\n"
+                + "2,4,BIKE,\"AB\nCD\",0.00,2023-11-14T22:13:20.000Z,\n"
+                + "3,1,CAR,ABCDEF,12.25,2023-11-14T22:13:20.000Z,\n", csv);
+    }
+
+    @Test
+    public void plateIsWrittenInUtf8Test() throws Exception {
+        //Given: 2, 3 and 4 bytes chars, and an unpaired surrogate
+        String plate = "\u00C9-\u20AC-\uD83D\uDE97";
+        Row row = new Row(7, 1, ParkingType.CAR, plate, 3, IN_TIME, -1);
+        Row unpaired = new Row(8, 1, ParkingType.CAR, "A\uD83DB", 3, IN_TIME, -1);
+        //When
+        String csv = write(1024, row, unpaired);
+        //Then
+        assertEquals("7,1,CAR," + plate + ",3.00,2023-11-14T22:13:20.000Z,\n"
+                + "8,1,CAR,A?B,3.00,2023-11-14T22:13:20.000Z,\n", csv);
+    }
+
+    @Test
+    public void linesReadBackAcrossFlushesTest() throws Exception {
+        //Given: a buffer holding a few lines only, times over several days
+        Row[] rows = new Row[1000];
+        for (int i = 0; i < rows.length; i++) {
+            long inTime = IN_TIME + i * 997_001L;
+            rows[i] = new Row(i + 1, i % 5 + 1, i % 5 < 3 ? ParkingType.CAR : ParkingType.BIKE, "P" + i, i * 0.25,
+                    inTime, i % 10 == 0 ? -1 : inTime + i * 60_001L);
+        }
+        //When
+        String csv = write(512, rows);
+        //Then
+        String[] lines = csv.split("\n", -1);
+        assertEquals(rows.length + 1, lines.length);
+        assertEquals("", lines[rows.length]);
+        List<String> expected = new ArrayList<>();
+        List<String> read = new ArrayList<>();
+        for (int i = 0; i < rows.length; i++) {
+            Row row = rows[i];
+            expected.add(row.id + "," + row.parkingNumber + "," + row.parkingType + "," + row.vehicleRegNumber + ","
+                    + String.format(Locale.ROOT, "%.2f", row.price) + ","
+                    + TIME_FORMAT.format(Instant.ofEpochMilli(row.inTime)) + ","
+                    + (row.outTime < 0 ? "" : TIME_FORMAT.format(Instant.ofEpochMilli(row.outTime))));
+            read.add(lines[i]);
+        }
+        assertEquals(expected, read);
+    }
+
+    private static class Row {
+        final int id;
+        final int parkingNumber;
+        final ParkingType parkingType;
+        final String vehicleRegNumber;
+        final double price;
+        final long inTime;
+        final long outTime;
+
+        Row(int id, int parkingNumber, ParkingType parkingType, String vehicleRegNumber, double price, long inTime,
+            long outTime) {
+            this.id = id;
+            this.parkingNumber = parkingNumber;
+            this.parkingType = parkingType;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.price = price;
+            this.inTime = inTime;
+            this.outTime = outTime;
+        }
+    }
+}
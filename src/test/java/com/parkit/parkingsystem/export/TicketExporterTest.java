@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem.export;
+
+import com.parkit.parkingsystem.config.ConnectionPool;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.EmbeddedSchema;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TicketExporterTest {
+
+    private static final long IN_TIME = 1_700_000_000_000L;
+
+    private ConnectionPool pool;
+    private TicketExporter ticketExporter;
+    private Path directory;
+    private Path csv;
+    private Path binary;
+
+    @BeforeEach
+    public void setUpPerTest() throws Exception {
+        pool = new ConnectionPool("jdbc:h2:mem:ticket-exporter;DB_CLOSE_DELAY=-1", "sa", "", 0, 4, 300_000, 1000,
+                30_000, 4);
+        EmbeddedSchema.apply(pool, "test");
+        DataBaseConfig dataBaseConfig = new DataBaseConfig() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return pool.getConnection();
+            }
+        };
+        //4 parts of 3 IDs read by chunks of 2 IDs
+        ticketExporter = new TicketExporter(4, 2);
+        ticketExporter.dataBaseConfig = dataBaseConfig;
+        directory = Files.createTempDirectory("ticket-export");
+        csv = directory.resolve("tickets.csv");
+        binary = directory.resolve("tickets.bin");
+    }
+
+    @AfterEach
+    public void tearDownPerTest() throws Exception {
+        try (Connection con = pool.getConnection()) {
+            con.createStatement().execute("drop all objects");
+        } finally {
+            pool.shutdown();
+        }
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(binary);
+        Files.deleteIfExists(directory);
+    }
+
+    private void insertTickets(String table, int... ids) throws Exception {
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement("insert into " + table
+                + "(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?,?)")) {
+            for (int id : ids) {
+                ps.setInt(1, id);
+                ps.setInt(2, id % 5 + 1);
+                ps.setString(3, "P" + id);
+                ps.setDouble(4, id * 0.5);
+                ps.setTimestamp(5, new Timestamp(IN_TIME + id * 60_000L));
+                ps.setTimestamp(6, new Timestamp(IN_TIME + id * 60_000L + 3_600_000L));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @Test
+    public void partsAreJoinedInIdOrderTest() throws Exception {
+        //Given: IDs of the live and archived tickets interleaved, with gaps
+        insertTickets("ticket", 3, 4, 8, 11, 12);
+        insertTickets("ticket_archive", 1, 2, 6, 7, 10);
+        //When
+        long csvTickets = ticketExporter.export(csv, ExportFormat.CSV);
+        long binaryTickets = ticketExporter.export(binary, ExportFormat.BINARY);
+        //Then
+        List<Integer> expectedIds = Arrays.asList(1, 2, 3, 4, 6, 7, 8, 10, 11, 12);
+        assertEquals(10, csvTickets);
+        assertEquals(10, binaryTickets);
+        List<String> lines = Files.readAllLines(csv);
+        assertEquals("ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME", lines.get(0));
+        List<Integer> csvIds = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            csvIds.add(Integer.parseInt(line.substring(0, line.indexOf(','))));
+        }
+        assertEquals(expectedIds, csvIds);
+        assertEquals("7,3,CAR,P7,3.50,2023-11-14T22:20:20.000Z,2023-11-14T23:20:20.000Z", lines.get(6));
+        List<Integer> binaryIds = new ArrayList<>();
+        BinaryTicketFormat.read(binary, ticket -> binaryIds.add(ticket.getId()));
+        assertEquals(expectedIds, binaryIds);
+    }
+
+    @Test
+    public void noTicketGivesHeaderOnlyTest() throws Exception {
+        //Given: no ticket
+        //When
+        long csvTickets = ticketExporter.export(csv, ExportFormat.CSV);
+        long binaryTickets = ticketExporter.export(binary, ExportFormat.BINARY);
+        //Then
+        assertEquals(0, csvTickets);
+        assertEquals(0, binaryTickets);
+        assertEquals(Arrays.asList("ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME"),
+                Files.readAllLines(csv));
+        assertEquals(BinaryTicketFormat.HEADER_SIZE, Files.size(binary));
+        List<Ticket> read = new ArrayList<>();
+        assertEquals(0, BinaryTicketFormat.read(binary, read::add));
+        assertEquals(0, read.size());
+    }
+}
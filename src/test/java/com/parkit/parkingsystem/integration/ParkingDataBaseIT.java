@@ -2,13 +2,22 @@ package com.parkit.parkingsystem.integration;
 
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.constants.SummaryPeriod;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingSummaryDAO;
+import com.parkit.parkingsystem.dao.TicketArchiver;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketWriteBehind;
+import com.parkit.parkingsystem.export.BinaryTicketFormat;
+import com.parkit.parkingsystem.export.ExportFormat;
+import com.parkit.parkingsystem.export.TicketExporter;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.ParkingSummary;
 import com.parkit.parkingsystem.model.Ticket;
 import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ParkingStatistics;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -18,8 +27,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
@@ -180,8 +197,8 @@ public class ParkingDataBaseIT {
             assertEquals(priceTest, firstExitingVehicleTicket.getPrice(), 0.01);
             //When: second entering vehicle
             parkingService.processIncomingVehicle();
-            Ticket secondtIncomingVehicleTicket = ticketDAO.getTicket("ABCDEF");
-            secondtIncomingVehicleTicket.setPrice(ticketDAO.getTicket("ABCDEF").getPrice());
+            Ticket secondtIncomingVehicleTicket = ticketDAO.getLastTicket("ABCDEF");
+            secondtIncomingVehicleTicket.setPrice(ticketDAO.getLastTicket("ABCDEF").getPrice());
             //entry time update
             try {
                 String timeSql = "UPDATE ticket SET IN_TIME = ? WHERE ID = ?";
@@ -197,7 +214,7 @@ public class ParkingDataBaseIT {
             }
             //When: second exiting vehicle
             parkingService.processExitingVehicle();
-            Ticket secondtExitingVehicleTicket = ticketDAO.getTicket("ABCDEF");
+            Ticket secondtExitingVehicleTicket = ticketDAO.getLastTicket("ABCDEF");
             //Then
             assertNotNull(firstExitingVehicleTicket);
             System.out.println("Exiting vehicle ticket found: " + secondtExitingVehicleTicket.getId());
@@ -210,4 +227,216 @@ public class ParkingDataBaseIT {
             dataBaseTestConfig.closeConnection(con);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParkingLotWithWriteBehind() throws Exception {
+        //Given
+        TicketDAO writeBehindTicketDAO = new TicketDAO();
+        writeBehindTicketDAO.dataBaseConfig = dataBaseTestConfig;
+        writeBehindTicketDAO.loadActiveTicketRegistry();
+        TicketWriteBehind ticketWriteBehind = new TicketWriteBehind(dataBaseTestConfig, 10, 20);
+        writeBehindTicketDAO.ticketWriteBehind = ticketWriteBehind;
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, writeBehindTicketDAO);
+        try {
+            //When
+            parkingService.processIncomingVehicle();
+            //Then: written by the background writer
+            assertTrue(ticketWriteBehind.flush(5000));
+            Ticket incomingTicket = writeBehindTicketDAO.getTicket("ABCDEF");
+            assertNotNull(incomingTicket);
+            assertTrue(incomingTicket.getId() > 0);
+            assertEquals(incomingTicket.getId(), writeBehindTicketDAO.activeTicketRegistry.get("ABCDEF").getId());
+            //When
+            parkingService.processExitingVehicle();
+            //Then
+            assertNotNull(writeBehindTicketDAO.getTicket("ABCDEF").getOutTime());
+            assertFalse(writeBehindTicketDAO.isVehicleParked("ABCDEF"));
+            assertEquals(0, ticketWriteBehind.getLostWrites());
+        } finally {
+            ticketWriteBehind.close();
+        }
+    }
+
+    @Test
+    public void testArchivingKeepsVisitCount() throws Exception {
+        //Given: two old visits and one vehicle still parked
+        long day = 24 * 60 * 60 * 1000L;
+        for (int visit = 0; visit < 2; visit++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("ABCDEF");
+            ticket.setInTime(new Date(System.currentTimeMillis() - (100 + visit) * day));
+            ticket.setOutTime(new Date(System.currentTimeMillis() - (100 + visit) * day + 60 * 60 * 1000));
+            ticket.setPrice(1.5);
+            assertEquals(TicketDAO.SaveStatus.SAVED, ticketDAO.saveTicket(ticket));
+        }
+        Ticket openTicket = new Ticket();
+        openTicket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        openTicket.setVehicleRegNumber("GHIJKL");
+        openTicket.setInTime(new Date(System.currentTimeMillis() - 100 * day));
+        assertEquals(TicketDAO.SaveStatus.SAVED, ticketDAO.saveTicket(openTicket));
+        TicketArchiver ticketArchiver = new TicketArchiver(1, 0);
+        ticketArchiver.dataBaseConfig = dataBaseTestConfig;
+        //When: one ticket per batch
+        int archived = ticketArchiver.archive(new Date(System.currentTimeMillis() - 90 * day));
+        //Then
+        assertEquals(2, archived);
+        assertEquals(2, ticketDAO.getNbTicket("ABCDEF"));
+        assertEquals(1, ticketDAO.getNbTicket("GHIJKL"));
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            ResultSet rs = con.prepareStatement("select count(*) from ticket").executeQuery();
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            rs = con.prepareStatement("select count(*) from ticket_archive where VEHICLE_REG_NUMBER = 'ABCDEF'").executeQuery();
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+        //a new visit is counted with the archived ones
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.processIncomingVehicle();
+        assertEquals(3, ticketDAO.getNbTicket("ABCDEF"));
+        //and by the count of a batch
+        Map<String, Integer> counts = ticketDAO.getNbTickets(Arrays.asList("ABCDEF", "GHIJKL", "MNOPQR"));
+        assertEquals(Integer.valueOf(3), counts.get("ABCDEF"));
+        assertEquals(Integer.valueOf(1), counts.get("GHIJKL"));
+        assertFalse(counts.containsKey("MNOPQR"));
+    }
+
+    @Test
+    public void testStreamingTicketHistory() throws Exception {
+        //Given: four old visits, two of them archived, and the vehicle parked again
+        long day = 24 * 60 * 60 * 1000L;
+        long start = System.currentTimeMillis() - 100 * day;
+        for (int visit = 0; visit < 4; visit++) {
+            Ticket ticket = new Ticket();
+            ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+            ticket.setVehicleRegNumber("ABCDEF");
+            ticket.setInTime(new Date(start + visit * day));
+            ticket.setOutTime(new Date(start + visit * day + 60 * 60 * 1000));
+            ticket.setPrice(1.5);
+            assertEquals(TicketDAO.SaveStatus.SAVED, ticketDAO.saveTicket(ticket));
+        }
+        Ticket otherTicket = new Ticket();
+        otherTicket.setParkingSpot(new ParkingSpot(2, ParkingType.CAR, false));
+        otherTicket.setVehicleRegNumber("GHIJKL");
+        otherTicket.setInTime(new Date(start + 60 * 1000));
+        assertEquals(TicketDAO.SaveStatus.SAVED, ticketDAO.saveTicket(otherTicket));
+        TicketArchiver ticketArchiver = new TicketArchiver(10, 0);
+        ticketArchiver.dataBaseConfig = dataBaseTestConfig;
+        ticketArchiver.archive(new Date(start + 2 * day));
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.processIncomingVehicle();
+        //When: pages of two tickets
+        List<Ticket> history = ticketDAO.streamVehicleTickets("ABCDEF", 2).collect(Collectors.toList());
+        List<Ticket> firstDay = ticketDAO.streamTicketsEnteredBetween(new Date(start), new Date(start + day), 1)
+                .collect(Collectors.toList());
+        //Then
+        //archived visits and the ticket table together, in ID order, the open ticket last
+        assertEquals(5, history.size());
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue(history.get(i - 1).getId() < history.get(i).getId());
+        }
+        assertNotNull(history.get(0).getOutTime());
+        assertEquals(null, history.get(4).getOutTime());
+        //the archived visit of ABCDEF, then GHIJKL a minute later
+        assertEquals(2, firstDay.size());
+        assertEquals("ABCDEF", firstDay.get(0).getVehicleRegNumber());
+        assertEquals("GHIJKL", firstDay.get(1).getVehicleRegNumber());
+    }
+
+    @Test
+    public void testExportingTickets() throws Exception {
+        //Given: more tickets than a binary block, some of them archived, and a vehicle parked
+        long start = 1_700_000_000_000L;
+        int tickets = 5000;
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            PreparedStatement ps = con.prepareStatement("insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)");
+            for (int i = 0; i < tickets; i++) {
+                ps.setInt(1, i % 3 + 1);
+                ps.setString(2, i == 0 ? "AB,\"CD" : "P" + i);
+                ps.setDouble(3, 1.5);
+                ps.setTimestamp(4, new Timestamp(start + i * 1000L));
+                ps.setTimestamp(5, new Timestamp(start + i * 1000L + 3_600_000L));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+        TicketArchiver ticketArchiver = new TicketArchiver(500, 0);
+        ticketArchiver.dataBaseConfig = dataBaseTestConfig;
+        ticketArchiver.archive(new Date(start + 3_600_000L + 1000 * 1000L));
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.processIncomingVehicle();
+        TicketExporter ticketExporter = new TicketExporter(3, 700);
+        ticketExporter.dataBaseConfig = dataBaseTestConfig;
+        Path directory = Files.createTempDirectory("ticket-export");
+        Path csv = directory.resolve("tickets.csv");
+        Path binary = directory.resolve("tickets.bin");
+        try {
+            //When
+            long csvTickets = ticketExporter.export(csv, ExportFormat.CSV);
+            long binaryTickets = ticketExporter.export(binary, ExportFormat.BINARY);
+            List<Ticket> read = new ArrayList<>();
+            BinaryTicketFormat.read(binary, read::add);
+            //Then
+            assertEquals(tickets + 1, csvTickets);
+            assertEquals(tickets + 1, binaryTickets);
+            List<String> lines = Files.readAllLines(csv);
+            assertEquals(tickets + 2, lines.size());
+            assertEquals("ID,PARKING_NUMBER,TYPE,VEHICLE_REG_NUMBER,PRICE,IN_TIME,OUT_TIME", lines.get(0));
+            int firstId = read.get(0).getId();
+            assertEquals(firstId + ",1,CAR,\"AB,\"\"CD\",1.50,2023-11-14T22:13:20.000Z,2023-11-14T23:13:20.000Z", lines.get(1));
+            assertTrue(lines.get(tickets + 1).startsWith((firstId + tickets) + ",1,CAR,ABCDEF,0.00,"));
+            assertTrue(lines.get(tickets + 1).endsWith(","));
+            assertEquals(tickets + 1, read.size());
+            for (int i = 0; i < read.size(); i++) {
+                assertEquals(firstId + i, read.get(i).getId());
+            }
+            Ticket ticket = read.get(41);
+            assertEquals("P41", ticket.getVehicleRegNumber());
+            assertEquals(3, ticket.getParkingSpot().getId());
+            assertEquals(1.5, ticket.getPrice());
+            assertEquals(start + 41_000L, ticket.getInTime().getTime());
+            assertEquals(start + 41_000L + 3_600_000L, ticket.getOutTime().getTime());
+            assertEquals(null, read.get(tickets).getOutTime());
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testStatisticsSavedAndLoaded() throws Exception {
+        //Given
+        ParkingSummaryDAO parkingSummaryDAO = new ParkingSummaryDAO();
+        parkingSummaryDAO.dataBaseConfig = dataBaseTestConfig;
+        ParkingStatistics parkingStatistics = new ParkingStatistics(48, 90, ZoneId.systemDefault());
+        parkingStatistics.parkingSummaryDAO = parkingSummaryDAO;
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.addParkingEventListener(parkingStatistics);
+        //When: a car enters and leaves, the increments are saved twice
+        parkingService.processIncomingVehicle();
+        assertTrue(parkingStatistics.flush());
+        parkingService.processExitingVehicle();
+        assertTrue(parkingStatistics.flush());
+        parkingService.processIncomingVehicle();
+        ParkingStatistics restarted = new ParkingStatistics(48, 90, ZoneId.systemDefault());
+        restarted.parkingSummaryDAO = parkingSummaryDAO;
+        restarted.load();
+        //Then
+        Date now = new Date();
+        ParkingSummary summary = restarted.getSummary(SummaryPeriod.DAY, ParkingType.CAR, now);
+        assertEquals(1, summary.getEntries());
+        assertEquals(1, summary.getExits());
+        assertEquals(1, summary.getStays()[0]);
+        assertEquals(1, restarted.getOccupancy(ParkingType.CAR));
+        assertEquals(0, restarted.getOccupancy(ParkingType.BIKE));
+        assertEquals(2, parkingStatistics.getSummary(SummaryPeriod.DAY, ParkingType.CAR, now).getEntries());
+    }
+}